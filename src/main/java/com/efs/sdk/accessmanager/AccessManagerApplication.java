@@ -22,7 +22,6 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.scheduling.annotation.EnableScheduling;
-import org.springframework.web.client.RestTemplate;
 
 /**
  * Base class for the accessmanager backend application.
@@ -52,14 +51,4 @@ public class AccessManagerApplication {
     public ObjectMapper objectMapper() {
         return new ObjectMapper();
     }
-
-    /**
-     * Creates an instance of the RestTemplate.
-     *
-     * @return		The created {@link RestTemplate}
-     */
-    @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
-    }
 }
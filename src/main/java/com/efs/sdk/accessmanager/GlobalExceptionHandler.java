@@ -16,6 +16,7 @@ limitations under the License.
 package com.efs.sdk.accessmanager;
 
 import com.efs.sdk.accessmanager.commons.AccessManagerException;
+import jakarta.validation.ConstraintViolationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.ResponseEntity;
@@ -28,7 +29,9 @@ import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExcep
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.stream.Collectors;
 
+import static com.efs.sdk.accessmanager.commons.AccessManagerException.ACCESSMANAGER_ERROR.INVALID_REQUEST;
 import static com.efs.sdk.accessmanager.commons.AccessManagerException.ACCESSMANAGER_ERROR.ORGANIZATIONMANAGER_ERROR;
 import static com.efs.sdk.accessmanager.commons.AccessManagerException.ACCESSMANAGER_ERROR.UNKNOWN_ERROR;
 
@@ -49,6 +52,12 @@ public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
         return handleAccessManagerException(new AccessManagerException(ORGANIZATIONMANAGER_ERROR), request);
     }
 
+    @ExceptionHandler(value = ConstraintViolationException.class)
+    protected ResponseEntity<Object> handleConstraintViolationException(ConstraintViolationException e, WebRequest request) {
+        String violations = e.getConstraintViolations().stream().map(v -> v.getPropertyPath() + " " + v.getMessage()).sorted().collect(Collectors.joining(", "));
+        return handleAccessManagerException(new AccessManagerException(INVALID_REQUEST, violations), request);
+    }
+
     @ExceptionHandler(value = AccessManagerException.class)
     private ResponseEntity<Object> handleAccessManagerException(AccessManagerException ex, WebRequest request) {
         LOG.error(ex.getMessage(), ex);
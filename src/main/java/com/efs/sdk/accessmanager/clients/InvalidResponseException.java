@@ -0,0 +1,37 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.clients;
+
+import org.springframework.web.client.RestClientException;
+
+/**
+ * Thrown, if a (successful) response of the organizationmanager cannot be parsed - an answer, not an unavailability of
+ * the organizationmanager.
+ *
+ * @author e:fs TechHub GmbH
+ */
+public class InvalidResponseException extends RestClientException {
+
+    /**
+     * Constructor.
+     *
+     * @param msg the message
+     * @param ex  the parse error
+     */
+    public InvalidResponseException(String msg, Throwable ex) {
+        super(msg, ex);
+    }
+}
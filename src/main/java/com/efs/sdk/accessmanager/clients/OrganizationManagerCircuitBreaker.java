@@ -0,0 +1,136 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.clients;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker for the requests to the organizationmanager.
+ * <p>
+ * Only unavailability (I/O errors, timeouts and 5xx responses) and slow calls count as failures - 4xx responses are
+ * regular answers (e.g. missing permissions). While the circuit is open, requests fail immediately with a
+ * {@link CallNotPermittedException} instead of waiting for the organizationmanager.
+ *
+ * @author e:fs TechHub GmbH
+ */
+@Component
+public class OrganizationManagerCircuitBreaker implements MeterBinder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OrganizationManagerCircuitBreaker.class);
+
+    private static final String NAME = "organizationmanager";
+
+    private final CircuitBreaker circuitBreaker;
+
+    /**
+     * Constructor.
+     *
+     * @param failureRateThreshold   percentage of failed (or slow) calls opening the circuit
+     * @param slidingWindowSize      number of calls the failure rate is calculated from
+     * @param minimumNumberOfCalls   minimum number of calls before the failure rate is calculated
+     * @param waitDurationInOpen     time (in seconds) the circuit stays open before probing again
+     * @param slowCallThreshold      duration (in milliseconds) from which a call is slow
+     * @param permittedCallsHalfOpen number of probing calls while half-open
+     */
+    public OrganizationManagerCircuitBreaker(@Value("${accessmanager.organizationmanager.circuit-breaker.failure-rate-threshold:50}") float failureRateThreshold, @Value("${accessmanager.organizationmanager.circuit-breaker.sliding-window-size:20}") int slidingWindowSize, @Value("${accessmanager.organizationmanager.circuit-breaker.minimum-number-of-calls:10}") int minimumNumberOfCalls, @Value("${accessmanager.organizationmanager.circuit-breaker.wait-duration-in-open-state:10}") long waitDurationInOpen, @Value("${accessmanager.organizationmanager.circuit-breaker.slow-call-duration-threshold:2000}") long slowCallThreshold, @Value("${accessmanager.organizationmanager.circuit-breaker.permitted-calls-in-half-open-state:3}") int permittedCallsHalfOpen) {
+        CircuitBreakerConfig config = CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRateThreshold)
+                .slowCallRateThreshold(failureRateThreshold)
+                .slowCallDurationThreshold(Duration.ofMillis(slowCallThreshold))
+                .slidingWindowSize(slidingWindowSize)
+                .minimumNumberOfCalls(minimumNumberOfCalls)
+                .waitDurationInOpenState(Duration.ofSeconds(waitDurationInOpen))
+                .permittedNumberOfCallsInHalfOpenState(permittedCallsHalfOpen)
+                .recordException(OrganizationManagerCircuitBreaker::isUnavailability)
+                .build();
+        this.circuitBreaker = CircuitBreaker.of(NAME, config);
+        circuitBreaker.getEventPublisher().onStateTransition(event -> LOG.warn("circuit of {} changed: {}", NAME, event.getStateTransition()));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("accessmanager.organizationmanager.circuit.state", circuitBreaker, cb -> cb.getState().getOrder())
+                .description("state of the circuit (0 = closed, 1 = open, 2 = half-open)")
+                .register(registry);
+        circuitBreaker.getEventPublisher().onStateTransition(event -> Counter.builder("accessmanager.organizationmanager.circuit.transitions")
+                .tag("from", event.getStateTransition().getFromState().name())
+                .tag("to", event.getStateTransition().getToState().name())
+                .register(registry)
+                .increment());
+    }
+
+    /**
+     * Calls the organizationmanager, if the circuit permits it
+     *
+     * @param call the call
+     * @param <T>  the type of the result
+     * @return the result of the call
+     * @throws CallNotPermittedException thrown, if the circuit is open
+     */
+    public <T> T call(Supplier<T> call) {
+        return circuitBreaker.executeSupplier(call);
+    }
+
+    /**
+     * Calls the organizationmanager asynchronously, if the circuit permits it
+     *
+     * @param call the call, returning the (pending) result
+     * @param <T>  the type of the result
+     * @return the result of the call - failed with a {@link CallNotPermittedException}, if the circuit is open
+     */
+    public <T> CompletableFuture<T> callAsync(Supplier<CompletionStage<T>> call) {
+        return circuitBreaker.executeCompletionStage(call).toCompletableFuture();
+    }
+
+    /**
+     * @return the current state of the circuit
+     */
+    public CircuitBreaker.State getState() {
+        return circuitBreaker.getState();
+    }
+
+    /**
+     * Checks whether an error means the organizationmanager is unavailable (instead of being an answer)
+     *
+     * @param e the error
+     * @return true, if the organizationmanager is unavailable or the circuit is open
+     */
+    public static boolean isUnavailability(Throwable e) {
+        Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+        return cause instanceof CallNotPermittedException || cause instanceof ResourceAccessException || cause instanceof HttpServerErrorException
+                || cause instanceof WebClientRequestException || cause instanceof WebClientResponseException wcre && wcre.getStatusCode().is5xxServerError();
+    }
+}
@@ -15,28 +15,48 @@ limitations under the License.
  */
 package com.efs.sdk.accessmanager.clients;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.http.HttpEntity;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 import org.springframework.stereotype.Component;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RequestCallback;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.util.List;
-import java.util.Map;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 
 @Component
-public class OrganizationManagerClient {
+public class OrganizationManagerClient implements MeterBinder {
 
     private final RestTemplate restTemplate;
+    private final WebClient webClient;
+    private final OrganizationManagerCircuitBreaker circuitBreaker;
     private final String organizationEndpoint;
     private final String spaceEndpoint;
 
+    /**
+     * IDs of the organizations by lower-case name - the same for all users, so shared between them
+     */
+    private final Cache<String, Long> organizationIds;
+
     public enum Permissions {
         READ,
         WRITE,
@@ -44,57 +64,165 @@ public class OrganizationManagerClient {
         GET
     }
 
-    public OrganizationManagerClient(RestTemplate restTemplate, @Value("${accessmanager.organizationmanager-endpoints.organization}") String organizationEndpoint, @Value("${accessmanager.organizationmanager-endpoints.space}") String spaceEndpoint) {
+    public OrganizationManagerClient(RestTemplate restTemplate, WebClient webClient, OrganizationManagerCircuitBreaker circuitBreaker, @Value("${accessmanager.organizationmanager-endpoints.organization}") String organizationEndpoint, @Value("${accessmanager.organizationmanager-endpoints.space}") String spaceEndpoint, @Value("${accessmanager.organizationmanager.organization-ids.ttl:600}") long organizationIdTtl) {
         this.restTemplate = restTemplate;
+        this.webClient = webClient;
+        this.circuitBreaker = circuitBreaker;
         this.organizationEndpoint = organizationEndpoint;
         this.spaceEndpoint = spaceEndpoint;
+        this.organizationIds = Caffeine.newBuilder().maximumSize(10_000L).expireAfterWrite(Duration.ofSeconds(organizationIdTtl)).recordStats().build();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, organizationIds, "accessmanager.organization-ids");
     }
 
     /**
-     * Get organization by name
+     * Get the ID of an organization by name
      * <p>
-     * Gets a given organization, if public or where the user has access to.
+     * The ID is cached (for all users) once the organization was fetched successfully, so access to the organization is
+     * only checked on a miss - whether a user may access it is decided when listing its spaces.
      *
-     * @param token the (user) token that is used to make the request
-     * @param organizationName the name of the organization to get
-     * @return the organization
-     * @throws RestClientException on 4xx client error or 5xx server error
+     * @param token the (user) token that is used to make the request on a miss
+     * @param organizationName the name of the organization
+     * @return the ID of the organization
+     * @throws RestClientException on 4xx client error or 5xx server error, {@link InvalidResponseException} if the
+     * organization cannot be parsed
+     * @throws CallNotPermittedException if the circuit to the organizationmanager is open
+     */
+    public Long getOrganizationId(JwtAuthenticationToken token, String organizationName) throws RestClientException {
+        String key = organizationName.toLowerCase(Locale.ROOT);
+        Long id = organizationIds.getIfPresent(key);
+        if (id == null) {
+            String url = String.format("%s/name/%s", organizationEndpoint, organizationName);
+            id = circuitBreaker.call(() -> restTemplate.execute(url, HttpMethod.GET, authorization(token), response -> parse(response.getBody(), OrganizationManagerResponseParser::parseId)));
+            organizationIds.put(key, id);
+        }
+        return id;
+    }
+
+    /**
+     * Get the ID of an organization by name - non-blocking
+     * <p>
+     * Like {@link #getOrganizationId(JwtAuthenticationToken, String)}, sharing its cache.
+     *
+     * @param token the (user) token that is used to make the request on a miss
+     * @param organizationName the name of the organization
+     * @return the ID of the organization - failed with a WebClientResponseException on 4xx client error or 5xx server
+     * error, or with a CallNotPermittedException if the circuit to the organizationmanager is open
      */
-    public Map<String, Object> getOrganization(JwtAuthenticationToken token, String organizationName) throws RestClientException {
-        MultiValueMap<String, String> headers = new LinkedMultiValueMap<>();
-        headers.add("Authorization", "Bearer " + token.getToken().getTokenValue());
+    public CompletableFuture<Long> getOrganizationIdAsync(JwtAuthenticationToken token, String organizationName) {
+        String key = organizationName.toLowerCase(Locale.ROOT);
+        Long id = organizationIds.getIfPresent(key);
+        if (id != null) {
+            return CompletableFuture.completedFuture(id);
+        }
         String url = String.format("%s/name/%s", organizationEndpoint, organizationName);
-        ParameterizedTypeReference<Map<String, Object>> responseType = new ParameterizedTypeReference<>() {
-        };
-        ResponseEntity<Map<String, Object>> response = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), responseType);
-        return response.getBody();
+        return circuitBreaker.<Long>callAsync(() -> parse(get(token, url), OrganizationManagerResponseParser::parseId).toFuture())
+                .thenApply(fetched -> {
+                    organizationIds.put(key, fetched);
+                    return fetched;
+                });
+    }
+
+    /**
+     * Forgets the ID of the given organization
+     *
+     * @param organizationName the name of the organization
+     */
+    public void invalidateOrganizationId(String organizationName) {
+        organizationIds.invalidate(organizationName.toLowerCase(Locale.ROOT));
     }
 
     /**
-     * Get spaces (by permissions)
+     * Get the names of the spaces (by permissions)
      * <p>
-     * Lists all spaces of given organization
-     * (only allowed, if user has access to the organization or if space and organization are public).
-     * If permissions is set, list only the spaces the user has requested permissions to.
-     * 
+     * Lists the spaces of the given organization (only allowed, if the user has access to the organization or if space
+     * and organization are public). If permissions is set, only the spaces the user has the requested permissions to
+     * are listed. Only id and name of the spaces are read from the response (streaming), instead of deserializing all
+     * their fields.
+     *
      * @param token the (user) token that is used to make the request
      * @param organizationId ID of the organization containing the spaces
      * @param permissions name of the permissions (can be one of READ, WRITE or DELETE)
      * @return the spaces
-     * @throws RestClientException on 4xx client error or 5xx server error
+     * @throws RestClientException on 4xx client error or 5xx server error, {@link InvalidResponseException} if the
+     * spaces cannot be parsed
+     * @throws CallNotPermittedException if the circuit to the organizationmanager is open
      */
-    public List<Map<String, Object>> getSpaces(JwtAuthenticationToken token, Long organizationId, Permissions permissions) throws RestClientException {
-        MultiValueMap<String, String> headers = new LinkedMultiValueMap<>();
-        headers.add("Authorization", "Bearer " + token.getToken().getTokenValue());
+    public SpaceList getSpaceList(JwtAuthenticationToken token, Long organizationId, Permissions permissions) throws RestClientException {
+        String url = spacesUrl(organizationId, permissions);
+        return circuitBreaker.call(() -> restTemplate.execute(url, HttpMethod.GET, authorization(token), response -> parse(response.getBody(), OrganizationManagerResponseParser::parseSpaces)));
+    }
+
+    /**
+     * Get the names of the spaces (by permissions) - non-blocking
+     * <p>
+     * Like {@link #getSpaceList(JwtAuthenticationToken, Long, Permissions)}, but without blocking the calling thread.
+     *
+     * @param token the (user) token that is used to make the request
+     * @param organizationId ID of the organization containing the spaces
+     * @param permissions name of the permissions (can be one of READ, WRITE or DELETE)
+     * @return the spaces - failed with a WebClientResponseException on 4xx client error or 5xx server error, or with a
+     * CallNotPermittedException if the circuit to the organizationmanager is open
+     */
+    public CompletableFuture<SpaceList> getSpaceListAsync(JwtAuthenticationToken token, Long organizationId, Permissions permissions) {
+        String url = spacesUrl(organizationId, permissions);
+        return circuitBreaker.callAsync(() -> parse(get(token, url), OrganizationManagerResponseParser::parseSpaces).toFuture());
+    }
+
+    private WebClient.ResponseSpec get(JwtAuthenticationToken token, String url) {
+        return webClient.get().uri(url).headers(headers -> headers.setBearerAuth(token.getToken().getTokenValue())).retrieve();
+    }
+
+    /**
+     * Parses the body with the given parser - an empty body is parsed as well.
+     * <p>
+     * The buffers of the body are joined before parsing, so unlike the blocking calls (which parse from the connection)
+     * the non-blocking ones hold the whole response in memory - fine for the small organization- and space-lists.
+     */
+    private static <T> Mono<T> parse(WebClient.ResponseSpec response, BodyParser<T> parser) {
+        return DataBufferUtils.join(response.bodyToFlux(DataBuffer.class))
+                .defaultIfEmpty(DefaultDataBufferFactory.sharedInstance.wrap(new byte[0]))
+                .map(body -> {
+                    try (InputStream in = body.asInputStream(true)) {
+                        return parse(in, parser);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    /**
+     * Parses the body with the given parser - a body that is no valid JSON (or lacks required fields) is thrown as
+     * {@link InvalidResponseException}, so it is neither taken for an unavailability (of the organizationmanager) nor
+     * counted by its circuit. Other IOExceptions (reading the body from the connection failed) are rethrown.
+     */
+    private static <T> T parse(InputStream body, BodyParser<T> parser) throws IOException {
+        try {
+            return parser.parse(body);
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            throw new InvalidResponseException("Invalid response of the organizationmanager: " + e.getMessage(), e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface BodyParser<T> {
+
+        T parse(InputStream body) throws IOException;
+    }
+
+    private static RequestCallback authorization(JwtAuthenticationToken token) {
+        return request -> request.getHeaders().setBearerAuth(token.getToken().getTokenValue());
+    }
+
+    private String spacesUrl(Long organizationId, Permissions permissions) {
         String url = String.format("%s/%d", spaceEndpoint, organizationId);
         if (permissions != null) {
             url += String.format("?permissions=%s", permissions);
         }
-
-        ParameterizedTypeReference<List<Map<String, Object>>> responseType = new ParameterizedTypeReference<>() {
-        };
-        ResponseEntity<List<Map<String, Object>>> response = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), responseType);
-        return response.getBody();
+        return url;
     }
     
 }
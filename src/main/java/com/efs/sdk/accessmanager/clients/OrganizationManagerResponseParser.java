@@ -0,0 +1,112 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.clients;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming parser for the responses of the organizationmanager, reading only the fields required for authorization
+ * and skipping all others without materializing them.
+ *
+ * @author e:fs TechHub GmbH
+ */
+public final class OrganizationManagerResponseParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final String FIELD_ID = "id";
+    private static final String FIELD_NAME = "name";
+
+    private OrganizationManagerResponseParser() {
+    }
+
+    /**
+     * Parses the ID of an organization
+     *
+     * @param body the organization (as JSON)
+     * @return the ID of the organization
+     * @throws IOException              thrown, if the body is no valid JSON-object
+     * @throws IllegalArgumentException thrown, if the organization has no ID
+     */
+    public static Long parseId(InputStream body) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            Long id = null;
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                id = parseIdAndName(parser).id();
+            }
+            if (id == null) {
+                throw new IllegalArgumentException("unable to find 'id' in organization");
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Parses a list of spaces
+     *
+     * @param body the spaces (as JSON-array)
+     * @return the spaces
+     * @throws IOException thrown, if the body is no valid JSON-array of spaces
+     */
+    public static SpaceList parseSpaces(InputStream body) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            List<SpaceSummary> spaces = new ArrayList<>();
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                return new SpaceList(spaces);
+            }
+            if (token != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "expected an array of spaces");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                SpaceSummary space = parseIdAndName(parser);
+                if (space.name() == null) {
+                    throw new IllegalArgumentException("unable to find 'name' in space " + space.id());
+                }
+                spaces.add(space);
+            }
+            return new SpaceList(spaces);
+        }
+    }
+
+    /**
+     * Reads id and name of the current object, skipping all other fields
+     */
+    private static SpaceSummary parseIdAndName(JsonParser parser) throws IOException {
+        Long id = null;
+        String name = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (FIELD_ID.equals(field) && value != JsonToken.VALUE_NULL) {
+                id = parser.getValueAsLong();
+            } else if (FIELD_NAME.equals(field) && value != JsonToken.VALUE_NULL) {
+                name = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new SpaceSummary(id, name);
+    }
+}
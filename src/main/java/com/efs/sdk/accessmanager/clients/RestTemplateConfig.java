@@ -0,0 +1,99 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.clients;
+
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Configuration of the RestTemplate shared by the organizationmanager-client, the proxied organization- and
+ * space-endpoints and the OAuth-configuration.
+ * <p>
+ * All requests share one connection-pool with limits per route; idle connections are evicted and every request is
+ * bounded by timeouts, so a hanging organizationmanager can not block request-threads indefinitely.
+ *
+ * @author e:fs TechHub GmbH
+ */
+@Configuration
+public class RestTemplateConfig {
+
+    private static final String POOL_NAME = "accessmanager.rest";
+
+    /**
+     * Pool of the connections of the RestTemplate
+     *
+     * @param maxTotal       maximum number of connections
+     * @param maxPerRoute    maximum number of connections per route (host)
+     * @param connectTimeout time (in milliseconds) to establish a connection
+     * @param socketTimeout  time (in milliseconds) to wait for data on an established connection
+     * @return the connection-pool
+     */
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager restConnectionManager(@Value("${accessmanager.rest.max-total:100}") int maxTotal, @Value("${accessmanager.rest.max-per-route:20}") int maxPerRoute, @Value("${accessmanager.rest.connect-timeout:2000}") long connectTimeout, @Value("${accessmanager.rest.socket-timeout:10000}") long socketTimeout) {
+        ConnectionConfig connectionConfig = ConnectionConfig.custom().setConnectTimeout(Timeout.ofMilliseconds(connectTimeout)).setSocketTimeout(Timeout.ofMilliseconds(socketTimeout)).setValidateAfterInactivity(TimeValue.ofSeconds(10L)).build();
+        return PoolingHttpClientConnectionManagerBuilder.create().setMaxConnTotal(maxTotal).setMaxConnPerRoute(maxPerRoute).setDefaultConnectionConfig(connectionConfig).build();
+    }
+
+    /**
+     * Metrics of the connection-pool (available, leased and pending connections)
+     *
+     * @param connectionManager the connection-pool
+     * @return the MeterBinder
+     */
+    @Bean
+    public MeterBinder restConnectionPoolMetrics(PoolingHttpClientConnectionManager connectionManager) {
+        return new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, POOL_NAME);
+    }
+
+    /**
+     * HttpClient using the connection-pool
+     *
+     * @param connectionManager        the connection-pool
+     * @param connectionRequestTimeout time (in milliseconds) to wait for a connection from the pool
+     * @param responseTimeout          time (in milliseconds) to wait for the response
+     * @param idleTimeout              time (in seconds) after which an idle connection is evicted
+     * @return the HttpClient
+     */
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient restHttpClient(PoolingHttpClientConnectionManager connectionManager, @Value("${accessmanager.rest.connection-request-timeout:2000}") long connectionRequestTimeout, @Value("${accessmanager.rest.response-timeout:10000}") long responseTimeout, @Value("${accessmanager.rest.idle-timeout:30}") long idleTimeout) {
+        RequestConfig requestConfig = RequestConfig.custom().setConnectionRequestTimeout(Timeout.ofMilliseconds(connectionRequestTimeout)).setResponseTimeout(Timeout.ofMilliseconds(responseTimeout)).build();
+        return HttpClients.custom().setConnectionManager(connectionManager).setDefaultRequestConfig(requestConfig).evictExpiredConnections().evictIdleConnections(TimeValue.ofSeconds(idleTimeout)).build();
+    }
+
+    /**
+     * Creates an instance of the RestTemplate.
+     *
+     * @param httpClient the pooled HttpClient
+     * @return the created {@link RestTemplate}
+     */
+    @Bean
+    public RestTemplate restTemplate(CloseableHttpClient httpClient) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+    }
+}
@@ -0,0 +1,55 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.clients;
+
+import java.util.*;
+
+/**
+ * Spaces listed by the organizationmanager, along with their lower-case names for case-insensitive lookups.
+ *
+ * @author e:fs TechHub GmbH
+ */
+public record SpaceList(List<SpaceSummary> spaces, Set<String> names) {
+
+    public SpaceList(List<SpaceSummary> spaces) {
+        this(spaces, namesOf(spaces));
+    }
+
+    public SpaceList {
+        spaces = Collections.unmodifiableList(spaces);
+        names = Collections.unmodifiableSet(names);
+    }
+
+    private static Set<String> namesOf(List<SpaceSummary> spaces) {
+        Set<String> names = new HashSet<>((int) (spaces.size() / 0.75f) + 1);
+        spaces.forEach(s -> names.add(s.name().toLowerCase(Locale.ROOT)));
+        return names;
+    }
+
+    /**
+     * Checks whether the given space is listed (ignoring case)
+     *
+     * @param space the name of the space
+     * @return true, if listed
+     */
+    public boolean contains(String space) {
+        return names.contains(space.toLowerCase(Locale.ROOT));
+    }
+
+    public boolean isEmpty() {
+        return spaces.isEmpty();
+    }
+}
@@ -0,0 +1,62 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.clients;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the (non-blocking) WebClient for the organizationmanager - with the same limits and timeouts as the
+ * RestTemplate ({@code accessmanager.rest.*}).
+ *
+ * @author e:fs TechHub GmbH
+ */
+@Configuration
+public class WebClientConfig {
+
+    /**
+     * WebClient with its own connection-pool
+     *
+     * @param builder                  the WebClient.Builder (with the codecs of the application)
+     * @param maxConnections           maximum number of connections
+     * @param connectTimeout           time (in milliseconds) to establish a connection
+     * @param connectionRequestTimeout time (in milliseconds) to wait for a connection from the pool
+     * @param responseTimeout          time (in milliseconds) to wait for the response
+     * @param idleTimeout              time (in seconds) after which an idle connection is evicted
+     * @return the WebClient
+     */
+    @Bean
+    public WebClient organizationManagerWebClient(WebClient.Builder builder, @Value("${accessmanager.rest.max-total:100}") int maxConnections, @Value("${accessmanager.rest.connect-timeout:2000}") int connectTimeout, @Value("${accessmanager.rest.connection-request-timeout:2000}") long connectionRequestTimeout, @Value("${accessmanager.rest.response-timeout:10000}") long responseTimeout, @Value("${accessmanager.rest.idle-timeout:30}") long idleTimeout) {
+        ConnectionProvider connectionProvider = ConnectionProvider.builder("organizationmanager")
+                .maxConnections(maxConnections)
+                .pendingAcquireTimeout(Duration.ofMillis(connectionRequestTimeout))
+                .maxIdleTime(Duration.ofSeconds(idleTimeout))
+                .metrics(true)
+                .build();
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout)
+                .responseTimeout(Duration.ofMillis(responseTimeout));
+        return builder.clientConnector(new ReactorClientHttpConnector(httpClient)).build();
+    }
+}
@@ -24,18 +24,21 @@ import org.springframework.http.HttpStatus;
  */
 public class AccessManagerException extends Exception {
 
+    private final ACCESSMANAGER_ERROR error;
     private final HttpStatus httpStatus;
     private final int errorCode;
     private String message;
 
     public AccessManagerException(ACCESSMANAGER_ERROR error) {
         super(error.code + ": " + error.msg);
+        this.error = error;
         httpStatus = error.status;
         errorCode = error.code;
     }
 
     public AccessManagerException(ACCESSMANAGER_ERROR error, String additionalMessage) {
         super(error.code + ": " + error.msg + " " + additionalMessage);
+        this.error = error;
         httpStatus = error.status;
         errorCode = error.code;
     }
@@ -66,6 +69,15 @@ public class AccessManagerException extends Exception {
         //commit errors
         UNABLE_COMMIT_TRANSACTION(10031, HttpStatus.FORBIDDEN, "Missing permission to commit transaction."),
 
+        // commit-event could not be stored in the outbox
+        UNABLE_STORE_COMMIT_EVENT(10032, HttpStatus.SERVICE_UNAVAILABLE, "Unable to store the commit-event."),
+
+        // too many commit-events waiting for Kafka
+        COMMIT_EVENTS_OVERLOADED(10033, HttpStatus.SERVICE_UNAVAILABLE, "Too many commits pending, please retry later."),
+
+        // too many datasets in a batch commit
+        COMMIT_BATCH_TOO_LARGE(10034, HttpStatus.PAYLOAD_TOO_LARGE, "Too many datasets in one commit."),
+
         // Unknown connection id
         UNABLE_FIND_ACCOUNT(10041, HttpStatus.NOT_FOUND, "Unable to find the given Storage Account."),
 
@@ -78,6 +90,12 @@ public class AccessManagerException extends Exception {
         // Error communicating with organizationmanager
         ORGANIZATIONMANAGER_ERROR(10071, HttpStatus.BAD_REQUEST, "Error communicating with organizationmanager."),
 
+        // organizationmanager not reachable or circuit open
+        ORGANIZATIONMANAGER_UNAVAILABLE(10072, HttpStatus.SERVICE_UNAVAILABLE, "organizationmanager is unavailable."),
+
+        // request violating constraints (e.g. a dataset without space)
+        INVALID_REQUEST(10081, HttpStatus.BAD_REQUEST, "Invalid request."),
+
         UNKNOWN_ERROR(50000, HttpStatus.INTERNAL_SERVER_ERROR, "something unexpected happened.");
 
         private final int code;
@@ -92,6 +110,10 @@ public class AccessManagerException extends Exception {
 
     }
 
+    public ACCESSMANAGER_ERROR getError() {
+        return error;
+    }
+
     public int getErrorCode() {
         return errorCode;
     }
@@ -18,6 +18,8 @@ package com.efs.sdk.accessmanager.core;
 
 import com.efs.sdk.accessmanager.clients.OrganizationManagerClient;
 import com.efs.sdk.accessmanager.commons.AccessManagerException;
+import com.efs.sdk.accessmanager.core.model.CommitItem;
+import com.efs.sdk.accessmanager.core.model.CommitResult;
 import com.efs.sdk.accessmanager.helper.AuthHelper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -25,14 +27,27 @@ import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static com.efs.sdk.accessmanager.commons.AccessManagerException.ACCESSMANAGER_ERROR.COMMIT_BATCH_TOO_LARGE;
+
+@Validated
 public class AccessManagementControllerV2 {
 
     /**
@@ -40,6 +55,11 @@ public class AccessManagementControllerV2 {
      */
     public static final String ENDPOINT = "/api/v2.0/accessmanager";
 
+    /**
+     * Header identifying a commit
+     */
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
     private static final String SPACE_LOADINGZONE = "loadingzone";
 
     private static final Logger LOG = LoggerFactory.getLogger(AccessManagementControllerV2.class);
@@ -51,37 +71,73 @@ public class AccessManagementControllerV2 {
      * Instance of the AccessManagementService.
      */
     private final AccessManagementService service;
+    /**
+     * Maximum number of datasets committed at once.
+     */
+    private final int maxBatchSize;
 
     /**
      * Constructor.
      *
-     * @param authHelper Instance of the Authentication utils.
-     * @param service    Instance of the AccessManagementService.
+     * @param authHelper   Instance of the Authentication utils.
+     * @param service      Instance of the AccessManagementService.
+     * @param maxBatchSize Maximum number of datasets committed at once.
      */
-    public AccessManagementControllerV2(AuthHelper authHelper, AccessManagementService service) {
+    public AccessManagementControllerV2(AuthHelper authHelper, AccessManagementService service, int maxBatchSize) {
         this.authHelper = authHelper;
         this.service = service;
+        this.maxBatchSize = maxBatchSize;
     }
 
     /**
      * Commit File-Transaction
      *
-     * @param token        The authorization token.
-     * @param organization name of the organization.
-     * @param space        The space-name
-     * @param rootDir      The root directory
+     * @param token          The authorization token.
+     * @param organization   name of the organization.
+     * @param space          The space-name
+     * @param rootDir        The root directory
+     * @param idempotencyKey Key identifying the commit - repetitions within the dedup window are ignored
      * @return files within the root directory in the storage-container
      */
     @Operation(summary = "Commit File-Transaction", description = "Signalizes, that all file-transaction is complete and notifies further processing.")
     @PostMapping(path = "commit", produces = "application/json")
     @ApiResponses(value = {@ApiResponse(responseCode = "204", description = "Successfully committed upload."), @ApiResponse(responseCode = "403", description = "User does not have permissions to commit upload.", content = @Content(schema = @Schema(hidden = true)))})
-    public ResponseEntity<Void> commit(@Parameter(hidden = true) JwtAuthenticationToken token, @Parameter(description = "The name of the `Organization`.", required = true) @RequestParam String organization, @Parameter(description = "The name of the `Space`", required = true) @RequestParam String space, @Parameter(description = "Directory of this transaction", required = true) @RequestParam(defaultValue = "none") String rootDir) throws AccessManagerException {
+    public ResponseEntity<Void> commit(@Parameter(hidden = true) JwtAuthenticationToken token, @Parameter(description = "The name of the `Organization`.", required = true) @RequestParam String organization, @Parameter(description = "The name of the `Space`", required = true) @RequestParam String space, @Parameter(description = "Directory of this transaction", required = true) @RequestParam(defaultValue = "none") String rootDir, @Parameter(description = "Key identifying this commit, repetitions (e.g. retries) with the same key are ignored") @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) throws AccessManagerException {
         LOG.info("committing dataset {}/{}/{}...", organization, space, rootDir);
         boolean canWrite = authHelper.isAllowed(token, organization, space, OrganizationManagerClient.Permissions.WRITE);
         String userName = authHelper.getUserName(token);
 
-        service.commit(organization, SPACE_LOADINGZONE, space, userName, canWrite, rootDir);
+        service.commit(organization, SPACE_LOADINGZONE, space, userName, canWrite, rootDir, idempotencyKey);
         LOG.info("committing dataset {}/{}/{}...done", organization, space, rootDir);
         return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
     }
+
+    /**
+     * Commit multiple File-Transactions at once
+     *
+     * @param token        The authorization token.
+     * @param organization name of the organization.
+     * @param items        The datasets (space and root directory)
+     * @return the result per dataset, in the order of the datasets
+     * @throws AccessManagerException thrown, if there are more datasets than allowed at once
+     */
+    @Operation(summary = "Commit multiple File-Transactions", description = "Signalizes, that the file-transactions of all given datasets are complete and notifies further processing. The permissions are checked once per space, the result is reported per dataset.")
+    @PostMapping(path = "commit/batch", consumes = "application/json", produces = "application/json")
+    @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Result per dataset: status 204 if committed, the status and error of the single commit otherwise."), @ApiResponse(responseCode = "400", description = "A dataset has no space.", content = @Content(schema = @Schema(hidden = true))), @ApiResponse(responseCode = "413", description = "Too many datasets at once.", content = @Content(schema = @Schema(hidden = true)))})
+    public ResponseEntity<List<CommitResult>> commitBatch(@Parameter(hidden = true) JwtAuthenticationToken token, @Parameter(description = "The name of the `Organization`.", required = true) @RequestParam String organization, @RequestBody List<@NotNull @Valid CommitItem> items) throws AccessManagerException {
+        if (items.size() > maxBatchSize) {
+            throw new AccessManagerException(COMMIT_BATCH_TOO_LARGE, "At most " + maxBatchSize + " datasets are allowed.");
+        }
+        LOG.info("committing {} datasets of {}...", items.size(), organization);
+        // check each space once, all of them at once
+        Map<String, CompletableFuture<Boolean>> canWrite = new HashMap<>();
+        for (CommitItem item : items) {
+            canWrite.computeIfAbsent(item.space(), space -> authHelper.isAllowedAsync(token, organization, space, OrganizationManagerClient.Permissions.WRITE));
+        }
+        String userName = authHelper.getUserName(token);
+
+        List<CommitResult> results = service.commitAll(organization, SPACE_LOADINGZONE, userName, items, canWrite);
+        LOG.info("committing {} datasets of {}...done", items.size(), organization);
+        return ResponseEntity.ok(results);
+    }
 }
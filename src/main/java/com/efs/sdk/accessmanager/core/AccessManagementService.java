@@ -16,18 +16,34 @@ limitations under the License.
 package com.efs.sdk.accessmanager.core;
 
 import com.efs.sdk.accessmanager.commons.AccessManagerException;
+import com.efs.sdk.accessmanager.core.events.EventMessage;
 import com.efs.sdk.accessmanager.core.events.EventPublisher;
+import com.efs.sdk.accessmanager.core.model.CommitItem;
+import com.efs.sdk.accessmanager.core.model.CommitKey;
 import com.efs.sdk.accessmanager.core.model.CommitModel;
+import com.efs.sdk.accessmanager.core.model.CommitResult;
 import com.efs.sdk.logging.AuditLogger;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static com.efs.sdk.accessmanager.commons.AccessManagerException.ACCESSMANAGER_ERROR.SAVE_ACCESS_DENIED;
 import static com.efs.sdk.accessmanager.commons.AccessManagerException.ACCESSMANAGER_ERROR.UNABLE_COMMIT_TRANSACTION;
+import static com.efs.sdk.accessmanager.commons.AccessManagerException.ACCESSMANAGER_ERROR.UNABLE_STORE_COMMIT_EVENT;
 
 public class AccessManagementService {
 
@@ -46,24 +62,189 @@ public class AccessManagementService {
     @Value("${accessmanager.topic.upload-complete}")
     public String topicName;
 
-    public AccessManagementService(ObjectMapper objectMapper, EventPublisher publisher) {
+    /**
+     * Kafka-key of the commit-events
+     */
+    @Value("${accessmanager.commit.key:organization-space}")
+    public CommitKey commitKey = CommitKey.ORGANIZATION_SPACE;
+
+    /**
+     * Suppresses repeated commits
+     */
+    private final CommitDeduplicator deduplicator;
+
+    public AccessManagementService(ObjectMapper objectMapper, EventPublisher publisher, CommitDeduplicator deduplicator) {
         this.objectMapper = objectMapper;
         this.publisher = publisher;
+        this.deduplicator = deduplicator;
     }
 
     public Void commit(String organization, String uploadStorage, String mainStorage, String userName, boolean canWrite, String rootDir) throws AccessManagerException {
+        return commit(organization, uploadStorage, mainStorage, userName, canWrite, rootDir, null);
+    }
+
+    /**
+     * Commits the dataset - a repetition of a stored commit within the dedup window is acknowledged without storing its
+     * event again, a repetition of a commit still being stored waits for its outcome
+     *
+     * @param organization   the organization
+     * @param uploadStorage  the storage the dataset was uploaded to
+     * @param mainStorage    the space of the dataset
+     * @param userName       the name of the user
+     * @param canWrite       whether the user can write to the space
+     * @param rootDir        the root directory of the dataset
+     * @param idempotencyKey the key identifying the commit, supplied by the client - may be null
+     * @return nothing
+     * @throws AccessManagerException thrown, if the user cannot write or the event cannot be stored
+     */
+    public Void commit(String organization, String uploadStorage, String mainStorage, String userName, boolean canWrite, String rootDir, String idempotencyKey) throws AccessManagerException {
         AuditLogger.info(LOG, "Requesting the file upload transaction for organization {} to the storagelocation {} that is supposed to be processed to end up in {}", userName, organization, uploadStorage, mainStorage);
         if (!canWrite) {
             AuditLogger.warning(LOG, "User does not have the permission to trigger commit.", userName);
             throw new AccessManagerException(SAVE_ACCESS_DENIED);
         }
+        CommitModel commitModel = new CommitModel(organization, mainStorage, uploadStorage, userName, rootDir);
+        String fingerprint = deduplicator.fingerprint(commitModel, idempotencyKey);
+        CompletableFuture<Boolean> claim = deduplicator.claim(fingerprint);
+        if (claim == null) {
+            AuditLogger.info(LOG, "Ignoring repeated commit of {} in space {} of organization {}", userName, rootDir, mainStorage, organization);
+            return null;
+        }
         try {
-            CommitModel commitModel = new CommitModel(organization, mainStorage, uploadStorage, userName, rootDir);
             String containerJson = objectMapper.writeValueAsString(commitModel);
-            publisher.sendMessage(containerJson, topicName);
+            publisher.sendMessage(commitKey.of(commitModel), containerJson, topicName);
+            deduplicator.complete(claim);
             return null;
-        } catch (IOException e) {
+        } catch (JsonProcessingException e) {
+            deduplicator.release(fingerprint, claim);
             throw new AccessManagerException(UNABLE_COMMIT_TRANSACTION);
+        } catch (IOException e) {
+            deduplicator.release(fingerprint, claim);
+            LOG.error("Unable to store commit-event for {}/{}: {}", organization, mainStorage, e.getMessage(), e);
+            throw new AccessManagerException(UNABLE_STORE_COMMIT_EVENT);
+        } catch (AccessManagerException | RuntimeException e) {
+            deduplicator.release(fingerprint, claim);
+            throw e;
+        }
+    }
+
+    /**
+     * Commits the given datasets at once - each dataset is committed, if the user can write to its space (repetitions
+     * within the dedup window are reported as committed without storing their events again)
+     *
+     * @param organization  the organization
+     * @param uploadStorage the storage the datasets were uploaded to
+     * @param userName      the name of the user
+     * @param items         the datasets (main storage and root directory)
+     * @param canWrite      whether the user can write, by space
+     * @return the result per dataset, in the order of the datasets
+     */
+    public List<CommitResult> commitAll(String organization, String uploadStorage, String userName, List<CommitItem> items, Map<String, CompletableFuture<Boolean>> canWrite) {
+        AuditLogger.info(LOG, "Requesting the file upload transactions of {} datasets for organization {} from the storagelocation {}", userName, items.size(), organization, uploadStorage);
+        CommitResult[] results = new CommitResult[items.size()];
+        CommitModel[] commitModels = new CommitModel[items.size()];
+        String[] messages = new String[items.size()];
+        String[] fingerprints = new String[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            CommitItem item = items.get(i);
+            try {
+                if (!isAllowed(canWrite.get(item.space()))) {
+                    AuditLogger.warning(LOG, "User does not have the permission to trigger commit in space {}.", userName, item.space());
+                    throw new AccessManagerException(SAVE_ACCESS_DENIED);
+                }
+                commitModels[i] = new CommitModel(organization, item.space(), uploadStorage, userName, item.rootDir());
+                messages[i] = objectMapper.writeValueAsString(commitModels[i]);
+                fingerprints[i] = deduplicator.fingerprint(commitModels[i], null);
+            } catch (AccessManagerException e) {
+                results[i] = CommitResult.failed(item, e);
+            } catch (JsonProcessingException e) {
+                results[i] = CommitResult.failed(item, new AccessManagerException(UNABLE_COMMIT_TRANSACTION));
+            }
+        }
+        // claim in the order of the fingerprints, so batches sharing datasets never wait for each other in a cycle
+        SortedMap<String, AccessManagerException> claims = new TreeMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            if (results[i] == null && fingerprints[i] != null) {
+                claims.put(fingerprints[i], null);
+            }
+        }
+        Map<String, CompletableFuture<Boolean>> claimed = new HashMap<>();
+        Set<String> repeated = new HashSet<>();
+        for (String fingerprint : claims.keySet()) {
+            try {
+                CompletableFuture<Boolean> claim = deduplicator.claim(fingerprint);
+                if (claim != null) {
+                    claimed.put(fingerprint, claim);
+                } else {
+                    repeated.add(fingerprint);
+                }
+            } catch (AccessManagerException e) {
+                claims.put(fingerprint, e);
+            }
+        }
+        List<Integer> accepted = new ArrayList<>(items.size());
+        List<EventMessage> events = new ArrayList<>(items.size());
+        Set<String> batched = new HashSet<>();
+        for (int i = 0; i < items.size(); i++) {
+            String fingerprint = fingerprints[i];
+            if (results[i] != null) {
+                continue;
+            }
+            if (fingerprint != null && repeated.contains(fingerprint)) {
+                results[i] = CommitResult.committed(items.get(i));
+                continue;
+            }
+            if (fingerprint != null && claims.get(fingerprint) != null) {
+                results[i] = CommitResult.failed(items.get(i), claims.get(fingerprint));
+                continue;
+            }
+            // a dataset repeated within the batch shares the outcome of its first occurrence
+            if (fingerprint == null || batched.add(fingerprint)) {
+                events.add(new EventMessage(commitKey.of(commitModels[i]), messages[i]));
+            }
+            accepted.add(i);
+        }
+        AccessManagerException publishError;
+        try {
+            publishError = publishAll(organization, events);
+        } catch (RuntimeException e) {
+            claimed.forEach(deduplicator::release);
+            throw e;
+        }
+        if (publishError == null) {
+            claimed.values().forEach(deduplicator::complete);
+        } else {
+            claimed.forEach(deduplicator::release);
+        }
+        for (int i : accepted) {
+            results[i] = publishError == null ? CommitResult.committed(items.get(i)) : CommitResult.failed(items.get(i), publishError);
+        }
+        return List.of(results);
+    }
+
+    private AccessManagerException publishAll(String organization, List<EventMessage> messages) {
+        if (messages.isEmpty()) {
+            return null;
+        }
+        try {
+            publisher.sendMessages(messages, topicName);
+            return null;
+        } catch (AccessManagerException e) {
+            return e;
+        } catch (IOException e) {
+            LOG.error("Unable to store {} commit-events for {}: {}", messages.size(), organization, e.getMessage(), e);
+            return new AccessManagerException(UNABLE_STORE_COMMIT_EVENT);
+        }
+    }
+
+    private static boolean isAllowed(CompletableFuture<Boolean> canWrite) throws AccessManagerException {
+        try {
+            return canWrite.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof AccessManagerException ame) {
+                throw ame;
+            }
+            throw e;
         }
     }
 }
@@ -0,0 +1,183 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core;
+
+import com.efs.sdk.accessmanager.commons.AccessManagerException;
+import com.efs.sdk.accessmanager.core.model.CommitModel;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.efs.sdk.accessmanager.commons.AccessManagerException.ACCESSMANAGER_ERROR.COMMIT_EVENTS_OVERLOADED;
+
+/**
+ * Suppresses repeated commits (e.g. retries after a timeout) within {@code accessmanager.commit.dedup.window} seconds.
+ * <p>
+ * A commit is identified by the idempotency-key supplied by the client (scoped to user and organization) or - without
+ * key - by organization, space, root directory and user. Commits without key and without root directory ("none") are
+ * not identifiable and never suppressed.
+ * <p>
+ * A commit is claimed before its event is stored and stays pending until the event is stored
+ * ({@link #complete(CompletableFuture)}) or storing failed ({@link #release(String, CompletableFuture)}) - both act on
+ * the claim itself, so they reach its waiting repetitions even if it was evicted meanwhile, and never touch a claim of
+ * another caller. A repetition arriving meanwhile waits for the outcome: it is suppressed
+ * once the event is stored, and claims the commit itself if storing failed. So only a commit that was actually stored
+ * suppresses its repetitions. At most {@code accessmanager.commit.dedup.max-size} commits are remembered. Disabled with
+ * {@code accessmanager.commit.dedup.enabled=false}.
+ *
+ * @author e:fs TechHub GmbH
+ */
+@Component
+public class CommitDeduplicator implements MeterBinder {
+
+    /**
+     * Maximum time a repetition waits for the pending commit
+     */
+    private static final long PENDING_TIMEOUT = TimeUnit.SECONDS.toNanos(10L);
+
+    private static final String NO_ROOT_DIR = "none";
+
+    private final boolean enabled;
+
+    /**
+     * Claimed commits - completed with true once stored
+     */
+    private final Cache<String, CompletableFuture<Boolean>> fingerprints;
+
+    private final LongAdder duplicates = new LongAdder();
+
+    /**
+     * Constructor.
+     *
+     * @param enabled whether repeated commits are suppressed
+     * @param window  time (in seconds) a commit is remembered
+     * @param maxSize maximum number of remembered commits
+     */
+    public CommitDeduplicator(@Value("${accessmanager.commit.dedup.enabled:true}") boolean enabled, @Value("${accessmanager.commit.dedup.window:300}") long window, @Value("${accessmanager.commit.dedup.max-size:100000}") long maxSize) {
+        this.enabled = enabled;
+        this.fingerprints = Caffeine.newBuilder().maximumSize(maxSize).expireAfterWrite(Duration.ofSeconds(window)).build();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("accessmanager.commit.duplicates", duplicates, LongAdder::sum)
+                .description("commits suppressed as repetitions within the dedup window")
+                .register(registry);
+    }
+
+    /**
+     * Identifies the commit
+     *
+     * @param commit         the commit
+     * @param idempotencyKey the key supplied by the client, may be null
+     * @return the fingerprint of the commit, or null if repetitions of the commit are not suppressed
+     */
+    public String fingerprint(CommitModel commit, String idempotencyKey) {
+        if (!enabled) {
+            return null;
+        }
+        String organization = commit.accountName().toLowerCase(Locale.ROOT);
+        if (idempotencyKey != null && !idempotencyKey.isBlank()) {
+            return String.join("\n", "key", commit.userName(), organization, idempotencyKey);
+        }
+        String rootDir = commit.rootDir();
+        if (rootDir == null || rootDir.isBlank() || NO_ROOT_DIR.equals(rootDir)) {
+            return null;
+        }
+        return String.join("\n", "commit", commit.userName(), organization, commit.storageName().toLowerCase(Locale.ROOT), rootDir);
+    }
+
+    /**
+     * Claims the commit - unless it was already stored within the window. If the commit is pending, waits for its
+     * outcome.
+     *
+     * @param fingerprint the fingerprint of the commit, may be null
+     * @return the claim (to be completed or released) - null, if the commit is a repetition
+     * @throws AccessManagerException thrown, if the pending commit did not finish in time
+     */
+    public CompletableFuture<Boolean> claim(String fingerprint) throws AccessManagerException {
+        CompletableFuture<Boolean> claim = new CompletableFuture<>();
+        if (fingerprint == null) {
+            return claim;
+        }
+        long deadline = System.nanoTime() + PENDING_TIMEOUT;
+        while (true) {
+            CompletableFuture<Boolean> pending = fingerprints.asMap().putIfAbsent(fingerprint, claim);
+            if (pending == null) {
+                return claim;
+            }
+            if (isStored(pending, deadline)) {
+                duplicates.increment();
+                return null;
+            }
+            // storing the pending commit failed - claim it again
+        }
+    }
+
+    private static boolean isStored(CompletableFuture<Boolean> pending, long deadline) throws AccessManagerException {
+        try {
+            return pending.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AccessManagerException(COMMIT_EVENTS_OVERLOADED);
+        } catch (TimeoutException e) {
+            throw new AccessManagerException(COMMIT_EVENTS_OVERLOADED);
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Completes a claimed commit, as its event was stored - repetitions are suppressed from now on
+     *
+     * @param claim the claim of the commit
+     */
+    public void complete(CompletableFuture<Boolean> claim) {
+        claim.complete(true);
+    }
+
+    /**
+     * Releases a claimed commit, as its event could not be stored - a retry is no repetition then
+     *
+     * @param fingerprint the fingerprint of the commit, may be null
+     * @param claim       the claim of the commit
+     */
+    public void release(String fingerprint, CompletableFuture<Boolean> claim) {
+        if (fingerprint != null) {
+            fingerprints.asMap().remove(fingerprint, claim);
+        }
+        claim.complete(false);
+    }
+
+    /**
+     * @return the number of suppressed commits
+     */
+    public long duplicates() {
+        return duplicates.sum();
+    }
+}
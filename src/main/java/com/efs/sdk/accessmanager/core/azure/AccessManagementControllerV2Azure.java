@@ -28,6 +28,7 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
@@ -36,6 +37,8 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * REST controller for managing Storage-access.
  *
@@ -58,11 +61,12 @@ public class AccessManagementControllerV2Azure extends AccessManagementControlle
     /**
      * Constructor.
      *
-     * @param authHelper Instance of the Authentication utils.
-     * @param service    Instance of the AccessManagementService.
+     * @param authHelper   Instance of the Authentication utils.
+     * @param service      Instance of the AccessManagementService.
+     * @param maxBatchSize Maximum number of datasets committed at once.
      */
-    public AccessManagementControllerV2Azure(AuthHelper authHelper, AccessManagementServiceAzure service) {
-        super(authHelper, service);
+    public AccessManagementControllerV2Azure(AuthHelper authHelper, AccessManagementServiceAzure service, @Value("${accessmanager.commit.batch.max-size:500}") int maxBatchSize) {
+        super(authHelper, service, maxBatchSize);
         this.service = service;
     }
 
@@ -78,7 +82,8 @@ public class AccessManagementControllerV2Azure extends AccessManagementControlle
     @PostMapping(path = "read")
     @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Successfully committed upload."), @ApiResponse(responseCode = "403", description = "User does not have permissions to commit upload.", content = @Content(schema = @Schema(hidden = true)))})
     public ResponseEntity<String> createReadToken(@Parameter(hidden = true) JwtAuthenticationToken token, @Parameter(description = "The name of the `Organization`.", required = true) @RequestParam String organization, @Parameter(description = "The name of the `Space`.", required = true) @RequestParam String space) throws AccessManagerException {
-        boolean canRead = authHelper.isAllowed(token, organization, space, Permissions.READ);
+        // the token is prepared while the permissions are checked, but only released if the user can read
+        CompletableFuture<Boolean> canRead = authHelper.isAllowedAsync(token, organization, space, Permissions.READ);
         return ResponseEntity.ok(service.createReadToken(organization, space, canRead));
     }
 
@@ -112,7 +117,7 @@ public class AccessManagementControllerV2Azure extends AccessManagementControlle
 
     private ResponseEntity<String> createUploadToken(JwtAuthenticationToken token, String organization, String space, String uploadSpace) throws AccessManagerException {
         // check role for desired main space
-        boolean canUpload = authHelper.isAllowed(token, organization, space, Permissions.WRITE);
+        CompletableFuture<Boolean> canUpload = authHelper.isAllowedAsync(token, organization, space, Permissions.WRITE);
         // create upload-token for main storage!!
         return ResponseEntity.ok(service.createUploadToken(organization, uploadSpace, canUpload));
     }
@@ -130,7 +135,11 @@ public class AccessManagementControllerV2Azure extends AccessManagementControlle
     @PostMapping(path = "delete")
     public ResponseEntity<String> createDeleteToken(@Parameter(hidden = true) JwtAuthenticationToken token, @Parameter(description = "The name of the `Organization`.", required = true) @RequestParam String organization, @Parameter(description = "The name of the `Space`.", required = true) @RequestParam String space) throws AccessManagerException {
         // can delete directly or from loadingzone, if user has write-permission to any of the organizations spaces
-        boolean canDelete = authHelper.isAllowed(token, organization, space, Permissions.DELETE) || (space.equals(SPACE_LOADINGZONE) && authHelper.canAccessOrganization(token, organization, Permissions.WRITE));
+        CompletableFuture<Boolean> canDelete = authHelper.isAllowedAsync(token, organization, space, Permissions.DELETE);
+        if (space.equals(SPACE_LOADINGZONE)) {
+            // WRITE on the organization is only checked, if DELETE on the loadingzone is not granted
+            canDelete = canDelete.thenCompose(granted -> granted ? CompletableFuture.completedFuture(true) : authHelper.canAccessOrganizationAsync(token, organization, Permissions.WRITE));
+        }
         return ResponseEntity.ok(service.createDeleteToken(organization, space, canDelete));
     }
 }
@@ -15,13 +15,11 @@ limitations under the License.
  */
 package com.efs.sdk.accessmanager.core.azure;
 
-import com.azure.core.http.rest.PagedIterable;
-import com.azure.resourcemanager.AzureResourceManager;
 import com.azure.resourcemanager.storage.models.StorageAccount;
-import com.azure.resourcemanager.storage.models.StorageAccounts;
-import com.efs.sdk.accessmanager.clients.AzureResourceManagerProvider;
 import com.efs.sdk.accessmanager.commons.AccessManagerException;
 import com.efs.sdk.accessmanager.core.AccessManagementService;
+import com.efs.sdk.accessmanager.core.CommitDeduplicator;
+import com.efs.sdk.accessmanager.core.azure.TokenPreparationExecutor.Preparation;
 import com.efs.sdk.accessmanager.core.azure.model.SASToken;
 import com.efs.sdk.accessmanager.core.azure.model.SASToken.SASType;
 import com.efs.sdk.accessmanager.core.events.EventPublisher;
@@ -29,14 +27,13 @@ import com.efs.sdk.accessmanager.core.model.StorageTarget;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static com.efs.sdk.accessmanager.commons.AccessManagerException.ACCESSMANAGER_ERROR.*;
 import static com.efs.sdk.accessmanager.core.azure.model.SASToken.SASType.*;
@@ -57,24 +54,37 @@ public class AccessManagementServiceAzure extends AccessManagementService {
      */
     private final StorageClient storageClient;
 
-    private final List<SASToken> sasModels = new ArrayList<>();
+    /**
+     * Cache of issued SAS-Tokens
+     */
+    private final SASTokenCache tokenCache;
+
+    /**
+     * Resolves the StorageAccounts of organizations
+     */
+    private final StorageAccountResolver accountResolver;
 
-    @Value("${accessmanager.storage.resourcegroup:SDK}")
-    private String resourceGroup;
-    @Value("${sas.token.cache.buffer}")
-    private int cacheBuffer;
-    private final AzureResourceManagerProvider azureProvider;
+    /**
+     * Executor preparing the issuance of tokens while the permissions are checked
+     */
+    private final TokenPreparationExecutor preparationExecutor;
 
     /**
      * Constructor.
      *
-     * @param storageClient The StorageClient
-     * @param publisher     The EventPublisher
+     * @param storageClient       The StorageClient
+     * @param publisher           The EventPublisher
+     * @param deduplicator        The suppressor of repeated commits
+     * @param accountResolver     The resolver of StorageAccounts
+     * @param tokenCache          The cache of issued SAS-Tokens
+     * @param preparationExecutor The executor preparing issuances
      */
-    public AccessManagementServiceAzure(StorageClient storageClient, ObjectMapper objectMapper, EventPublisher publisher, AzureResourceManagerProvider azureProvider) {
-        super(objectMapper, publisher);
+    public AccessManagementServiceAzure(StorageClient storageClient, ObjectMapper objectMapper, EventPublisher publisher, CommitDeduplicator deduplicator, StorageAccountResolver accountResolver, SASTokenCache tokenCache, TokenPreparationExecutor preparationExecutor) {
+        super(objectMapper, publisher, deduplicator);
         this.storageClient = storageClient;
-        this.azureProvider = azureProvider;
+        this.accountResolver = accountResolver;
+        this.tokenCache = tokenCache;
+        this.preparationExecutor = preparationExecutor;
     }
 
     /**
@@ -87,31 +97,38 @@ public class AccessManagementServiceAzure extends AccessManagementService {
      * @throws AccessManagerException thrown on missing rights
      */
     public String createReadToken(String organization, String space, boolean canRead) throws AccessManagerException {
+        return createReadToken(organization, space, CompletableFuture.completedFuture(canRead));
+    }
+
+    /**
+     * Creates a read-token, preparing its issuance while the permissions are still being checked
+     *
+     * @param organization the organization.
+     * @param space        The name of the container.
+     * @param canRead      whether the user has the right to read from the storage (pending)
+     * @return the read-token
+     * @throws AccessManagerException thrown on missing rights
+     */
+    public String createReadToken(String organization, String space, CompletableFuture<Boolean> canRead) throws AccessManagerException {
         LOG.info("Requesting a read-token for space {} in organization {}", space, organization);
-        if (!canRead) {
+        StorageTarget container = new StorageTarget(organization, space);
+        Preparation preparation = prepare(READ, container, canRead);
+        if (!await(canRead)) {
             throw new AccessManagerException(READ_ACCESS_DENIED);
         }
-        Optional<String> storedToken = getTokenFromCache(READ, organization, space);
-        if (storedToken.isPresent()) {
-            return storedToken.get();
-        }
+        // a preparation still queued is run right here instead of waiting for a pool-thread
+        preparation.run();
+        await(preparation);
+        SASToken sasToken = tokenCache.getOrIssue(READ, organization, space, () -> storageClient.createReadToken(getStorageAccount(organization), container));
+        return sasToken.token();
+    }
 
-        StorageTarget container = new StorageTarget(organization, space);
-        Optional<StorageAccount> accountOpt = getStorageAccount(organization);
+    private StorageAccount getStorageAccount(String organization) throws AccessManagerException {
+        Optional<StorageAccount> accountOpt = accountResolver.getStorageAccount(organization);
         if (accountOpt.isEmpty()) {
             throw new AccessManagerException(UNABLE_FIND_ACCOUNT);
         }
-        StorageAccount account = accountOpt.get();
-        SASToken sasToken = storageClient.createReadToken(account, container);
-        sasModels.add(sasToken);
-        return sasToken.token();
-    }
-
-    private Optional<StorageAccount> getStorageAccount(String organization) {
-        AzureResourceManager azure = azureProvider.azure();
-        StorageAccounts storageAccountsImpl = azure.storageAccounts();
-        PagedIterable<StorageAccount> storageAccounts = storageAccountsImpl.listByResourceGroup(resourceGroup);
-        return storageAccounts.stream().filter(a -> a.name().equalsIgnoreCase(organization)).findFirst();
+        return accountOpt.get();
     }
 
     /**
@@ -124,24 +141,29 @@ public class AccessManagementServiceAzure extends AccessManagementService {
      * @throws AccessManagerException thrown on missing rights
      */
     public String createDeleteToken(String organization, String space, boolean canDelete) throws AccessManagerException {
-        LOG.info("Requesting a delete-token for space {} in organization {}", space, organization);
-
-        if (!canDelete) {
-            throw new AccessManagerException(DELETE_ACCESS_DENIED);
-        }
-        Optional<String> storedToken = getTokenFromCache(DELETE, organization, space);
-        if (storedToken.isPresent()) {
-            return storedToken.get();
-        }
+        return createDeleteToken(organization, space, CompletableFuture.completedFuture(canDelete));
+    }
 
+    /**
+     * Creates a delete-token, preparing its issuance while the permissions are still being checked
+     *
+     * @param organization the organization.
+     * @param space        The name of the container.
+     * @param canDelete    whether the user has the right to delete from the storage (pending)
+     * @return the delete-token
+     * @throws AccessManagerException thrown on missing rights
+     */
+    public String createDeleteToken(String organization, String space, CompletableFuture<Boolean> canDelete) throws AccessManagerException {
+        LOG.info("Requesting a delete-token for space {} in organization {}", space, organization);
         StorageTarget container = new StorageTarget(organization, space);
-        Optional<StorageAccount> accountOpt = getStorageAccount(organization);
-        if (accountOpt.isEmpty()) {
-            throw new AccessManagerException(UNABLE_FIND_ACCOUNT);
+        Preparation preparation = prepare(DELETE, container, canDelete);
+        if (!await(canDelete)) {
+            throw new AccessManagerException(DELETE_ACCESS_DENIED);
         }
-        StorageAccount account = accountOpt.get();
-        SASToken sasToken = storageClient.createDeleteToken(account, container);
-        sasModels.add(sasToken);
+        // a preparation still queued is run right here instead of waiting for a pool-thread
+        preparation.run();
+        await(preparation);
+        SASToken sasToken = tokenCache.getOrIssue(DELETE, organization, space, () -> storageClient.createDeleteToken(getStorageAccount(organization), container));
         return sasToken.token();
     }
 
@@ -155,45 +177,92 @@ public class AccessManagementServiceAzure extends AccessManagementService {
      * @throws AccessManagerException thrown on missing rights
      */
     public String createUploadToken(String organization, String space, boolean canWrite) throws AccessManagerException {
-        LOG.info("Requesting a upload-token for space {} in organization {}", space, organization);
-
-        if (!canWrite) {
-            throw new AccessManagerException(SAVE_ACCESS_DENIED);
-        }
-        Optional<String> storedToken = getTokenFromCache(WRITE, organization, space);
-        if (storedToken.isPresent()) {
-            return storedToken.get();
-        }
+        return createUploadToken(organization, space, CompletableFuture.completedFuture(canWrite));
+    }
 
+    /**
+     * Creates a upload-token, preparing its issuance while the permissions are still being checked
+     *
+     * @param organization the organization.
+     * @param space        The name of the container.
+     * @param canWrite     whether the user has the right to upload to the storage (pending)
+     * @return the upload-token
+     * @throws AccessManagerException thrown on missing rights
+     */
+    public String createUploadToken(String organization, String space, CompletableFuture<Boolean> canWrite) throws AccessManagerException {
+        LOG.info("Requesting a upload-token for space {} in organization {}", space, organization);
         StorageTarget container = new StorageTarget(organization, space);
-        Optional<StorageAccount> accountOpt = getStorageAccount(organization);
-        if (accountOpt.isEmpty()) {
-            throw new AccessManagerException(UNABLE_FIND_ACCOUNT);
+        Preparation preparation = prepare(WRITE, container, canWrite);
+        if (!await(canWrite)) {
+            throw new AccessManagerException(SAVE_ACCESS_DENIED);
         }
-        StorageAccount account = accountOpt.get();
-        SASToken sasToken = storageClient.createUploadToken(account, container);
-        sasModels.add(sasToken);
+        // a preparation still queued is run right here instead of waiting for a pool-thread
+        preparation.run();
+        await(preparation);
+        SASToken sasToken = tokenCache.getOrIssue(WRITE, organization, space, () -> storageClient.createUploadToken(getStorageAccount(organization), container));
         return sasToken.token();
     }
 
-    private Optional<String> getTokenFromCache(SASType type, String organization, String space) {
-        Optional<SASToken> sasTokenOpt = findToken(type, organization, space);
-        if (sasTokenOpt.isPresent() && sasTokenOpt.get().isValid(cacheBuffer)) {
-            return Optional.of(sasTokenOpt.get().token());
+    /**
+     * Loads the key of the StorageAccount and checks the container in the background, while the permissions are
+     * checked - only if the permissions are still pending, the token is not cached and the StorageAccount is indexed
+     * (unknown organizations are never looked up before the permission is granted). The preparation only fills
+     * caches: it stops as soon as the permission is denied, on denial its result (and any error) is discarded, on
+     * approval the token is issued from the warm caches. If no pool-thread started the preparation before the permission
+     * is granted, the caller runs it.
+     *
+     * @return the preparation (completed, if nothing is prepared)
+     */
+    private Preparation prepare(SASType type, StorageTarget container, CompletableFuture<Boolean> authorization) {
+        if (authorization.isDone() || tokenCache.isCached(type, container.organization(), container.space())) {
+            return Preparation.skipped();
         }
-        return Optional.empty();
+        return preparationExecutor.submit(() -> {
+            if (isDenied(authorization)) {
+                return;
+            }
+            Optional<StorageAccount> account = accountResolver.getIndexedStorageAccount(container.organization());
+            if (account.isEmpty() || isDenied(authorization)) {
+                return;
+            }
+            try {
+                storageClient.prepare(account.get(), container);
+            } catch (AccessManagerException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    private static boolean isDenied(CompletableFuture<Boolean> authorization) {
+        return authorization.isCompletedExceptionally() || Boolean.FALSE.equals(authorization.getNow(null));
     }
 
-    private Optional<SASToken> findToken(SASType type, String orgaName, String spaceName) {
-        return sasModels.stream().filter(model -> model.organization().equalsIgnoreCase(orgaName) && model.space().equalsIgnoreCase(spaceName) && type == model.type()).findFirst();
+    private static <T> T await(CompletableFuture<T> future) throws AccessManagerException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof AccessManagerException ame) {
+                throw ame;
+            }
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            if (cause instanceof Error err) {
+                throw err;
+            }
+            throw e;
+        }
     }
 
     /**
-     * Clear token-cache every 10 seconds to prevent it from being cluttered by outdated tokens (e.g. tokens from
-     * LOCKED spaces)
+     * Evict expired tokens from the token-cache every 10 seconds to prevent it from being cluttered by outdated tokens
+     * (e.g. tokens from LOCKED spaces) and re-issue recently served tokens that are about to expire (if refresh-ahead
+     * is enabled)
      */
     @Scheduled(fixedRate = 10_000L)
     public void clearTokenCache() {
-        sasModels.removeIf(sas -> !sas.isValid(cacheBuffer));
+        tokenCache.cleanUp();
+        tokenCache.refreshAhead();
     }
 }
@@ -0,0 +1,130 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.azure;
+
+import com.efs.sdk.accessmanager.commons.AccessManagerException;
+import com.efs.sdk.accessmanager.core.model.StorageTarget;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Cache for the results of checking whether a container exists.
+ * <p>
+ * Existing containers are remembered for {@code accessmanager.storage.container-check.positive-ttl} seconds, missing
+ * ones for {@code accessmanager.storage.container-check.negative-ttl} seconds. Failed checks are not cached.
+ *
+ * @author e:fs TechHub GmbH
+ */
+@Component
+@Profile("!s3")
+public class ContainerExistenceCache {
+
+    private final Duration positiveTtl;
+
+    private final Duration negativeTtl;
+
+    private final Cache<StorageTarget, Boolean> cache;
+
+    /**
+     * Constructor.
+     *
+     * @param positiveTtl time (in seconds) an existing container is remembered
+     * @param negativeTtl time (in seconds) a missing container is remembered
+     */
+    public ContainerExistenceCache(@Value("${accessmanager.storage.container-check.positive-ttl:600}") long positiveTtl, @Value("${accessmanager.storage.container-check.negative-ttl:30}") long negativeTtl) {
+        this.positiveTtl = Duration.ofSeconds(positiveTtl);
+        this.negativeTtl = Duration.ofSeconds(negativeTtl);
+        this.cache = Caffeine.newBuilder().expireAfter(new ExistenceExpiry()).build();
+    }
+
+    /**
+     * Checks whether the given container exists, using a cached result if there is one
+     *
+     * @param container the container
+     * @param check     checks the existence of the container on a miss
+     * @return true, if the container exists
+     * @throws AccessManagerException thrown, if checking the container failed
+     */
+    public boolean exists(StorageTarget container, ExistenceCheck check) throws AccessManagerException {
+        StorageTarget key = key(container);
+        Boolean exists = cache.getIfPresent(key);
+        if (exists == null) {
+            exists = check.exists();
+            cache.put(key, exists);
+        }
+        return exists;
+    }
+
+    /**
+     * Forgets whether the given container exists
+     *
+     * @param container the container
+     */
+    public void invalidate(StorageTarget container) {
+        cache.invalidate(key(container));
+    }
+
+    /**
+     * Forgets whether the containers of the given organization exist
+     *
+     * @param organization the organization
+     */
+    public void invalidateOrganization(String organization) {
+        String normalized = organization.toLowerCase(Locale.ROOT);
+        cache.asMap().keySet().removeIf(key -> key.organization().equals(normalized));
+    }
+
+    private static StorageTarget key(StorageTarget container) {
+        return new StorageTarget(container.organization().toLowerCase(Locale.ROOT), container.space().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Checks the existence of a container
+     */
+    @FunctionalInterface
+    public interface ExistenceCheck {
+
+        boolean exists() throws AccessManagerException;
+    }
+
+    /**
+     * Expires existing and missing containers after their respective TTL
+     */
+    private class ExistenceExpiry implements Expiry<StorageTarget, Boolean> {
+
+        @Override
+        public long expireAfterCreate(StorageTarget key, Boolean exists, long currentTime) {
+            return (Boolean.TRUE.equals(exists) ? positiveTtl : negativeTtl).toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(StorageTarget key, Boolean exists, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, exists, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(StorageTarget key, Boolean exists, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.azure;
+
+import com.azure.storage.blob.sas.BlobContainerSasPermission;
+import com.azure.storage.blob.sas.BlobServiceSasSignatureValues;
+import com.azure.storage.common.StorageSharedKeyCredential;
+import com.efs.sdk.accessmanager.core.azure.model.SASToken.SASType;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.OffsetDateTime;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Signs container SAS-Tokens with the key of the StorageAccount - without any client or request to Azure.
+ *
+ * @author e:fs TechHub GmbH
+ */
+@Component
+@Profile("!s3")
+public class SASSigner {
+
+    /**
+     * Permissions by type of token - created once and never modified (BlobServiceSasSignatureValues only reads them)
+     */
+    private static final Map<SASType, BlobContainerSasPermission> PERMISSIONS;
+
+    static {
+        Map<SASType, BlobContainerSasPermission> permissions = new EnumMap<>(SASType.class);
+        permissions.put(SASType.READ, readPermissions());
+        permissions.put(SASType.WRITE, uploadPermissions());
+        permissions.put(SASType.DELETE, deletePermissions());
+        PERMISSIONS = Collections.unmodifiableMap(permissions);
+    }
+
+    /**
+     * Creates a container SAS-Token
+     *
+     * @param credential the name and key of the StorageAccount
+     * @param container  the name of the container
+     * @param type       the type of the token, defining its permissions
+     * @param startTime  the start of the validity of the token
+     * @param expiryTime the expiry of the token
+     * @return the SAS-Token
+     */
+    @SuppressWarnings("deprecation") // the non-deprecated way to sign requires a BlobContainerClient
+    public String sign(StorageSharedKeyCredential credential, String container, SASType type, OffsetDateTime startTime, OffsetDateTime expiryTime) {
+        BlobServiceSasSignatureValues values = new BlobServiceSasSignatureValues(expiryTime, PERMISSIONS.get(type)).setStartTime(startTime).setContainerName(container);
+        return values.generateSasQueryParameters(credential).encode();
+    }
+
+    /**
+     * Creates a BlobContainerSasPermission which expands list-rights by read-rights
+     *
+     * @return BlobContainerSasPermission with list-rights
+     */
+    private static BlobContainerSasPermission readPermissions() {
+        return new BlobContainerSasPermission().setListPermission(true).setReadPermission(true);
+    }
+
+    /**
+     * Creates a BlobContainerSasPermission which expands read-rights by create- and write-rights
+     *
+     * @return BlobContainerSasPermission with upload-rights
+     */
+    private static BlobContainerSasPermission uploadPermissions() {
+        return readPermissions().setAddPermission(true).setCreatePermission(true).setWritePermission(true);
+    }
+
+    /**
+     * Creates a BlobContainerSasPermission which expands upload-rights by delete-rights
+     *
+     * @return BlobContainerSasPermission with delete-rights
+     */
+    private static BlobContainerSasPermission deletePermissions() {
+        return uploadPermissions().setDeletePermission(true);
+    }
+}
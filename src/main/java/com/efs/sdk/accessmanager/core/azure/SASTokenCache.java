@@ -0,0 +1,349 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.azure;
+
+import com.efs.sdk.accessmanager.commons.AccessManagerException;
+import com.efs.sdk.accessmanager.core.azure.model.SASToken;
+import com.efs.sdk.accessmanager.core.azure.model.SASToken.SASType;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.*;
+
+/**
+ * Cache for issued SAS-Tokens, keyed by type, organization and space.
+ * <p>
+ * Every entry expires on its own, {@code sas.token.cache.buffer} minutes before the expiry ('se') of the cached token.
+ * Concurrent misses on the same key are coalesced: only the first caller issues a token, all others wait for (and
+ * share) its result - including a failure.
+ * <p>
+ * With refresh-ahead enabled, tokens that were served within the idle-window are re-issued in the background shortly
+ * before they are evicted, so callers on frequently used spaces never wait for an issuance. Tokens that were not
+ * served within the idle-window are left to expire. A refreshed token is only served after the permission-check of
+ * the requesting caller.
+ * <p>
+ * Invalidation also covers issuances (and refreshes) still running: a token issued while its organization was
+ * invalidated is returned to its caller, but not cached.
+ *
+ * @author e:fs TechHub GmbH
+ */
+@Component
+@Profile("!s3")
+public class SASTokenCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SASTokenCache.class);
+
+    private final Cache<TokenKey, CachedToken> cache;
+
+    /**
+     * Issuances currently running, by key
+     */
+    private final ConcurrentMap<TokenKey, CompletableFuture<SASToken>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Number of invalidations, by (lower-case) organization - a token issued while its organization was invalidated
+     * is not cached
+     */
+    private final ConcurrentMap<String, Long> generations = new ConcurrentHashMap<>();
+
+    /**
+     * Time a token is evicted before it actually expires
+     */
+    private final Duration cacheBuffer;
+
+    private final boolean refreshAhead;
+
+    /**
+     * Time before eviction a token is re-issued
+     */
+    private final Duration refreshWindow;
+
+    /**
+     * Time since the last access after which a token is no longer re-issued
+     */
+    private final Duration idleWindow;
+
+    private final TaskExecutor taskExecutor;
+
+    /**
+     * Constructor.
+     *
+     * @param cacheBuffer   time (in minutes) a token is evicted before it actually expires
+     * @param refreshAhead  whether recently served tokens are re-issued before they are evicted
+     * @param refreshWindow time (in minutes) before eviction a token is re-issued
+     * @param idleWindow    time (in minutes) since the last access after which a token is no longer re-issued
+     * @param taskExecutor  the TaskExecutor running the re-issuance
+     */
+    public SASTokenCache(@Value("${sas.token.cache.buffer}") int cacheBuffer, @Value("${sas.token.cache.refresh-ahead.enabled:false}") boolean refreshAhead, @Value("${sas.token.cache.refresh-ahead.window:2}") int refreshWindow, @Value("${sas.token.cache.refresh-ahead.idle:5}") int idleWindow, TaskExecutor taskExecutor) {
+        this.cacheBuffer = Duration.ofMinutes(cacheBuffer);
+        this.refreshAhead = refreshAhead;
+        this.refreshWindow = Duration.ofMinutes(refreshWindow);
+        this.idleWindow = Duration.ofMinutes(idleWindow);
+        this.taskExecutor = taskExecutor;
+        this.cache = Caffeine.newBuilder().expireAfter(new TokenExpiry()).build();
+    }
+
+    /**
+     * Gets a cached token
+     *
+     * @param type         the type of the token
+     * @param organization the organization
+     * @param space        the space
+     * @return the token, if cached and still valid
+     */
+    public Optional<String> get(SASType type, String organization, String space) {
+        return Optional.ofNullable(cache.getIfPresent(TokenKey.of(type, organization, space))).map(CachedToken::touch).map(SASToken::token);
+    }
+
+    /**
+     * Checks whether a valid token is cached - without counting as a request of the token (for refresh-ahead)
+     *
+     * @param type         the type of the token
+     * @param organization the organization
+     * @param space        the space
+     * @return true, if a valid token is cached
+     */
+    public boolean isCached(SASType type, String organization, String space) {
+        return cache.getIfPresent(TokenKey.of(type, organization, space)) != null;
+    }
+
+    /**
+     * Gets a cached token or issues a new one, if there is no valid token cached.
+     * <p>
+     * If the token for the same key is already being issued, waits for that issuance instead of issuing another one.
+     *
+     * @param type         the type of the token
+     * @param organization the organization
+     * @param space        the space
+     * @param issuer       issues the token on a miss (and on refresh-ahead)
+     * @return the cached or issued token
+     * @throws AccessManagerException thrown, if issuing the token failed
+     */
+    public SASToken getOrIssue(SASType type, String organization, String space, TokenIssuer issuer) throws AccessManagerException {
+        TokenKey key = TokenKey.of(type, organization, space);
+        CachedToken cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached.touch();
+        }
+        CompletableFuture<SASToken> issuance = new CompletableFuture<>();
+        CompletableFuture<SASToken> running = inFlight.putIfAbsent(key, issuance);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            // another issuance may have completed between the lookup and registering this one
+            CachedToken issued = cache.getIfPresent(key);
+            SASToken sasToken = issued != null ? issued.touch() : issue(key, issuer);
+            issuance.complete(sasToken);
+            return sasToken;
+        } catch (Throwable e) {
+            issuance.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, issuance);
+        }
+    }
+
+    private SASToken issue(TokenKey key, TokenIssuer issuer) throws AccessManagerException {
+        long generation = generation(key.organization());
+        SASToken sasToken = issuer.issue();
+        store(key, new CachedToken(sasToken, issuer), generation);
+        return sasToken;
+    }
+
+    private long generation(String organization) {
+        return generations.getOrDefault(organization, 0L);
+    }
+
+    /**
+     * Caches the token - unless its organization was invalidated since the given generation
+     */
+    private void store(TokenKey key, CachedToken token, long generation) {
+        cache.asMap().compute(key, (k, current) -> generation(k.organization()) == generation ? token : current);
+    }
+
+    private static SASToken await(CompletableFuture<SASToken> issuance) throws AccessManagerException {
+        try {
+            return issuance.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof AccessManagerException ame) {
+                throw ame;
+            }
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            if (cause instanceof Error err) {
+                throw err;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Re-issues (in the background) all tokens that are about to be evicted and were served within the idle-window
+     */
+    public void refreshAhead() {
+        if (!refreshAhead) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        cache.asMap().forEach((key, cached) -> {
+            long refreshAt = cached.sasToken.expiresAt().toEpochMilli() - cacheBuffer.toMillis() - refreshWindow.toMillis();
+            if (now < refreshAt) {
+                return;
+            }
+            if (cached.lastAccess < now - idleWindow.toMillis()) {
+                LOG.debug("Letting {}-token for {}-{} expire (not requested recently)", key.type(), key.organization(), key.space());
+                return;
+            }
+            CompletableFuture<SASToken> issuance = new CompletableFuture<>();
+            if (inFlight.putIfAbsent(key, issuance) != null) {
+                return;
+            }
+            try {
+                taskExecutor.execute(() -> refresh(key, cached, issuance));
+            } catch (RuntimeException e) {
+                LOG.warn("Unable to schedule refresh of {}-token for {}-{}: {}", key.type(), key.organization(), key.space(), e.getMessage());
+                issuance.completeExceptionally(e);
+                inFlight.remove(key, issuance);
+            }
+        });
+    }
+
+    private void refresh(TokenKey key, CachedToken cached, CompletableFuture<SASToken> issuance) {
+        try {
+            LOG.debug("Refreshing {}-token for {}-{}", key.type(), key.organization(), key.space());
+            long generation = generation(key.organization());
+            SASToken sasToken = cached.issuer.issue();
+            store(key, new CachedToken(sasToken, cached.issuer, cached.lastAccess), generation);
+            issuance.complete(sasToken);
+        } catch (AccessManagerException | RuntimeException e) {
+            // the current token remains cached until it is evicted, refreshing is retried on the next run
+            LOG.warn("Unable to refresh {}-token for {}-{}: {}", key.type(), key.organization(), key.space(), e.getMessage());
+            issuance.completeExceptionally(e);
+        } finally {
+            inFlight.remove(key, issuance);
+        }
+    }
+
+    /**
+     * Removes all tokens of the given space
+     *
+     * @param organization the organization
+     * @param space        the space
+     */
+    public void invalidate(String organization, String space) {
+        generations.merge(organization.toLowerCase(Locale.ROOT), 1L, Long::sum);
+        for (SASType type : SASType.values()) {
+            cache.invalidate(TokenKey.of(type, organization, space));
+        }
+    }
+
+    /**
+     * Removes all tokens of all spaces of the given organization
+     *
+     * @param organization the organization
+     */
+    public void invalidateOrganization(String organization) {
+        String normalized = organization.toLowerCase(Locale.ROOT);
+        generations.merge(normalized, 1L, Long::sum);
+        cache.asMap().keySet().removeIf(key -> key.organization().equals(normalized));
+    }
+
+    /**
+     * Evicts expired tokens
+     */
+    public void cleanUp() {
+        cache.cleanUp();
+    }
+
+    /**
+     * Issues a new token
+     */
+    @FunctionalInterface
+    public interface TokenIssuer {
+
+        SASToken issue() throws AccessManagerException;
+    }
+
+    /**
+     * Key of a cached token - organization and space are normalized to lower-case
+     */
+    record TokenKey(SASType type, String organization, String space) {
+
+        static TokenKey of(SASType type, String organization, String space) {
+            return new TokenKey(type, organization.toLowerCase(Locale.ROOT), space.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Cached token along with its issuer (for refreshing) and the time it was last served
+     */
+    private static final class CachedToken {
+
+        private final SASToken sasToken;
+        private final TokenIssuer issuer;
+        private volatile long lastAccess;
+
+        private CachedToken(SASToken sasToken, TokenIssuer issuer) {
+            this(sasToken, issuer, System.currentTimeMillis());
+        }
+
+        private CachedToken(SASToken sasToken, TokenIssuer issuer, long lastAccess) {
+            this.sasToken = sasToken;
+            this.issuer = issuer;
+            this.lastAccess = lastAccess;
+        }
+
+        private SASToken touch() {
+            lastAccess = System.currentTimeMillis();
+            return sasToken;
+        }
+    }
+
+    /**
+     * Expires a token {@code cacheBuffer} before its 'se'
+     */
+    private class TokenExpiry implements Expiry<TokenKey, CachedToken> {
+
+        @Override
+        public long expireAfterCreate(TokenKey key, CachedToken value, long currentTime) {
+            long remaining = value.sasToken.expiresAt().toEpochMilli() - cacheBuffer.toMillis() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0L, remaining));
+        }
+
+        @Override
+        public long expireAfterUpdate(TokenKey key, CachedToken value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(TokenKey key, CachedToken value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
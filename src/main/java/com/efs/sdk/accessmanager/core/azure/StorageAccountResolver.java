@@ -0,0 +1,171 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.azure;
+
+import com.azure.core.management.exception.ManagementException;
+import com.azure.resourcemanager.storage.models.StorageAccount;
+import com.efs.sdk.accessmanager.clients.AzureResourceManagerProvider;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the StorageAccount of an organization.
+ * <p>
+ * Keeps an index (by lower-case name) of all StorageAccounts within the resource group, which is refreshed in the
+ * background. Organizations missing in the index are looked up directly by name, organizations without StorageAccount
+ * are remembered for {@code accessmanager.storage.account-index.negative-ttl} seconds.
+ *
+ * @author e:fs TechHub GmbH
+ */
+@Component
+@Profile("!s3")
+public class StorageAccountResolver {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StorageAccountResolver.class);
+
+    private final AzureResourceManagerProvider azureProvider;
+
+    private final String resourceGroup;
+
+    /**
+     * StorageAccounts by lower-case name
+     */
+    private volatile Map<String, StorageAccount> index = new ConcurrentHashMap<>();
+
+    private volatile boolean indexed;
+
+    /**
+     * Organizations without StorageAccount
+     */
+    private final Cache<String, Boolean> missing;
+
+    /**
+     * Constructor.
+     *
+     * @param azureProvider the AzureResourceManagerProvider
+     * @param resourceGroup the resource group containing the StorageAccounts
+     * @param negativeTtl   time (in seconds) an organization without StorageAccount is remembered
+     */
+    public StorageAccountResolver(AzureResourceManagerProvider azureProvider, @Value("${accessmanager.storage.resourcegroup:SDK}") String resourceGroup, @Value("${accessmanager.storage.account-index.negative-ttl:60}") long negativeTtl) {
+        this.azureProvider = azureProvider;
+        this.resourceGroup = resourceGroup;
+        this.missing = Caffeine.newBuilder().expireAfterWrite(Duration.ofSeconds(negativeTtl)).build();
+    }
+
+    /**
+     * Gets the StorageAccount of the given organization
+     *
+     * @param organization the organization
+     * @return the StorageAccount, if the organization has one
+     */
+    public Optional<StorageAccount> getStorageAccount(String organization) {
+        String name = organization.toLowerCase(Locale.ROOT);
+        if (!indexed) {
+            initIndex();
+        }
+        StorageAccount account = index.get(name);
+        if (account != null) {
+            return Optional.of(account);
+        }
+        if (missing.getIfPresent(name) != null) {
+            return Optional.empty();
+        }
+        return lookup(name);
+    }
+
+    /**
+     * Gets the StorageAccount of the given organization, if it is indexed - never looks it up by name
+     *
+     * @param organization the organization
+     * @return the StorageAccount, if it is indexed
+     */
+    public Optional<StorageAccount> getIndexedStorageAccount(String organization) {
+        if (!indexed) {
+            initIndex();
+        }
+        return Optional.ofNullable(index.get(organization.toLowerCase(Locale.ROOT)));
+    }
+
+    private Optional<StorageAccount> lookup(String name) {
+        LOG.debug("StorageAccount {} not indexed, looking it up by name", name);
+        StorageAccount account;
+        try {
+            account = azureProvider.azure().storageAccounts().getByResourceGroup(resourceGroup, name);
+        } catch (ManagementException e) {
+            if (e.getResponse() == null || e.getResponse().getStatusCode() != HttpStatus.NOT_FOUND.value()) {
+                throw e;
+            }
+            account = null;
+        }
+        if (account == null) {
+            missing.put(name, Boolean.TRUE);
+            return Optional.empty();
+        }
+        index.put(name, account);
+        return Optional.of(account);
+    }
+
+    private synchronized void initIndex() {
+        if (!indexed) {
+            refreshIndex();
+        }
+    }
+
+    /**
+     * Rebuilds the index from the StorageAccounts within the resource group
+     */
+    @Scheduled(fixedDelayString = "${accessmanager.storage.account-index.refresh-interval:300000}", initialDelayString = "${accessmanager.storage.account-index.refresh-interval:300000}")
+    public synchronized void refreshIndex() {
+        try {
+            Map<String, StorageAccount> accounts = new HashMap<>();
+            azureProvider.azure().storageAccounts().listByResourceGroup(resourceGroup).forEach(a -> accounts.put(a.name().toLowerCase(Locale.ROOT), a));
+            this.index = new ConcurrentHashMap<>(accounts);
+            missing.invalidateAll();
+            LOG.debug("Indexed {} StorageAccounts of resource group {}", accounts.size(), resourceGroup);
+        } catch (RuntimeException e) {
+            // keep the current index, organizations missing in it are looked up directly
+            LOG.warn("Unable to index StorageAccounts of resource group {}: {}", resourceGroup, e.getMessage());
+        } finally {
+            // a failed initial indexing is retried by the scheduled refresh, not on every request
+            this.indexed = true;
+        }
+    }
+
+    /**
+     * Forgets the StorageAccount (or its absence) of the given organization
+     *
+     * @param organization the organization
+     */
+    public void invalidate(String organization) {
+        String name = organization.toLowerCase(Locale.ROOT);
+        index.remove(name);
+        missing.invalidate(name);
+    }
+}
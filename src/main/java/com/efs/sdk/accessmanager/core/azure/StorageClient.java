@@ -15,36 +15,44 @@ limitations under the License.
  */
 package com.efs.sdk.accessmanager.core.azure;
 
+import com.azure.core.http.HttpClient;
 import com.azure.core.http.rest.PagedIterable;
 import com.azure.resourcemanager.storage.models.StorageAccount;
-import com.azure.resourcemanager.storage.models.StorageAccountKey;
 import com.azure.storage.blob.BlobContainerClient;
 import com.azure.storage.blob.BlobServiceClient;
 import com.azure.storage.blob.BlobServiceClientBuilder;
 import com.azure.storage.blob.models.BlobItem;
+import com.azure.storage.blob.models.BlobStorageException;
 import com.azure.storage.blob.models.ListBlobsOptions;
-import com.azure.storage.blob.sas.BlobContainerSasPermission;
-import com.azure.storage.blob.sas.BlobServiceSasSignatureValues;
+import com.azure.storage.common.StorageSharedKeyCredential;
 import com.efs.sdk.accessmanager.commons.AccessManagerException;
 import com.efs.sdk.accessmanager.commons.AccessManagerException.ACCESSMANAGER_ERROR;
 import com.efs.sdk.accessmanager.core.azure.model.SASToken;
+import com.efs.sdk.accessmanager.core.azure.model.SASToken.SASType;
+import com.efs.sdk.accessmanager.core.azure.model.StorageCredentials;
 import com.efs.sdk.accessmanager.core.model.StorageTarget;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 
 import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-import static com.efs.sdk.accessmanager.core.azure.model.SASToken.SASType.READ;
-import static com.efs.sdk.accessmanager.core.azure.model.SASToken.SASType.WRITE;
-import static java.lang.String.format;
+import static com.efs.sdk.accessmanager.core.azure.model.SASToken.SASType.*;
 
 /**
  * Client for handling Storage-Data.
@@ -53,7 +61,7 @@ import static java.lang.String.format;
  */
 @Component
 @Profile("!s3")
-public class StorageClient {
+public class StorageClient implements MeterBinder {
 
     /**
      * Instance of the logger.
@@ -61,9 +69,23 @@ public class StorageClient {
     private static final Logger LOG = LoggerFactory.getLogger(StorageClient.class);
 
     /**
-     * Map for caching the BlobContainerClients by ContainerModelBase
+     * Cache for the BlobContainerClients by ContainerModelBase
      */
-    private final Map<StorageTarget, BlobContainerClient> containerClients = new HashMap<>();
+    private final Cache<StorageTarget, ContainerClient> containerClients;
+
+    /**
+     * BlobServiceClients by lower-case name of the StorageAccount - the BlobContainerClients are derived from them and
+     * share their pipeline
+     */
+    private final Map<String, ServiceClient> serviceClients = new ConcurrentHashMap<>();
+
+    private final StorageCredentialsCache credentialsCache;
+
+    private final HttpClient httpClient;
+
+    private final ContainerExistenceCache existenceCache;
+
+    private final SASSigner signer;
 
     @Value("${sas.token.expiration.read}")
     private int readExpiration;
@@ -74,6 +96,28 @@ public class StorageClient {
     @Value("${sas.token.expiration.delete}")
     private int deleteExpiration;
 
+    /**
+     * Constructor.
+     *
+     * @param credentialsCache the cache for the keys of the StorageAccounts
+     * @param httpClient       the HttpClient shared by all BlobServiceClients
+     * @param existenceCache   the cache for the existence of the containers
+     * @param signer           the signer for the SAS-Tokens
+     * @param maxSize          maximum number of cached BlobContainerClients
+     * @param expireAfter      time (in minutes) an unused BlobContainerClient remains cached
+     */
+    public StorageClient(StorageCredentialsCache credentialsCache, HttpClient httpClient, ContainerExistenceCache existenceCache, SASSigner signer, @Value("${accessmanager.storage.container-clients.max-size:1000}") long maxSize, @Value("${accessmanager.storage.container-clients.expire-after-access:60}") long expireAfter) {
+        this.credentialsCache = credentialsCache;
+        this.httpClient = httpClient;
+        this.existenceCache = existenceCache;
+        this.signer = signer;
+        this.containerClients = Caffeine.newBuilder().maximumSize(maxSize).expireAfterAccess(Duration.ofMinutes(expireAfter)).recordStats().build();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, containerClients, "accessmanager.storage.container-clients");
+    }
 
     /**
      * Creates a Shared Access Signature-Token for updating files within the given container
@@ -85,11 +129,9 @@ public class StorageClient {
         LOG.info("Creating upload-token for {}-{}", container.organization(), container.space());
         ensureContainerExist(storageAccount, container);
 
-        BlobContainerClient containerClient = createContainerClient(storageAccount, container);
-
+        SASToken sasToken = createToken(WRITE, storageAccount, container, writeExpiration);
         LOG.info("Creating upload-token - Done!");
-        String token = containerClient.generateSas(generateWriteSignature(writeExpiration));
-        return new SASToken(WRITE, container.organization(), container.space(), token);
+        return sasToken;
     }
 
     /**
@@ -102,11 +144,9 @@ public class StorageClient {
         LOG.info("Creating read-token for {}-{}", container.organization(), container.space());
         ensureContainerExist(storageAccount, container);
 
-        BlobContainerClient containerClient = createContainerClient(storageAccount, container);
-
+        SASToken sasToken = createToken(READ, storageAccount, container, readExpiration);
         LOG.info("Creating read-token - Done!");
-        String token = containerClient.generateSas(generateReadSignature(readExpiration));
-        return new SASToken(READ, container.organization(), container.space(), token);
+        return sasToken;
     }
 
     /**
@@ -118,123 +158,132 @@ public class StorageClient {
     public SASToken createDeleteToken(StorageAccount storageAccount, StorageTarget container) throws AccessManagerException {
         LOG.info("Creating delete-token for {}-{}", container.organization(), container.space());
         ensureContainerExist(storageAccount, container);
-        BlobContainerClient containerClient = createContainerClient(storageAccount, container);
 
+        SASToken sasToken = createToken(DELETE, storageAccount, container, deleteExpiration);
         LOG.info("Creating delete-token - Done!");
-        String token = containerClient.generateSas(generateDeleteSignature(deleteExpiration));
-        return new SASToken(READ, container.organization(), container.space(), token);
+        return sasToken;
     }
 
-
     /**
-     * Ensures the container exists in the cloud.
+     * Prepares issuing tokens for the given container - loads the key of the StorageAccount and ensures the container
+     * exists (both cached), so issuing a token afterward needs no further requests.
      *
-     * @param container The container to check.
+     * @param storageAccount the StorageAccount
+     * @param container      the container
+     * @throws AccessManagerException thrown, if there is no key or the container does not exist
      */
-    private void ensureContainerExist(StorageAccount storageAccount, StorageTarget container) throws AccessManagerException {
-        LOG.info("Ensuring that container exists {}-{}", container.organization(), container.space());
-        BlobContainerClient containerClient = createContainerClient(storageAccount, container);
-
-        if (!containerClient.exists()) {
-            throw new AccessManagerException(ACCESSMANAGER_ERROR.CONTAINER_NOT_EXISTS);
-        }
+    public void prepare(StorageAccount storageAccount, StorageTarget container) throws AccessManagerException {
+        credentialsCache.get(storageAccount);
+        ensureContainerExist(storageAccount, container);
     }
 
-
     /**
-     * Creates the Azure Storage Container Client for interacting with Azure Blob storage.
-     *
-     * @param container The name of the container.
-     * @return The created {@link BlobContainerClient}.
+     * Signs a Shared Access Signature-Token with the preferred key of the StorageAccount (its credential is cached along
+     * with the Service Client), that is valid for the given period of time (in minutes).
      */
-    private BlobContainerClient createContainerClient(StorageAccount storageAccount, StorageTarget container) throws AccessManagerException {
-        if (!containerClients.containsKey(container)) {
-            String connectionStr = getConnectionString(storageAccount);
-            BlobServiceClient serviceClient = new BlobServiceClientBuilder().connectionString(connectionStr).buildClient();
-            containerClients.put(container, serviceClient.getBlobContainerClient(container.space()));
-        }
-        return containerClients.get(container);
+    private SASToken createToken(SASType type, StorageAccount storageAccount, StorageTarget container, long minutes) throws AccessManagerException {
+        ServiceClient serviceClient = getServiceClient(storageAccount);
+        // 'se' is serialized with seconds-precision, so truncate the expiry to reflect the actual expiry of the token
+        OffsetDateTime now = OffsetDateTime.now();
+        OffsetDateTime expiryTime = now.plusMinutes(minutes).truncatedTo(ChronoUnit.SECONDS);
+        String token = signer.sign(serviceClient.sharedKey(), container.space(), type, now, expiryTime);
+        return new SASToken(type, container.organization(), container.space(), token, expiryTime.toInstant());
     }
 
-    /**
-     * Creates BlobServiceSasSignatureValues with read permission, that is valid for the given period of time (in minutes).
-     *
-     * @param minutes Time the BlobServiceSasSignatureValues remain valid in minutes
-     * @return BlobServiceSasSignatureValues
-     */
-    private BlobServiceSasSignatureValues generateReadSignature(long minutes) {
-        BlobContainerSasPermission permission = getReadPermissions();
-        return generateSignature(permission, minutes);
-    }
 
     /**
-     * Creates a BlobContainerSasPermission with list-rights
+     * Ensures the container exists in the cloud - the result of the check is cached.
+     * <p>
+     * If the key of the StorageAccount is rejected, the check is retried once with the next key, which is preferred
+     * from then on (and thereby also used for signing).
      *
-     * @return BlobContainerSasPermission with list-rights
+     * @param container The container to check.
      */
-    private BlobContainerSasPermission getListPermissions() {
-        return new BlobContainerSasPermission().setListPermission(true);
+    private void ensureContainerExist(StorageAccount storageAccount, StorageTarget container) throws AccessManagerException {
+        if (!existenceCache.exists(container, () -> containerExists(storageAccount, container))) {
+            throw new AccessManagerException(ACCESSMANAGER_ERROR.CONTAINER_NOT_EXISTS);
+        }
     }
 
-    /**
-     * Creates a BlobContainerSasPermission which expands list-rights by read-rights
-     *
-     * @return BlobContainerSasPermission with list-rights
-     */
-    private BlobContainerSasPermission getReadPermissions() {
-        return getListPermissions().setReadPermission(true);
+    private boolean containerExists(StorageAccount storageAccount, StorageTarget container) throws AccessManagerException {
+        LOG.info("Ensuring that container exists {}-{}", container.organization(), container.space());
+        ContainerClient containerClient = getContainerClient(storageAccount, container);
+
+        try {
+            return containerClient.client().exists();
+        } catch (BlobStorageException e) {
+            if (!isAuthenticationError(e)) {
+                throw e;
+            }
+            return retryWithNextKey(storageAccount, container, containerClient.credentials(), e);
+        }
     }
 
-    /**
-     * Creates BlobServiceSasSignatureValues with write permission, that is valid for the given period of time (in minutes).
-     *
-     * @param minutes Time the BlobServiceSasSignatureValues remain valid in minutes
-     * @return BlobServiceSasSignatureValues
-     */
-    private BlobServiceSasSignatureValues generateWriteSignature(long minutes) {
-        BlobContainerSasPermission permission = getUploadPermissions();
-        return generateSignature(permission, minutes);
+    private boolean retryWithNextKey(StorageAccount storageAccount, StorageTarget container, StorageCredentials rejected, BlobStorageException cause) throws AccessManagerException {
+        if (credentialsCache.failover(rejected).isEmpty()) {
+            throw cause;
+        }
+        try {
+            return getContainerClient(storageAccount, container).client().exists();
+        } catch (BlobStorageException e) {
+            if (isAuthenticationError(e)) {
+                // both keys rejected - list the keys again on the next request
+                credentialsCache.invalidate(storageAccount.name());
+            }
+            throw e;
+        }
     }
 
-    /**
-     * Creates a BlobContainerSasPermission which expands read-rights by create- and write-rights
-     *
-     * @return BlobContainerSasPermission with list-rights
-     */
-    private BlobContainerSasPermission getUploadPermissions() {
-        return getReadPermissions().setAddPermission(true).setCreatePermission(true).setWritePermission(true);
+    private static boolean isAuthenticationError(BlobStorageException e) {
+        return e.getStatusCode() == HttpStatus.FORBIDDEN.value();
     }
 
+
     /**
-     * Creates BlobServiceSasSignatureValues with delete permission, that is valid for the given period of time (in minutes).
+     * Creates the Azure Storage Container Client for interacting with Azure Blob storage.
      *
-     * @param minutes Time the BlobServiceSasSignatureValues remain valid in minutes
-     * @return BlobServiceSasSignatureValues
+     * @param container The name of the container.
+     * @return The created {@link BlobContainerClient}.
      */
-    private BlobServiceSasSignatureValues generateDeleteSignature(long minutes) {
-        BlobContainerSasPermission permission = getDeletePermissions();
-        return generateSignature(permission, minutes);
+    private BlobContainerClient createContainerClient(StorageAccount storageAccount, StorageTarget container) throws AccessManagerException {
+        return getContainerClient(storageAccount, container).client();
     }
 
     /**
-     * Creates a BlobContainerSasPermission which expands upload-rights by delete-rights
-     *
-     * @return BlobContainerSasPermission with list-rights
+     * Gets the cached Container Client, which is re-created if the preferred key of the StorageAccount changed.
      */
-    private BlobContainerSasPermission getDeletePermissions() {
-        return getUploadPermissions().setDeletePermission(true);
+    private ContainerClient getContainerClient(StorageAccount storageAccount, StorageTarget container) throws AccessManagerException {
+        ServiceClient serviceClient = getServiceClient(storageAccount);
+        ContainerClient containerClient = containerClients.getIfPresent(container);
+        if (containerClient != null && containerClient.credentials().equals(serviceClient.credentials())) {
+            return containerClient;
+        }
+        return containerClients.asMap().compute(container, (key, current) -> {
+            if (current != null && current.credentials().equals(serviceClient.credentials())) {
+                return current;
+            }
+            return new ContainerClient(serviceClient.credentials(), serviceClient.client().getBlobContainerClient(container.space()));
+        });
     }
 
     /**
-     * Creates BlobServiceSasSignatureValues with the given permissions, that is valid for the given period of time (in minutes).
-     *
-     * @param permission The BlobContainerSasPermission
-     * @param minutes    Time the BlobServiceSasSignatureValues remain valid in minutes
-     * @return BlobServiceSasSignatureValues
+     * Gets the cached Service Client of the StorageAccount, which is re-created if the preferred key changed.
      */
-    private BlobServiceSasSignatureValues generateSignature(BlobContainerSasPermission permission, long minutes) {
-        OffsetDateTime expiryTime = OffsetDateTime.now().plusMinutes(minutes);
-        return new BlobServiceSasSignatureValues(expiryTime, permission).setStartTime(OffsetDateTime.now());
+    private ServiceClient getServiceClient(StorageAccount storageAccount) throws AccessManagerException {
+        StorageCredentials credentials = credentialsCache.get(storageAccount);
+        String name = credentials.accountName().toLowerCase(Locale.ROOT);
+        ServiceClient cached = serviceClients.get(name);
+        if (cached != null && cached.credentials().equals(credentials)) {
+            return cached;
+        }
+        return serviceClients.compute(name, (key, current) -> {
+            if (current != null && current.credentials().equals(credentials)) {
+                return current;
+            }
+            LOG.debug("Creating BlobServiceClient for StorageAccount {}", credentials.accountName());
+            BlobServiceClient client = new BlobServiceClientBuilder().connectionString(credentials.connectionString()).httpClient(httpClient).buildClient();
+            return new ServiceClient(credentials, client, new StorageSharedKeyCredential(credentials.accountName(), credentials.accountKey()));
+        });
     }
 
     /**
@@ -262,14 +311,16 @@ public class StorageClient {
         return blobItems.stream().map(BlobItem::getName).collect(Collectors.toSet());
     }
 
-    private String getConnectionString(StorageAccount storageAccount) throws AccessManagerException {
-        List<StorageAccountKey> storageAccountKeys = storageAccount.getKeys();
-        Optional<StorageAccountKey> first = storageAccountKeys.stream().findFirst();
-        if (first.isPresent()) {
-            StorageAccountKey key = first.get();
-            return format("DefaultEndpointsProtocol=https;AccountName=%s;AccountKey=%s;EndpointSuffix=core.windows.net", storageAccount.name(), key.value());
-        }
-        throw new AccessManagerException("no connection-key found!");
+    /**
+     * BlobContainerClient along with the credentials it was created with
+     */
+    private record ContainerClient(StorageCredentials credentials, BlobContainerClient client) {
+    }
+
+    /**
+     * BlobServiceClient along with the credentials it was created with and the credential signing SAS-Tokens with them
+     */
+    private record ServiceClient(StorageCredentials credentials, BlobServiceClient client, StorageSharedKeyCredential sharedKey) {
     }
 
 }
@@ -0,0 +1,154 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.azure;
+
+import com.azure.resourcemanager.storage.models.StorageAccount;
+import com.azure.resourcemanager.storage.models.StorageAccountKey;
+import com.efs.sdk.accessmanager.commons.AccessManagerException;
+import com.efs.sdk.accessmanager.core.azure.model.StorageCredentials;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Cache for the keys (and connection-strings) of StorageAccounts, by lower-case account name.
+ * <p>
+ * Keys are listed once per account and listed again after {@code accessmanager.storage.credentials.ttl} minutes, so
+ * issuing tokens does not call 'listKeys' on every new container. If the preferred key is rejected (e.g. because it was
+ * rotated), {@link #failover(StorageCredentials)} switches to the next key without contacting ARM.
+ * <p>
+ * Tokens are signed offline, so a rotated key is only noticed on a rejected container-check or when the keys are listed
+ * again - keep the ttl well below the lifetime of the tokens. Once the preferred key is rotated or rejected, the cached
+ * SAS-Tokens of the account (signed with that key) are dropped.
+ *
+ * @author e:fs TechHub GmbH
+ */
+@Component
+@Profile("!s3")
+public class StorageCredentialsCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StorageCredentialsCache.class);
+
+    private final Cache<String, ListedCredentials> cache;
+
+    private final Duration ttl;
+
+    private final SASTokenCache tokenCache;
+
+    /**
+     * Constructor.
+     *
+     * @param ttl        time (in minutes) after which the keys of a StorageAccount are listed again
+     * @param tokenCache the cache of the SAS-Tokens signed with the keys
+     */
+    public StorageCredentialsCache(@Value("${accessmanager.storage.credentials.ttl:5}") long ttl, SASTokenCache tokenCache) {
+        this.cache = Caffeine.newBuilder().build();
+        this.ttl = Duration.ofMinutes(ttl);
+        this.tokenCache = tokenCache;
+    }
+
+    /**
+     * Gets the (cached) credentials of the given StorageAccount
+     *
+     * @param storageAccount the StorageAccount
+     * @return the credentials
+     * @throws AccessManagerException thrown, if the StorageAccount has no keys
+     */
+    public StorageCredentials get(StorageAccount storageAccount) throws AccessManagerException {
+        String name = storageAccount.name().toLowerCase(Locale.ROOT);
+        ListedCredentials listed = cache.getIfPresent(name);
+        if (listed == null || listed.isStale(ttl)) {
+            listed = cache.asMap().compute(name, (key, current) -> current != null && !current.isStale(ttl) ? current : load(storageAccount, current));
+        }
+        if (listed == null) {
+            throw new AccessManagerException("no connection-key found!");
+        }
+        return listed.credentials();
+    }
+
+    private ListedCredentials load(StorageAccount storageAccount, ListedCredentials current) {
+        LOG.debug("Listing keys of StorageAccount {}", storageAccount.name());
+        List<StorageAccountKey> keys = storageAccount.getKeys();
+        if (keys == null || keys.isEmpty()) {
+            // not cached, the keys are listed again on the next request
+            return null;
+        }
+        List<String> accountKeys = keys.stream().map(StorageAccountKey::value).toList();
+        if (current == null) {
+            return new ListedCredentials(StorageCredentials.of(storageAccount.name(), accountKeys), Instant.now());
+        }
+        if (new HashSet<>(accountKeys).equals(new HashSet<>(current.credentials().accountKeys()))) {
+            // unchanged - keep preferring the current key (which may be the result of a failover)
+            return new ListedCredentials(current.credentials(), Instant.now());
+        }
+        if (!accountKeys.contains(current.credentials().accountKey())) {
+            LOG.info("Key of StorageAccount {} rotated, dropping the SAS-tokens signed with it", storageAccount.name());
+            tokenCache.invalidateOrganization(storageAccount.name());
+        }
+        return new ListedCredentials(StorageCredentials.of(storageAccount.name(), accountKeys), Instant.now());
+    }
+
+    /**
+     * Prefers the next key of the given (rejected) credentials from now on
+     *
+     * @param rejected the credentials whose preferred key was rejected
+     * @return the credentials preferring the next key, if there is one
+     */
+    public Optional<StorageCredentials> failover(StorageCredentials rejected) {
+        String name = rejected.accountName().toLowerCase(Locale.ROOT);
+        // the tokens signed with the rejected key are no longer valid
+        tokenCache.invalidateOrganization(name);
+        Optional<StorageCredentials> next = rejected.failover();
+        if (next.isEmpty()) {
+            invalidate(name);
+            return next;
+        }
+        LOG.info("Key of StorageAccount {} rejected, failing over to the next key", rejected.accountName());
+        // only replace the rejected credentials, a concurrent failover may already have switched them
+        ListedCredentials current = cache.asMap().computeIfPresent(name, (k, cached) -> cached.credentials().equals(rejected) ? new ListedCredentials(next.get(), cached.listedAt()) : cached);
+        return Optional.of(current != null ? current.credentials() : next.get());
+    }
+
+    /**
+     * Forgets the credentials of the given StorageAccount, its keys are listed again on the next request
+     *
+     * @param accountName the name of the StorageAccount
+     */
+    public void invalidate(String accountName) {
+        cache.invalidate(accountName.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Credentials along with the time their keys were listed
+     */
+    private record ListedCredentials(StorageCredentials credentials, Instant listedAt) {
+
+        boolean isStale(Duration ttl) {
+            return !listedAt.plus(ttl).isAfter(Instant.now());
+        }
+    }
+}
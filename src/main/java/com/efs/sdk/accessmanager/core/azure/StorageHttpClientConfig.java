@@ -0,0 +1,49 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.azure;
+
+import com.azure.core.http.HttpClient;
+import com.azure.core.http.netty.NettyAsyncHttpClientBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the HttpClient shared by all clients of the Azure Blob storage.
+ *
+ * @author e:fs TechHub GmbH
+ */
+@Configuration
+@Profile("!s3")
+public class StorageHttpClientConfig {
+
+    /**
+     * HttpClient with a single connection-pool for all StorageAccounts
+     *
+     * @param maxConnections maximum number of connections (per StorageAccount endpoint)
+     * @param idleTimeout    time (in seconds) an idle connection is kept open
+     * @return the HttpClient
+     */
+    @Bean
+    public HttpClient storageHttpClient(@Value("${accessmanager.storage.http.max-connections:50}") int maxConnections, @Value("${accessmanager.storage.http.idle-timeout:60}") long idleTimeout) {
+        ConnectionProvider connectionProvider = ConnectionProvider.builder("azure-storage").maxConnections(maxConnections).maxIdleTime(Duration.ofSeconds(idleTimeout)).build();
+        return new NettyAsyncHttpClientBuilder().connectionProvider(connectionProvider).build();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.azure;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool preparing the issuance of tokens while the permissions are checked.
+ * <p>
+ * Separate from the application's TaskExecutor, so preparations never delay other background work. If all threads
+ * are busy and the queue is full, the preparation is skipped - the token is then prepared on issuance.
+ * <p>
+ * A preparation is run by whoever starts it first: a caller no longer willing to wait for a pool-thread runs a queued
+ * preparation itself ({@link Preparation#run()}), the pool-thread then skips it.
+ *
+ * @author e:fs TechHub GmbH
+ */
+@Component
+@Profile("!s3")
+public class TokenPreparationExecutor implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TokenPreparationExecutor.class);
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Constructor.
+     *
+     * @param threads  maximum number of concurrent preparations
+     * @param capacity maximum number of queued preparations
+     */
+    public TokenPreparationExecutor(@Value("${sas.token.preparation.threads:4}") int threads, @Value("${sas.token.preparation.queue:16}") int capacity) {
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(capacity), runnable -> {
+            Thread thread = new Thread(runnable, "token-preparation-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs the preparation in the background
+     *
+     * @param task the preparation
+     * @return the pending preparation, or a completed one if the preparation was skipped
+     */
+    public Preparation submit(Runnable task) {
+        Preparation preparation = new Preparation(task);
+        try {
+            executor.execute(preparation);
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Token-preparation skipped, all {} threads are busy", executor.getMaximumPoolSize());
+            return Preparation.skipped();
+        }
+        return preparation;
+    }
+
+    /**
+     * Stops the running preparations
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * A preparation, completed once it ran
+     */
+    public static final class Preparation extends CompletableFuture<Void> implements Runnable {
+
+        private final Runnable task;
+
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        Preparation(Runnable task) {
+            this.task = task;
+        }
+
+        /**
+         * @return a preparation that is never run
+         */
+        static Preparation skipped() {
+            Preparation preparation = new Preparation(() -> {
+            });
+            preparation.run();
+            return preparation;
+        }
+
+        /**
+         * Runs the preparation on the calling thread - unless it was started already (then it completes on the
+         * thread running it)
+         */
+        @Override
+        public void run() {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                task.run();
+                complete(null);
+            } catch (Throwable e) {
+                completeExceptionally(e);
+            }
+        }
+    }
+}
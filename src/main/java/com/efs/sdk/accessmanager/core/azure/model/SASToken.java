@@ -17,13 +17,24 @@ package com.efs.sdk.accessmanager.core.azure.model;
 
 import java.net.URLDecoder;
 import java.nio.charset.Charset;
+import java.time.Instant;
 import java.time.ZonedDateTime;
+import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static java.lang.String.format;
 
-public record SASToken(SASToken.SASType type, String organization, String space, String token) {
+/**
+ * Issued SAS-Token
+ *
+ * @param type         the type of the token
+ * @param organization the organization
+ * @param space        the space
+ * @param token        the token
+ * @param expiresAt    the expiry ('se') of the token
+ */
+public record SASToken(SASToken.SASType type, String organization, String space, String token, Instant expiresAt) {
     private static final String PROP_DURATION = "duration";
     /**
      * Regex for duration within the SAS-Token ('se' within the token - see
@@ -32,16 +43,38 @@ public record SASToken(SASToken.SASType type, String organization, String space,
     private static final String DURATION_REGEX = format("^.+se=(?<%s>(?:[1-9]\\d{3}-(?:(?:0[1-9]|1[0-2])-" + "(?:0[1-9]|1\\d|2[0-8])|(?:0[13-9]|1[0-2])-(?:29|30)|(?:0[13578]|1[02])-31)|(?:[1-9]\\d(?:0[48]|[2468][048]|[13579][26])|(?:[2468][048]|[13579][26])00)-02-29)T(?:[01]\\d|2[0-3]):[0-5]\\d:[0-5]\\d(?:Z|[+-][01]\\d:[0-5]\\d)).+$", PROP_DURATION);
     private static final Pattern DURATION_PATTERN = Pattern.compile(DURATION_REGEX);
 
-    public boolean isValid(int cacheBuffer) {
+    public SASToken {
+        Objects.requireNonNull(expiresAt, "expiresAt");
+    }
+
+    /**
+     * Creates a SASToken from a token that was not issued by this service - the expiry is parsed from the token ('se')
+     *
+     * @param type         the type of the token
+     * @param organization the organization
+     * @param space        the space
+     * @param token        the token
+     * @return the SASToken
+     * @throws IllegalArgumentException if the token does not contain a valid expiry
+     */
+    public static SASToken parse(SASType type, String organization, String space, String token) {
         String encoded = URLDecoder.decode(token, Charset.defaultCharset());
         Matcher matcher = DURATION_PATTERN.matcher(encoded);
         if (!matcher.matches()) {
             throw new IllegalArgumentException("Invalid sas-token!");
         }
         String duration = matcher.group(PROP_DURATION);
-        ZonedDateTime timeout = ZonedDateTime.parse(duration);
+        return new SASToken(type, organization, space, token, ZonedDateTime.parse(duration).toInstant());
+    }
 
-        return ZonedDateTime.now().isBefore(timeout.minusMinutes(cacheBuffer));
+    /**
+     * Checks whether the token is still valid for at least the given buffer
+     *
+     * @param cacheBuffer the buffer (in minutes)
+     * @return whether the token is still valid
+     */
+    public boolean isValid(int cacheBuffer) {
+        return System.currentTimeMillis() < expiresAt.toEpochMilli() - cacheBuffer * 60_000L;
     }
 
     public enum SASType {
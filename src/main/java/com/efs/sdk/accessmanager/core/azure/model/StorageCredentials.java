@@ -0,0 +1,86 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.azure.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static java.lang.String.format;
+
+/**
+ * Keys of a StorageAccount along with their connection-strings - the first key is the preferred one.
+ *
+ * @author e:fs TechHub GmbH
+ */
+public record StorageCredentials(String accountName, List<String> accountKeys, List<String> connectionStrings) {
+
+    public StorageCredentials {
+        if (accountKeys.isEmpty()) {
+            throw new IllegalArgumentException("no account-key given");
+        }
+        accountKeys = List.copyOf(accountKeys);
+        connectionStrings = List.copyOf(connectionStrings);
+    }
+
+    /**
+     * Creates the credentials of a StorageAccount
+     *
+     * @param accountName the name of the StorageAccount
+     * @param accountKeys the keys of the StorageAccount, preferred key first
+     * @return the credentials
+     */
+    public static StorageCredentials of(String accountName, List<String> accountKeys) {
+        List<String> connectionStrings = accountKeys.stream().map(key -> format("DefaultEndpointsProtocol=https;AccountName=%s;AccountKey=%s;EndpointSuffix=core.windows.net", accountName, key)).toList();
+        return new StorageCredentials(accountName, accountKeys, connectionStrings);
+    }
+
+    /**
+     * @return the preferred account-key
+     */
+    public String accountKey() {
+        return accountKeys.get(0);
+    }
+
+    /**
+     * @return the connection-string of the preferred account-key
+     */
+    public String connectionString() {
+        return connectionStrings.get(0);
+    }
+
+    /**
+     * Prefers the next account-key over the current one (e.g. after the current one was rotated)
+     *
+     * @return the credentials preferring the next account-key, if there is one
+     */
+    public Optional<StorageCredentials> failover() {
+        if (accountKeys.size() < 2) {
+            return Optional.empty();
+        }
+        List<String> keys = new ArrayList<>(accountKeys.subList(1, accountKeys.size()));
+        keys.add(accountKeys.get(0));
+        List<String> strings = new ArrayList<>(connectionStrings.subList(1, connectionStrings.size()));
+        strings.add(connectionStrings.get(0));
+        return Optional.of(new StorageCredentials(accountName, keys, strings));
+    }
+
+    @Override
+    public String toString() {
+        // never log the keys
+        return "StorageCredentials[accountName=" + accountName + ", keys=" + accountKeys.size() + "]";
+    }
+}
@@ -0,0 +1,631 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.events;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Durable, append-only outbox for events - a log of segment files in {@code accessmanager.outbox.directory} (required,
+ * it has to survive restarts of the instance, e.g. a persistent volume).
+ * <p>
+ * {@link #append(String, String, String)} returns once the event is on disk: concurrent appends share a single fsync (whoever
+ * forces the segment first, forces the events of all others written so far), as do the events of
+ * {@link #appendAll(String, List)}. A segment is closed once it reaches
+ * {@code accessmanager.outbox.segment-size} bytes.
+ * <p>
+ * Events are read from the acknowledged position (kept in the file {@code checkpoint}) and acknowledged once relayed;
+ * segments before the acknowledged position are deleted. On startup, events not acknowledged before are read again
+ * and appending continues in a new segment, so a torn record at the end of a segment (from a crash) is skipped.
+ * <p>
+ * Events Kafka rejects for good are moved to the file {@code dead-letter.log} (in the same format as the segments) -
+ * it is never deleted, nor read by the relay.
+ * <p>
+ * Each record consists of its length, its CRC32C and its body (length of the topic, topic, length of the key - -1
+ * without key -, key and message).
+ *
+ * @author e:fs TechHub GmbH
+ */
+@Component
+public class CommitOutbox implements MeterBinder, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CommitOutbox.class);
+
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final String CHECKPOINT = "checkpoint";
+
+    private static final String DEAD_LETTER = "dead-letter.log";
+
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    private final Path directory;
+
+    private final long segmentSize;
+
+    private final Object writeLock = new Object();
+
+    private final Object syncLock = new Object();
+
+    private final Object deadLetterLock = new Object();
+
+    /**
+     * Signalled whenever events are acknowledged
+     */
+    private final Object capacity = new Object();
+
+    /**
+     * Number of events appended (or being appended) but not yet acknowledged
+     */
+    private final AtomicLong backlog = new AtomicLong();
+
+    // guarded by writeLock
+    private FileChannel channel;
+    private long segment;
+    private long writeOffset;
+    private long written;
+    private Position lastWritten;
+
+    // guarded by syncLock
+    private long synced;
+
+    /**
+     * Position up to which the events are on disk - the limit for reading
+     */
+    private volatile Position durable;
+
+    private volatile Position acknowledged;
+
+    /**
+     * Constructor - opens the outbox, deleting acknowledged segments and counting the events still to be relayed
+     *
+     * @param directory   the directory of the segments
+     * @param segmentSize size (in bytes) after which a new segment is started
+     * @throws IOException thrown, if the outbox cannot be opened
+     */
+    public CommitOutbox(@Value("${accessmanager.outbox.directory}") String directory, @Value("${accessmanager.outbox.segment-size:16777216}") long segmentSize) throws IOException {
+        this.directory = Files.createDirectories(Path.of(directory));
+        this.segmentSize = segmentSize;
+        this.acknowledged = readCheckpoint();
+        long lastSegment = acknowledged.segment() - 1;
+        for (long existing : segments()) {
+            if (existing < acknowledged.segment()) {
+                Files.deleteIfExists(segmentPath(existing));
+            }
+            lastSegment = Math.max(lastSegment, existing);
+        }
+        openSegment(lastSegment + 1);
+        this.durable = lastWritten;
+        long replayed = 0L;
+        for (Batch batch = read(acknowledged, 1000); !batch.entries().isEmpty(); batch = read(batch.next(), 1000)) {
+            replayed += batch.entries().size();
+        }
+        backlog.set(replayed);
+        if (replayed > 0L) {
+            LOG.info("outbox {} holds {} events to relay", this.directory, replayed);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("accessmanager.outbox.backlog", backlog, AtomicLong::get)
+                .description("events in the outbox not yet relayed to Kafka")
+                .register(registry);
+        Gauge.builder("accessmanager.outbox.segments", this, outbox -> outbox.durable.segment() - outbox.acknowledged.segment() + 1)
+                .description("segments of the outbox not yet deleted")
+                .register(registry);
+    }
+
+    /**
+     * Appends the event - returns once it is on disk
+     *
+     * @param topic   the Kafka-topic
+     * @param key     the Kafka-key, may be null
+     * @param message the event
+     * @throws IOException thrown, if the event cannot be written
+     */
+    public void append(String topic, String key, String message) throws IOException {
+        appendAll(topic, List.of(new EventMessage(key, message)));
+    }
+
+    /**
+     * Appends the events in order with a single fsync - returns once they are on disk
+     *
+     * @param topic    the Kafka-topic
+     * @param messages the events
+     * @throws IOException thrown, if the events cannot be written
+     */
+    public void appendAll(String topic, List<EventMessage> messages) throws IOException {
+        if (messages.isEmpty()) {
+            return;
+        }
+        List<ByteBuffer> records = encode(topic, messages);
+        backlog.addAndGet(records.size());
+        write(records);
+    }
+
+    /**
+     * Appends the events in order with a single fsync, if the backlog can take them - returns once they are on disk.
+     * <p>
+     * The events are counted as backlog before they are written, so concurrent appends never exceed the limit
+     * together. They are taken as long as the backlog stays within the limit - or the backlog is empty (otherwise a
+     * batch larger than the limit could never be appended).
+     *
+     * @param topic    the Kafka-topic
+     * @param messages the events
+     * @param limit    the maximum number of events not yet acknowledged
+     * @param timeout  maximum time (in milliseconds) to wait for the backlog to drop
+     * @return true, if the events were appended - false, if the backlog did not drop far enough within the timeout
+     * @throws IOException          thrown, if the events cannot be written
+     * @throws InterruptedException thrown, if interrupted while waiting
+     */
+    public boolean appendAll(String topic, List<EventMessage> messages, long limit, long timeout) throws IOException, InterruptedException {
+        if (messages.isEmpty()) {
+            return true;
+        }
+        List<ByteBuffer> records = encode(topic, messages);
+        if (!reserve(records.size(), limit, timeout)) {
+            return false;
+        }
+        write(records);
+        return true;
+    }
+
+    /**
+     * Counts the events as backlog, once the backlog can take them
+     */
+    private boolean reserve(int events, long limit, long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        synchronized (capacity) {
+            while (backlog.get() > 0L && backlog.get() + events > limit) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0L) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(capacity, remaining);
+            }
+            backlog.addAndGet(events);
+            return true;
+        }
+    }
+
+    /**
+     * Returns the capacity of events that were counted as backlog, but not written
+     */
+    private void unreserve(int events) {
+        backlog.addAndGet(-events);
+        synchronized (capacity) {
+            capacity.notifyAll();
+        }
+    }
+
+    private static List<ByteBuffer> encode(String topic, List<EventMessage> messages) {
+        List<ByteBuffer> records = new ArrayList<>(messages.size());
+        for (EventMessage message : messages) {
+            records.add(encode(topic, message.key(), message.message()));
+        }
+        return records;
+    }
+
+    /**
+     * Writes the records, already counted as backlog, and forces them
+     */
+    private void write(List<ByteBuffer> records) throws IOException {
+        long size = 0L;
+        for (ByteBuffer record : records) {
+            size += record.remaining();
+        }
+        long sequence;
+        synchronized (writeLock) {
+            try {
+                // the events are written to a single segment, so a failed write can be undone
+                if (writeOffset > 0L && writeOffset + size > segmentSize) {
+                    rotate();
+                }
+                writeRecords(records);
+            } catch (IOException e) {
+                unreserve(records.size());
+                throw e;
+            }
+            writeOffset += size;
+            written += records.size();
+            sequence = written;
+            lastWritten = new Position(segment, writeOffset);
+        }
+        sync(sequence);
+    }
+
+    /**
+     * Forces the current segment, unless another append already did so for the given event
+     */
+    private void sync(long sequence) throws IOException {
+        synchronized (syncLock) {
+            if (synced >= sequence) {
+                return;
+            }
+            FileChannel current;
+            Position upTo;
+            long upToSequence;
+            synchronized (writeLock) {
+                current = channel;
+                upTo = lastWritten;
+                upToSequence = written;
+            }
+            try {
+                current.force(false);
+            } catch (ClosedChannelException e) {
+                // the segment was closed meanwhile - it was forced before closing
+            }
+            synced = upToSequence;
+            durable = upTo;
+        }
+    }
+
+    /**
+     * Writes the records to the current segment, removing them again if writing fails - requires writeLock
+     */
+    private void writeRecords(List<ByteBuffer> records) throws IOException {
+        try {
+            for (ByteBuffer record : records) {
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+            }
+        } catch (IOException e) {
+            discardPartialWrite();
+            throw e;
+        }
+    }
+
+    /**
+     * Removes the bytes of a failed write from the current segment, so later events are appended right after the last
+     * complete one. If the segment cannot be truncated, appending continues in a new segment: a torn record at the
+     * end of the old one is skipped when reading, events of the failed write completely written before may still be
+     * relayed (at least once) - requires writeLock
+     */
+    private void discardPartialWrite() {
+        try {
+            channel.truncate(writeOffset);
+            channel.position(writeOffset);
+        } catch (IOException e) {
+            LOG.warn("Unable to truncate outbox-segment {} to {}, continuing in a new segment: {}", segment, writeOffset, e.getMessage());
+            closeQuietly(channel);
+            try {
+                openSegment(segment + 1);
+            } catch (IOException ex) {
+                LOG.error("Unable to start outbox-segment {}: {}", segment + 1, ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Closes the current segment (forcing it) and starts the next one - requires writeLock
+     */
+    private void rotate() throws IOException {
+        channel.force(false);
+        channel.close();
+        openSegment(segment + 1);
+    }
+
+    private void openSegment(long id) throws IOException {
+        this.channel = openChannel(segmentPath(id));
+        this.segment = id;
+        this.writeOffset = 0L;
+        this.lastWritten = new Position(id, 0L);
+    }
+
+    /**
+     * Creates the file of a new segment, opened for writing
+     */
+    FileChannel openChannel(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Reads the events from the given position (up to the events on disk)
+     *
+     * @param from       the position to read from
+     * @param maxEntries maximum number of events read
+     * @return the events along with the position after them
+     * @throws IOException thrown, if a segment cannot be read
+     */
+    public Batch read(Position from, int maxEntries) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        Position position = from;
+        FileChannel reader = null;
+        try {
+            while (entries.size() < maxEntries) {
+                Position limit = durable;
+                if (position.compareTo(limit) >= 0) {
+                    break;
+                }
+                if (reader == null) {
+                    reader = openForReading(position.segment());
+                }
+                Entry entry = reader == null ? null : readEntry(reader, position, limit);
+                if (entry == null) {
+                    // end of a closed segment (or a torn record from a crash) - continue with the next one
+                    if (reader != null && position.offset() < reader.size()) {
+                        LOG.warn("skipping {} bytes of outbox-segment {} from {}", reader.size() - position.offset(), position.segment(), position.offset());
+                    }
+                    closeQuietly(reader);
+                    reader = null;
+                    position = new Position(position.segment() + 1, 0L);
+                    continue;
+                }
+                entries.add(entry);
+                position = new Position(position.segment(), position.offset() + HEADER_SIZE + entry.size());
+            }
+        } finally {
+            closeQuietly(reader);
+        }
+        return new Batch(entries, position);
+    }
+
+    private FileChannel openForReading(long id) throws IOException {
+        try {
+            return FileChannel.open(segmentPath(id), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the record at the given position - null, if there is no complete and valid record
+     */
+    private static Entry readEntry(FileChannel reader, Position position, Position limit) throws IOException {
+        long end = position.segment() == limit.segment() ? limit.offset() : reader.size();
+        if (position.offset() + HEADER_SIZE > end) {
+            return null;
+        }
+        ByteBuffer header = readFully(reader, position.offset(), HEADER_SIZE);
+        int length = header.getInt();
+        int crc = header.getInt();
+        if (length < Integer.BYTES || position.offset() + HEADER_SIZE + length > end) {
+            return null;
+        }
+        ByteBuffer body = readFully(reader, position.offset() + HEADER_SIZE, length);
+        CRC32C checksum = new CRC32C();
+        checksum.update(body.duplicate());
+        if ((int) checksum.getValue() != crc) {
+            return null;
+        }
+        int topicLength = body.getInt();
+        if (topicLength < 0 || topicLength > body.remaining()) {
+            return null;
+        }
+        String topic = StandardCharsets.UTF_8.decode(body.slice(body.position(), topicLength)).toString();
+        body.position(body.position() + topicLength);
+        if (body.remaining() < Integer.BYTES) {
+            return null;
+        }
+        int keyLength = body.getInt();
+        if (keyLength > body.remaining()) {
+            return null;
+        }
+        String key = null;
+        if (keyLength >= 0) {
+            key = StandardCharsets.UTF_8.decode(body.slice(body.position(), keyLength)).toString();
+            body.position(body.position() + keyLength);
+        }
+        String message = StandardCharsets.UTF_8.decode(body).toString();
+        return new Entry(topic, key, message, length);
+    }
+
+    private static ByteBuffer readFully(FileChannel reader, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (reader.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("unexpected end of outbox-segment");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static ByteBuffer encode(String topic, String key, String message) {
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        byte[] keyBytes = key == null ? new byte[0] : key.getBytes(StandardCharsets.UTF_8);
+        byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
+        int length = 2 * Integer.BYTES + topicBytes.length + keyBytes.length + messageBytes.length;
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + length);
+        record.putInt(length).putInt(0).putInt(topicBytes.length).put(topicBytes);
+        record.putInt(key == null ? -1 : keyBytes.length).put(keyBytes).put(messageBytes);
+        CRC32C checksum = new CRC32C();
+        checksum.update(record.array(), HEADER_SIZE, length);
+        record.putInt(Integer.BYTES, (int) checksum.getValue());
+        return record.flip();
+    }
+
+    /**
+     * Acknowledges all events before the given position (they have been relayed) and deletes the segments before it
+     *
+     * @param position the position after the last relayed event
+     * @param entries  the number of events acknowledged
+     * @throws IOException thrown, if the checkpoint cannot be written
+     */
+    public void acknowledge(Position position, int entries) throws IOException {
+        Position previous = acknowledged;
+        writeCheckpoint(position);
+        acknowledged = position;
+        backlog.addAndGet(-entries);
+        synchronized (capacity) {
+            capacity.notifyAll();
+        }
+        for (long id = previous.segment(); id < position.segment(); id++) {
+            Files.deleteIfExists(segmentPath(id));
+        }
+    }
+
+    /**
+     * Appends the events to the dead-letter file - returns once they are on disk
+     *
+     * @param entries the events
+     * @throws IOException thrown, if the events cannot be written
+     */
+    public void deadLetter(List<Entry> entries) throws IOException {
+        synchronized (deadLetterLock) {
+            try (FileChannel out = FileChannel.open(directory.resolve(DEAD_LETTER), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                for (Entry entry : entries) {
+                    ByteBuffer record = encode(entry.topic(), entry.key(), entry.message());
+                    while (record.hasRemaining()) {
+                        out.write(record);
+                    }
+                }
+                out.force(false);
+            }
+        }
+    }
+
+    /**
+     * Reads the events of the dead-letter file
+     */
+    List<Entry> readDeadLetters() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (FileChannel reader = FileChannel.open(directory.resolve(DEAD_LETTER), StandardOpenOption.READ)) {
+            Position end = new Position(0L, reader.size());
+            Position position = new Position(0L, 0L);
+            for (Entry entry = readEntry(reader, position, end); entry != null; entry = readEntry(reader, position, end)) {
+                entries.add(entry);
+                position = new Position(0L, position.offset() + HEADER_SIZE + entry.size());
+            }
+        } catch (NoSuchFileException e) {
+            return entries;
+        }
+        return entries;
+    }
+
+    /**
+     * @return the position after the last relayed event
+     */
+    public Position acknowledged() {
+        return acknowledged;
+    }
+
+    /**
+     * @return the number of events not yet acknowledged
+     */
+    public long backlog() {
+        return backlog.get();
+    }
+
+    private Position readCheckpoint() throws IOException {
+        Path checkpoint = directory.resolve(CHECKPOINT);
+        if (!Files.exists(checkpoint)) {
+            return new Position(0L, 0L);
+        }
+        String[] values = Files.readString(checkpoint).trim().split(" ");
+        return new Position(Long.parseLong(values[0]), Long.parseLong(values[1]));
+    }
+
+    /**
+     * Replaces the checkpoint atomically (writing and forcing a temporary file first)
+     */
+    private void writeCheckpoint(Position position) throws IOException {
+        Path temporary = directory.resolve(CHECKPOINT + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer content = StandardCharsets.UTF_8.encode(position.segment() + " " + position.offset());
+            while (content.hasRemaining()) {
+                out.write(content);
+            }
+            out.force(false);
+        }
+        Files.move(temporary, directory.resolve(CHECKPOINT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private List<Long> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private static void closeQuietly(FileChannel reader) {
+        if (reader == null) {
+            return;
+        }
+        try {
+            reader.close();
+        } catch (IOException e) {
+            LOG.debug("unable to close outbox-segment: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Closes the current segment
+     *
+     * @throws IOException thrown, if the segment cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Position in the outbox - segment and offset within it
+     */
+    public record Position(long segment, long offset) implements Comparable<Position> {
+
+        @Override
+        public int compareTo(Position other) {
+            int bySegment = Long.compare(segment, other.segment);
+            return bySegment != 0 ? bySegment : Long.compare(offset, other.offset);
+        }
+    }
+
+    /**
+     * An event along with the size of its record body
+     */
+    public record Entry(String topic, String key, String message, int size) {
+    }
+
+    /**
+     * Events read from the outbox along with the position after them
+     */
+    public record Batch(List<Entry> entries, Position next) {
+    }
+}
@@ -0,0 +1,96 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.events;
+
+import com.efs.sdk.accessmanager.core.model.CommitKey;
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.utils.Utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Partitioner for commit-events, keeping the events of a space on the same partition while spreading the spaces of an
+ * organization over several partitions.
+ * <p>
+ * For keys of the form {@code organization/space}, the organization selects the first of a window of
+ * {@value #SPREAD_CONFIG} partitions (all partitions, if not set) and the space selects the partition within that
+ * window. Hot organizations are thus spread over the window instead of all landing on the same partition. Other keys
+ * are hashed as a whole, events without key are distributed round-robin.
+ *
+ * @author e:fs TechHub GmbH
+ */
+public class CommitPartitioner implements Partitioner {
+
+    /**
+     * Producer-config holding the number of partitions the spaces of an organization are spread over
+     */
+    public static final String SPREAD_CONFIG = "accessmanager.commit.partitioner.spread";
+
+    private final AtomicInteger counter = new AtomicInteger();
+
+    private int spread = Integer.MAX_VALUE;
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        Object configured = configs.get(SPREAD_CONFIG);
+        if (configured != null && Integer.parseInt(configured.toString()) > 0) {
+            this.spread = Integer.parseInt(configured.toString());
+        }
+    }
+
+    @Override
+    public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes, Cluster cluster) {
+        int numPartitions = cluster.partitionsForTopic(topic).size();
+        if (key == null) {
+            int next = counter.getAndIncrement() & Integer.MAX_VALUE;
+            List<PartitionInfo> available = cluster.availablePartitionsForTopic(topic);
+            return available.isEmpty() ? next % numPartitions : available.get(next % available.size()).partition();
+        }
+        return partition(key.toString(), numPartitions, spread);
+    }
+
+    /**
+     * Selects the partition of a key
+     *
+     * @param key           the key
+     * @param numPartitions the number of partitions of the topic
+     * @param spread        the number of partitions the spaces of an organization are spread over
+     * @return the partition
+     */
+    static int partition(String key, int numPartitions, int spread) {
+        int separator = key.indexOf(CommitKey.SEPARATOR);
+        if (separator < 0) {
+            return hash(key) % numPartitions;
+        }
+        int window = Math.min(spread, numPartitions);
+        int first = hash(key.substring(0, separator)) % numPartitions;
+        return (first + hash(key.substring(separator + 1)) % window) % numPartitions;
+    }
+
+    private static int hash(String value) {
+        return Utils.toPositive(Utils.murmur2(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+}
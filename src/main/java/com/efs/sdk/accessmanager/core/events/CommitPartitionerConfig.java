@@ -0,0 +1,47 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.events;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.DefaultKafkaProducerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Map;
+
+/**
+ * Configuration of the {@link CommitPartitioner} for the producer relaying the commit-events - disabled with
+ * {@code accessmanager.commit.partitioner.enabled=false}, leaving the partitioning to Kafka.
+ *
+ * @author e:fs TechHub GmbH
+ */
+@Configuration
+@ConditionalOnProperty(value = "accessmanager.commit.partitioner.enabled", havingValue = "true", matchIfMissing = true)
+public class CommitPartitionerConfig {
+
+    /**
+     * Sets the CommitPartitioner as partitioner of the producer
+     *
+     * @param spread number of partitions the spaces of an organization are spread over (0 for all partitions)
+     * @return the customizer of the producer-factory
+     */
+    @Bean
+    public DefaultKafkaProducerFactoryCustomizer commitPartitionerCustomizer(@Value("${accessmanager.commit.partitioner.spread:0}") int spread) {
+        return producerFactory -> producerFactory.updateConfigs(Map.of(ProducerConfig.PARTITIONER_CLASS_CONFIG, CommitPartitioner.class, CommitPartitioner.SPREAD_CONFIG, spread));
+    }
+}
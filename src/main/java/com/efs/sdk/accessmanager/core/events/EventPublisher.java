@@ -15,21 +15,34 @@ limitations under the License.
  */
 package com.efs.sdk.accessmanager.core.events;
 
+import com.efs.sdk.accessmanager.commons.AccessManagerException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.task.TaskExecutor;
-import org.springframework.kafka.core.KafkaTemplate;
-import org.springframework.kafka.support.SendResult;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import java.util.concurrent.CompletableFuture;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.efs.sdk.accessmanager.commons.AccessManagerException.ACCESSMANAGER_ERROR.COMMIT_EVENTS_OVERLOADED;
 
 /**
- * Service for Event-publishing
+ * Service for Event-publishing - events are stored in the {@link CommitOutbox} and relayed to Kafka by the
+ * {@link OutboxRelay}, so they survive unavailability of Kafka (and restarts)
+ * <p>
+ * At most {@code accessmanager.outbox.max-backlog} events are kept waiting for Kafka (capacity is reserved within the
+ * outbox, so concurrent requests never exceed the bound together). Beyond that, events are rejected right away
+ * ({@code accessmanager.outbox.overflow.policy=reject}) or once the backlog did not drop far enough within
+ * {@code accessmanager.outbox.overflow.block-timeout} milliseconds ({@code block}).
  *
  * @author e:fs TechHub GmbH
  */
 @Service
-public class EventPublisher {
+public class EventPublisher implements MeterBinder {
 
     /**
      * Instance of the logger
@@ -37,55 +50,105 @@ public class EventPublisher {
     private static final Logger LOG = LoggerFactory.getLogger(EventPublisher.class);
 
     /**
-     * Instance of the KafkaTemplate
+     * Instance of the CommitOutbox
      */
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final CommitOutbox outbox;
+
+    private final OutboxRelay relay;
+
+    private final long maxBacklog;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final long blockTimeout;
 
-    private final TaskExecutor taskExecutor;
+    private final LongAdder rejected = new LongAdder();
 
     /**
      * Constructor.
      *
-     * @param kafkaTemplate The KafkaTemplate
-     * @param taskExecutor  The TaskExecutor
+     * @param outbox         The CommitOutbox
+     * @param relay          The OutboxRelay
+     * @param maxBacklog     maximum number of events waiting for Kafka
+     * @param overflowPolicy what to do with events beyond the maximum
+     * @param blockTimeout   time (in milliseconds) to wait for the backlog to drop (policy block)
+     */
+    public EventPublisher(CommitOutbox outbox, OutboxRelay relay, @Value("${accessmanager.outbox.max-backlog:100000}") long maxBacklog, @Value("${accessmanager.outbox.overflow.policy:reject}") OverflowPolicy overflowPolicy, @Value("${accessmanager.outbox.overflow.block-timeout:2000}") long blockTimeout) {
+        this.outbox = outbox;
+        this.relay = relay;
+        this.maxBacklog = maxBacklog;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeout = blockTimeout;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("accessmanager.outbox.rejected", rejected, LongAdder::sum)
+                .description("events rejected, as too many events were waiting for Kafka")
+                .register(registry);
+    }
+
+    /**
+     * Stores the message in the outbox - returns once it is on disk, relaying happens in the background
+     *
+     * @param message   The Event-Message
+     * @param topicName The name of the Kafka-topic
+     * @throws IOException            thrown, if the message cannot be stored
+     * @throws AccessManagerException thrown, if too many messages are waiting for Kafka
      */
-    public EventPublisher(KafkaTemplate<String, String> kafkaTemplate, TaskExecutor taskExecutor) {
-        this.kafkaTemplate = kafkaTemplate;
-        this.taskExecutor = taskExecutor;
+    public void sendMessage(String message, String topicName) throws IOException, AccessManagerException {
+        sendMessage(null, message, topicName);
     }
 
     /**
-     * Sends the message via StringSerializer
+     * Stores the message along with its key in the outbox - returns once it is on disk, relaying happens in the
+     * background
      *
+     * @param key       The Kafka-key of the Event-Message, may be null
      * @param message   The Event-Message
      * @param topicName The name of the Kafka-topic
+     * @throws IOException            thrown, if the message cannot be stored
+     * @throws AccessManagerException thrown, if too many messages are waiting for Kafka
      */
-    public void sendMessage(String message, String topicName) {
-        this.taskExecutor.execute(new EventTask(kafkaTemplate, topicName, message));
+    public void sendMessage(String key, String message, String topicName) throws IOException, AccessManagerException {
+        sendMessages(List.of(new EventMessage(key, message)), topicName);
     }
 
     /**
-     * Runnable for publishing event
+     * Stores the messages in the outbox at once - returns once they are on disk, relaying happens in the background
+     *
+     * @param messages  The Event-Messages along with their keys
+     * @param topicName The name of the Kafka-topic
+     * @throws IOException            thrown, if the messages cannot be stored
+     * @throws AccessManagerException thrown, if too many messages are waiting for Kafka
      */
-    private record EventTask(KafkaTemplate<String, String> kafkaTemplate, String topicName,
-                             String message) implements Runnable {
+    public void sendMessages(List<EventMessage> messages, String topicName) throws IOException, AccessManagerException {
+        long timeout = overflowPolicy == OverflowPolicy.BLOCK ? blockTimeout : 0L;
+        try {
+            if (outbox.appendAll(topicName, messages, maxBacklog, timeout)) {
+                relay.trigger();
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rejected.increment();
+        LOG.warn("Rejecting event, {} events are waiting for Kafka", outbox.backlog());
+        relay.trigger();
+        throw new AccessManagerException(COMMIT_EVENTS_OVERLOADED);
+    }
 
+    /**
+     * What to do with events beyond the maximum backlog
+     */
+    public enum OverflowPolicy {
         /**
-         * Publish message
+         * reject them right away
          */
-        @Override
-        public void run() {
-
-            CompletableFuture<SendResult<String, String>> future = kafkaTemplate.send(topicName, message);
-            LOG.debug("sending commit-message {}", message);
-
-            future.whenComplete((result, ex) -> {
-                if (ex == null) {
-                    LOG.debug("Sent message=[{}] with offset=[{}]", message, result.getRecordMetadata().offset());
-                } else {
-                    LOG.error("Unable to send message=[{}] due to : {}", message, ex.getMessage(), ex);
-                }
-            });
-        }
+        REJECT,
+        /**
+         * wait for the backlog to drop, reject them on timeout
+         */
+        BLOCK
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,119 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.events;
+
+import com.efs.sdk.accessmanager.clients.OrganizationManagerClient;
+import com.efs.sdk.accessmanager.core.azure.ContainerExistenceCache;
+import com.efs.sdk.accessmanager.core.azure.SASTokenCache;
+import com.efs.sdk.accessmanager.core.model.OrganizationChangeEvent;
+import com.efs.sdk.accessmanager.core.model.StorageTarget;
+import com.efs.sdk.accessmanager.helper.PermissionDecisionCache;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Consumes the organization- and space-changes published by the organizationmanager and invalidates exactly the
+ * cached entries affected by a change: SAS-Tokens, permission decisions, container existence and organization IDs.
+ * <p>
+ * The caches are held per instance, so every instance consumes all changes with a consumer group of its own
+ * ({@code accessmanager.invalidation.group-id}, random by default). Changes published while an instance was down do
+ * not matter, as its caches start empty. Enabled with {@code accessmanager.invalidation.enabled=true}.
+ *
+ * @author e:fs TechHub GmbH
+ */
+@Component
+@ConditionalOnProperty(value = "accessmanager.invalidation.enabled", havingValue = "true")
+public class OrganizationChangeListener {
+
+    /**
+     * Instance of the logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(OrganizationChangeListener.class);
+
+    private final ObjectMapper objectMapper;
+
+    private final PermissionDecisionCache decisionCache;
+
+    private final OrganizationManagerClient orgaManagerClient;
+
+    private final ObjectProvider<SASTokenCache> tokenCache;
+
+    private final ObjectProvider<ContainerExistenceCache> containerExistenceCache;
+
+    /**
+     * Constructor.
+     *
+     * @param objectMapper            The ObjectMapper
+     * @param decisionCache           The cache of permission decisions
+     * @param orgaManagerClient       The OrganizationManagerClient (caching the organization IDs)
+     * @param tokenCache              The cache of SAS-Tokens (Azure only)
+     * @param containerExistenceCache The cache of container existence (Azure only)
+     */
+    public OrganizationChangeListener(ObjectMapper objectMapper, PermissionDecisionCache decisionCache, OrganizationManagerClient orgaManagerClient, ObjectProvider<SASTokenCache> tokenCache, ObjectProvider<ContainerExistenceCache> containerExistenceCache) {
+        this.objectMapper = objectMapper;
+        this.decisionCache = decisionCache;
+        this.orgaManagerClient = orgaManagerClient;
+        this.tokenCache = tokenCache;
+        this.containerExistenceCache = containerExistenceCache;
+    }
+
+    /**
+     * Invalidates the entries affected by the given change - malformed changes are logged and skipped
+     *
+     * @param message the change (as JSON)
+     */
+    @KafkaListener(topics = "${accessmanager.topic.organization-changes:organizationmanager-changes}", groupId = "${accessmanager.invalidation.group-id:accessmanager-${random.uuid}}")
+    public void onMessage(String message) {
+        OrganizationChangeEvent event;
+        try {
+            event = objectMapper.readValue(message, OrganizationChangeEvent.class);
+        } catch (JsonProcessingException e) {
+            LOG.warn("Skipping malformed organization-change {}: {}", message, e.getOriginalMessage());
+            return;
+        }
+        if (event.organization() == null) {
+            LOG.warn("Skipping organization-change without organization: {}", message);
+            return;
+        }
+        invalidate(event);
+    }
+
+    /**
+     * Invalidates the entries of the changed space, or of the whole organization if no space is given
+     *
+     * @param event the change
+     */
+    void invalidate(OrganizationChangeEvent event) {
+        String organization = event.organization();
+        String space = event.space();
+        LOG.debug("Invalidating caches on {}-change of {}-{}", event.type(), organization, space);
+        decisionCache.invalidate(organization, space);
+        if (space == null) {
+            orgaManagerClient.invalidateOrganizationId(organization);
+            tokenCache.ifAvailable(cache -> cache.invalidateOrganization(organization));
+            containerExistenceCache.ifAvailable(cache -> cache.invalidateOrganization(organization));
+        } else {
+            tokenCache.ifAvailable(cache -> cache.invalidate(organization, space));
+            containerExistenceCache.ifAvailable(cache -> cache.invalidate(new StorageTarget(organization, space)));
+        }
+    }
+}
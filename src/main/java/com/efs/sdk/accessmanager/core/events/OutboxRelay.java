@@ -0,0 +1,309 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.events;
+
+import com.efs.sdk.accessmanager.core.events.CommitOutbox.Batch;
+import com.efs.sdk.accessmanager.core.events.CommitOutbox.Entry;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.AuthorizationException;
+import org.apache.kafka.common.errors.InvalidTopicException;
+import org.apache.kafka.common.errors.RecordBatchTooLargeException;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.errors.SerializationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Relays the events of the {@link CommitOutbox} to Kafka - in order, in batches of
+ * {@code accessmanager.outbox.relay.batch-size} events.
+ * <p>
+ * A batch is acknowledged once Kafka confirmed all of its events. If sending fails, the batch is sent again after a
+ * backoff doubling from {@code accessmanager.outbox.relay.backoff.initial} up to
+ * {@code accessmanager.outbox.relay.backoff.max} milliseconds - events are delivered at least once. The outbox is
+ * drained right after an append and every {@code accessmanager.outbox.relay.interval} milliseconds (which also replays
+ * the events left over from before a restart).
+ * <p>
+ * Events Kafka rejects for good (too large, not serializable, topic invalid or not authorized) would block the outbox
+ * forever - they are moved to its dead-letter file instead, so the events after them are relayed.
+ * <p>
+ * Draining after an append runs on a dedicated thread whose queue holds a single request - further requests are
+ * discarded, as the pending drain relays their events as well.
+ *
+ * @author e:fs TechHub GmbH
+ */
+@Component
+public class OutboxRelay implements MeterBinder, AutoCloseable {
+
+    /**
+     * Instance of the logger
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(OutboxRelay.class);
+
+    /**
+     * Name of the header carrying the key of an event
+     */
+    public static final String KEY_HEADER = "accessmanager-key";
+
+    private final CommitOutbox outbox;
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+
+    private final ThreadPoolExecutor executor;
+
+    private final int batchSize;
+
+    private final long sendTimeout;
+
+    private final long initialBackoff;
+
+    private final long maxBackoff;
+
+    private final ReentrantLock draining = new ReentrantLock();
+
+    private final AtomicBoolean requested = new AtomicBoolean();
+
+    private final LongAdder relayed = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder deadLettered = new LongAdder();
+
+    /**
+     * Number of events sent to Kafka, but not yet acknowledged by it
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile Timer sendTimer;
+
+    // guarded by draining
+    private int consecutiveFailures;
+    private long nextAttempt;
+
+    /**
+     * Constructor.
+     *
+     * @param outbox         The outbox
+     * @param kafkaTemplate  The KafkaTemplate
+     * @param batchSize      maximum number of events sent before waiting for their acknowledgement
+     * @param sendTimeout    time (in seconds) to wait for Kafka to acknowledge a batch
+     * @param initialBackoff time (in milliseconds) to wait after a failed batch
+     * @param maxBackoff     maximum time (in milliseconds) to wait after consecutive failed batches
+     */
+    public OutboxRelay(CommitOutbox outbox, KafkaTemplate<String, String> kafkaTemplate, @Value("${accessmanager.outbox.relay.batch-size:100}") int batchSize, @Value("${accessmanager.outbox.relay.send-timeout:30}") long sendTimeout, @Value("${accessmanager.outbox.relay.backoff.initial:1000}") long initialBackoff, @Value("${accessmanager.outbox.relay.backoff.max:60000}") long maxBackoff) {
+        this.outbox = outbox;
+        this.kafkaTemplate = kafkaTemplate;
+        this.batchSize = batchSize;
+        this.sendTimeout = sendTimeout;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1), runnable -> {
+            Thread thread = new Thread(runnable, "outbox-relay");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("accessmanager.outbox.relayed", relayed, LongAdder::sum)
+                .description("events relayed from the outbox to Kafka")
+                .register(registry);
+        FunctionCounter.builder("accessmanager.outbox.relay.failures", failures, LongAdder::sum)
+                .description("batches of the outbox Kafka did not acknowledge")
+                .register(registry);
+        FunctionCounter.builder("accessmanager.outbox.dead-lettered", deadLettered, LongAdder::sum)
+                .description("events of the outbox Kafka rejected for good, moved to its dead-letter file")
+                .register(registry);
+        Gauge.builder("accessmanager.outbox.relay.in-flight", inFlight, AtomicInteger::get)
+                .description("events sent to Kafka, awaiting its acknowledgement")
+                .register(registry);
+        this.sendTimer = Timer.builder("accessmanager.outbox.relay.send")
+                .description("time until Kafka acknowledged a batch of the outbox")
+                .register(registry);
+    }
+
+    /**
+     * Drains the outbox in the background
+     */
+    public void trigger() {
+        executor.execute(this::drain);
+    }
+
+    /**
+     * Relays all events of the outbox - unless another thread is already draining (it picks up the request) or the
+     * relay is backing off
+     */
+    @Scheduled(fixedDelayString = "${accessmanager.outbox.relay.interval:1000}")
+    public void drain() {
+        requested.set(true);
+        while (requested.get() && draining.tryLock()) {
+            try {
+                requested.set(false);
+                if (System.currentTimeMillis() >= nextAttempt) {
+                    relayAll();
+                }
+            } finally {
+                draining.unlock();
+            }
+        }
+    }
+
+    private void relayAll() {
+        try {
+            for (Batch batch = outbox.read(outbox.acknowledged(), batchSize); !batch.entries().isEmpty(); batch = outbox.read(outbox.acknowledged(), batchSize)) {
+                List<Entry> rejected = send(batch.entries());
+                if (!rejected.isEmpty()) {
+                    outbox.deadLetter(rejected);
+                    deadLettered.add(rejected.size());
+                }
+                outbox.acknowledge(batch.next(), batch.entries().size());
+                relayed.add(batch.entries().size() - rejected.size());
+                consecutiveFailures = 0;
+            }
+        } catch (IOException | ExecutionException | TimeoutException | RuntimeException e) {
+            backOff(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sends the events, waiting for Kafka to acknowledge all of them
+     *
+     * @return the events Kafka rejected for good
+     * @throws ExecutionException thrown, if Kafka failed to acknowledge an event, but may succeed on retry
+     */
+    private List<Entry> send(List<Entry> entries) throws ExecutionException, InterruptedException, TimeoutException {
+        long start = System.nanoTime();
+        inFlight.set(entries.size());
+        try {
+            List<CompletableFuture<?>> futures = new ArrayList<>(entries.size());
+            for (Entry entry : entries) {
+                futures.add(sendRecord(entry));
+            }
+            try {
+                CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(sendTimeout, TimeUnit.SECONDS);
+                return List.of();
+            } catch (ExecutionException e) {
+                // all events are completed, check which of them failed
+                return rejected(entries, futures);
+            }
+        } finally {
+            inFlight.set(0);
+            Timer timer = sendTimer;
+            if (timer != null) {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private CompletableFuture<?> sendRecord(Entry entry) {
+        try {
+            return kafkaTemplate.send(toRecord(entry));
+        } catch (RuntimeException e) {
+            // e.g. serialization failures are thrown rather than returned
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static List<Entry> rejected(List<Entry> entries, List<CompletableFuture<?>> futures) throws ExecutionException {
+        List<Entry> rejected = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            Throwable failure = failure(futures.get(i));
+            if (failure == null) {
+                continue;
+            }
+            if (!isNonRetriable(failure)) {
+                throw new ExecutionException(failure);
+            }
+            Entry entry = entries.get(i);
+            LOG.error("Kafka rejected an event (key {}) of topic {} for good, moving it to the dead-letter file of the outbox: {}", entry.key(), entry.topic(), failure.getMessage());
+            rejected.add(entry);
+        }
+        return rejected;
+    }
+
+    private static Throwable failure(CompletableFuture<?> future) {
+        try {
+            future.join();
+            return null;
+        } catch (CompletionException e) {
+            return e.getCause() == null ? e : e.getCause();
+        } catch (CancellationException e) {
+            return e;
+        }
+    }
+
+    /**
+     * Checks whether the failure (or one of its causes) will not go away by sending the event again
+     */
+    static boolean isNonRetriable(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if (cause instanceof RecordTooLargeException || cause instanceof RecordBatchTooLargeException
+                    || cause instanceof SerializationException || cause instanceof AuthorizationException
+                    || cause instanceof InvalidTopicException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates the record of the event - a keyed event carries its key in the header {@value #KEY_HEADER} as well
+     */
+    static ProducerRecord<String, String> toRecord(Entry entry) {
+        ProducerRecord<String, String> producerRecord = new ProducerRecord<>(entry.topic(), entry.key(), entry.message());
+        if (entry.key() != null) {
+            producerRecord.headers().add(KEY_HEADER, entry.key().getBytes(StandardCharsets.UTF_8));
+        }
+        return producerRecord;
+    }
+
+    private void backOff(Exception e) {
+        failures.increment();
+        consecutiveFailures++;
+        long backoff = Math.min(maxBackoff, initialBackoff << Math.min(consecutiveFailures - 1, 20));
+        nextAttempt = System.currentTimeMillis() + backoff;
+        LOG.warn("Unable to relay {} events from the outbox, retrying in {} ms: {}", outbox.backlog(), backoff, e.getMessage());
+    }
+
+    /**
+     * Stops the thread draining after appends
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
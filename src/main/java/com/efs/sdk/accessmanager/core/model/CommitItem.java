@@ -0,0 +1,33 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.model;
+
+import jakarta.validation.constraints.NotBlank;
+
+/**
+ * DTO for a single dataset of a batch commit - without root directory, the root directory is "none" (as for a single
+ * commit)
+ *
+ * @author e:fs TechHub GmbH
+ */
+public record CommitItem(@NotBlank String space, String rootDir) {
+
+    public CommitItem {
+        if (rootDir == null || rootDir.isBlank()) {
+            rootDir = "none";
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.model;
+
+import java.util.function.Function;
+
+/**
+ * Kafka-key of a commit-event, derived from the CommitModel - events with the same key are kept in order
+ *
+ * @author e:fs TechHub GmbH
+ */
+public enum CommitKey {
+    /**
+     * organization and space ({@code organization/space}), the commits of a space are kept in order
+     */
+    ORGANIZATION_SPACE(commit -> commit.accountName() + CommitKey.SEPARATOR + commit.storageName()),
+    /**
+     * organization only, all commits of an organization are kept in order
+     */
+    ORGANIZATION(CommitModel::accountName),
+    /**
+     * organization, space and root directory ({@code organization/space/rootDir}), only the commits of the same
+     * dataset are kept in order
+     */
+    DATASET(commit -> commit.accountName() + CommitKey.SEPARATOR + commit.storageName() + CommitKey.SEPARATOR + commit.rootDir()),
+    /**
+     * no key, the commits are spread over all partitions
+     */
+    NONE(commit -> null);
+
+    /**
+     * Separator of the parts of a key
+     */
+    public static final String SEPARATOR = "/";
+
+    private final Function<CommitModel, String> key;
+
+    CommitKey(Function<CommitModel, String> key) {
+        this.key = key;
+    }
+
+    /**
+     * @param commit the commit
+     * @return the key of the commit-event, null for {@link #NONE}
+     */
+    public String of(CommitModel commit) {
+        return key.apply(commit);
+    }
+}
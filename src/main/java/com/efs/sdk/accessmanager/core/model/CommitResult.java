@@ -0,0 +1,37 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.model;
+
+import com.efs.sdk.accessmanager.commons.AccessManagerException;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * DTO for the result of a single dataset of a batch commit - the status is 204, if the dataset was committed, the
+ * status and error of the single commit otherwise
+ *
+ * @author e:fs TechHub GmbH
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record CommitResult(String space, String rootDir, int status, Integer errorCode, String message) {
+
+    public static CommitResult committed(CommitItem item) {
+        return new CommitResult(item.space(), item.rootDir(), 204, null, null);
+    }
+
+    public static CommitResult failed(CommitItem item, AccessManagerException e) {
+        return new CommitResult(item.space(), item.rootDir(), e.getHttpStatus().value(), e.getErrorCode(), e.getMessage());
+    }
+}
@@ -18,6 +18,7 @@ package com.efs.sdk.accessmanager.core.s3;
 import com.efs.sdk.accessmanager.core.AccessManagementControllerV2;
 import com.efs.sdk.accessmanager.helper.AuthHelper;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -34,10 +35,11 @@ public class AccessManagementControllerS3 extends AccessManagementControllerV2 {
     /**
      * Constructor.
      *
-     * @param authHelper Instance of the Authentication utils.
-     * @param service    Instance of the AccessManagementService.
+     * @param authHelper   Instance of the Authentication utils.
+     * @param service      Instance of the AccessManagementService.
+     * @param maxBatchSize Maximum number of datasets committed at once.
      */
-    public AccessManagementControllerS3(AuthHelper authHelper, AccessManagementServiceS3 service) {
-        super(authHelper, service);
+    public AccessManagementControllerS3(AuthHelper authHelper, AccessManagementServiceS3 service, @Value("${accessmanager.commit.batch.max-size:500}") int maxBatchSize) {
+        super(authHelper, service, maxBatchSize);
     }
 }
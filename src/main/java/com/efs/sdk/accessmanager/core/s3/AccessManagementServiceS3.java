@@ -16,6 +16,7 @@ limitations under the License.
 package com.efs.sdk.accessmanager.core.s3;
 
 import com.efs.sdk.accessmanager.core.AccessManagementService;
+import com.efs.sdk.accessmanager.core.CommitDeduplicator;
 import com.efs.sdk.accessmanager.core.events.EventPublisher;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.context.annotation.Profile;
@@ -28,8 +29,8 @@ import org.springframework.stereotype.Component;
 @Profile("s3")
 public class AccessManagementServiceS3 extends AccessManagementService {
 
-    public AccessManagementServiceS3(ObjectMapper objectMapper, EventPublisher publisher) {
-        super(objectMapper, publisher);
+    public AccessManagementServiceS3(ObjectMapper objectMapper, EventPublisher publisher, CommitDeduplicator deduplicator) {
+        super(objectMapper, publisher, deduplicator);
     }
 
 }
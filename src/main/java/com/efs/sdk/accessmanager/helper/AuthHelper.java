@@ -15,23 +15,26 @@ limitations under the License.
  */
 package com.efs.sdk.accessmanager.helper;
 
+import com.efs.sdk.accessmanager.clients.OrganizationManagerCircuitBreaker;
 import com.efs.sdk.accessmanager.clients.OrganizationManagerClient;
 import com.efs.sdk.accessmanager.clients.OrganizationManagerClient.Permissions;
+import com.efs.sdk.accessmanager.clients.SpaceList;
 import com.efs.sdk.accessmanager.commons.AccessManagerException;
 import com.efs.sdk.accessmanager.commons.AccessManagerException.ACCESSMANAGER_ERROR;
 import com.efs.sdk.logging.AuditLogger;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 
-import java.util.List;
-import java.util.Map;
-
-import static java.lang.String.format;
-import static java.util.stream.Collectors.joining;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Helper class for extracting values from JWT tokens.
@@ -47,12 +50,19 @@ public class AuthHelper {
 
     private final OrganizationManagerClient organizationManagerClient;
 
-    public AuthHelper(OrganizationManagerClient organizationManagerClient) {
+    private final PermissionDecisionCache decisionCache;
+
+    private final ClaimPermissionEvaluator claimEvaluator;
+
+    public AuthHelper(OrganizationManagerClient organizationManagerClient, PermissionDecisionCache decisionCache, ClaimPermissionEvaluator claimEvaluator) {
         this.organizationManagerClient = organizationManagerClient;
+        this.decisionCache = decisionCache;
+        this.claimEvaluator = claimEvaluator;
     }
 
     /**
-     * Checks if the calling user is allowed to perform the requested operation.
+     * Checks if the calling user is allowed to perform the requested operation - granted by a role of the JWT or
+     * decided by the organizationmanager (decisions are cached).
      *
      * @param token        The user token.
      * @param organization The connection id.
@@ -61,58 +71,123 @@ public class AuthHelper {
      * @return If operation is allowed or not.
      */
     public boolean isAllowed(JwtAuthenticationToken token, String organization, String space, Permissions permissions) throws AccessManagerException {
+        // special case: loadingzone is no real space and filtered out when listing spaces
+        // user has read access to loadingzone, if write access to any other space within organization
+        if (space.equalsIgnoreCase(SPACE_LOADINGZONE) && permissions == Permissions.READ) {
+            return canAccessOrganization(token, organization, Permissions.WRITE);
+        }
+        if (isGrantedByRole(token, organization, space, permissions)) {
+            return true;
+        }
+        return decisionCache.isAllowed(token, organization, space, permissions, () -> fetchIsAllowed(token, organization, space, permissions));
+    }
+
+    private boolean fetchIsAllowed(JwtAuthenticationToken token, String organization, String space, Permissions permissions) throws AccessManagerException {
         try {
-            // special case: loadingzone is no real space and filtered out when listing spaces
-            // user has read access to loadingzone, if write access to any other space within organization
-            if (space.equalsIgnoreCase(SPACE_LOADINGZONE) && permissions == Permissions.READ) {
-                return canAccessOrganization(token, organization, Permissions.WRITE);
-            }
             String username = getUserName(token);
 
             LOG.debug("Fetching organization {} for user {}", organization, username);
-            Long orgaId = getLongProperty(organizationManagerClient.getOrganization(token, organization), "id");
+            Long orgaId = organizationManagerClient.getOrganizationId(token, organization);
             LOG.debug("Fetching spaces of the organization with id {} for user {} with {} permissions", orgaId, username, permissions);
-            List<Map<String, Object>> spaces = organizationManagerClient.getSpaces(token, orgaId, permissions);
+            SpaceList spaces = organizationManagerClient.getSpaceList(token, orgaId, permissions);
 
             // if user can list the space with requested permissions, then he is allowed to do the operation
             AuditLogger.info(LOG, "Checking if user has {} permissions on space {}", username, permissions, space);
-            return spaces.stream().anyMatch(s -> getStringProperty(s, "name").equalsIgnoreCase(space));
+            return spaces.contains(space);
         } catch (HttpStatusCodeException e) {
             if (e.getStatusCode() == HttpStatus.FORBIDDEN) {
                 AuditLogger.info(LOG, "User has no {} permissions on space {}", getUserName(token), permissions, space);
                 return false;
-            } else if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
-                throw new AccessManagerException(ACCESSMANAGER_ERROR.ORGANIZATION_NOT_FOUND);
-            } else {
-                throw new AccessManagerException(ACCESSMANAGER_ERROR.ORGANIZATIONMANAGER_ERROR, e.getMessage());
             }
+            throw toAccessManagerException(e);
+        } catch (RestClientException | CallNotPermittedException e) {
+            throw toAccessManagerException(e);
         }
     }
 
+    /**
+     * Checks if the calling user is allowed to perform the requested operation - without blocking the calling thread
+     * on a miss of the decision cache.
+     *
+     * @param token        The user token.
+     * @param organization The connection id.
+     * @param space        The container name.
+     * @param permissions  The requested permissions.
+     * @return If operation is allowed or not - failed with an AccessManagerException, if checking failed.
+     */
+    public CompletableFuture<Boolean> isAllowedAsync(JwtAuthenticationToken token, String organization, String space, Permissions permissions) {
+        if (space.equalsIgnoreCase(SPACE_LOADINGZONE) && permissions == Permissions.READ) {
+            return canAccessOrganizationAsync(token, organization, Permissions.WRITE);
+        }
+        if (isGrantedByRole(token, organization, space, permissions)) {
+            return CompletableFuture.completedFuture(true);
+        }
+        return decisionCache.isAllowedAsync(token, organization, space, permissions, () -> fetchSpaceListAsync(token, organization, permissions).thenApply(spaces -> {
+            AuditLogger.info(LOG, "Checking if user has {} permissions on space {}", getUserName(token), permissions, space);
+            return spaces.contains(space);
+        }));
+    }
 
-    private Object getProperty(Map<String, Object> objectMap, String property) {
-        if (!objectMap.containsKey(property)) {
-            throw new IllegalArgumentException(format("unable to find '%s' in object '%s'", property, objectMap.keySet().stream().map(key -> key + "=" + objectMap.get(key)).collect(joining(", ", "{", "}"))));
+    /**
+     * Check, if user has given access to any space within the given organization - without blocking the calling thread
+     * on a miss of the decision cache.
+     *
+     * @param token        the jwt (as JwtAuthenticationToken)
+     * @param organization The name of the organization
+     * @param permissions  The given permissions
+     * @return whether user has access to organization - failed with an AccessManagerException, if checking failed.
+     */
+    public CompletableFuture<Boolean> canAccessOrganizationAsync(JwtAuthenticationToken token, String organization, Permissions permissions) {
+        if (isGrantedByRole(token, organization, null, permissions)) {
+            return CompletableFuture.completedFuture(true);
         }
-        return objectMap.get(property);
+        return decisionCache.isAllowedAsync(token, organization, null, permissions, () -> fetchSpaceListAsync(token, organization, permissions).thenApply(spaces -> {
+            AuditLogger.info(LOG, "Checking if user has {} permissions on any space of the organization {}", getUserName(token), permissions, organization);
+            return !spaces.isEmpty();
+        }));
     }
 
-    private String getStringProperty(Map<String, Object> objectMap, String property) {
-        Object o = getProperty(objectMap, property);
-        return String.valueOf(o);
+    /**
+     * Checks whether a role of the JWT grants the permissions on the space (or any space of the organization, if space
+     * is null) - without asking the organizationmanager
+     */
+    private boolean isGrantedByRole(JwtAuthenticationToken token, String organization, String space, Permissions permissions) {
+        boolean granted = space == null ? claimEvaluator.canAccessOrganization(token, organization, permissions) : claimEvaluator.isAllowed(token, organization, space, permissions);
+        if (granted) {
+            AuditLogger.info(LOG, "User has {} permissions on space {} of the organization {} by role", getUserName(token), permissions, space == null ? "any" : space, organization);
+        }
+        return granted;
     }
 
-    private Long getLongProperty(Map<String, Object> objectMap, String property) {
-        Object o = getProperty(objectMap, property);
-        return castLong(o);
+    /**
+     * Fetches the spaces of the organization the user has the given permissions to - none, if the user may not access
+     * the organization
+     */
+    private CompletableFuture<SpaceList> fetchSpaceListAsync(JwtAuthenticationToken token, String organization, Permissions permissions) {
+        LOG.debug("Fetching organization {} for user {} (async)", organization, getUserName(token));
+        return organizationManagerClient.getOrganizationIdAsync(token, organization)
+                .thenCompose(orgaId -> organizationManagerClient.getSpaceListAsync(token, orgaId, permissions))
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                    if (cause instanceof WebClientResponseException wcre && wcre.getStatusCode() == HttpStatus.FORBIDDEN) {
+                        AuditLogger.info(LOG, "User has no {} permissions on any space of the organization {}", getUserName(token), permissions, organization);
+                        return new SpaceList(List.of());
+                    }
+                    throw new CompletionException(toAccessManagerException(cause));
+                });
     }
 
-    private Long castLong(Object o) {
-        Long value = null;
-        if (o != null) {
-            value = Long.parseLong(o.toString());
+
+    private static AccessManagerException toAccessManagerException(Throwable e) {
+        // 5xx-responses count as unavailability as well - so a stale decision may be served
+        if (OrganizationManagerCircuitBreaker.isUnavailability(e)) {
+            return new AccessManagerException(ACCESSMANAGER_ERROR.ORGANIZATIONMANAGER_UNAVAILABLE, e.getMessage());
         }
-        return value;
+        if (e instanceof HttpStatusCodeException hsce && hsce.getStatusCode() == HttpStatus.NOT_FOUND
+                || e instanceof WebClientResponseException wcre && wcre.getStatusCode() == HttpStatus.NOT_FOUND) {
+            return new AccessManagerException(ACCESSMANAGER_ERROR.ORGANIZATION_NOT_FOUND);
+        }
+        return new AccessManagerException(ACCESSMANAGER_ERROR.ORGANIZATIONMANAGER_ERROR, e.getMessage());
     }
 
     /**
@@ -126,7 +201,7 @@ public class AuthHelper {
     }
 
     /**
-     * Check, if user has given access to any space within the given organization
+     * Check, if user has given access to any space within the given organization - decisions are cached.
      *
      * @param token        the jwt (as JwtAuthenticationToken)
      * @param organization The name of the organization
@@ -134,12 +209,19 @@ public class AuthHelper {
      * @return whether user has access to organization
      */
     public boolean canAccessOrganization(JwtAuthenticationToken token, String organization, Permissions permissions) throws AccessManagerException {
+        if (isGrantedByRole(token, organization, null, permissions)) {
+            return true;
+        }
+        return decisionCache.isAllowed(token, organization, null, permissions, () -> fetchCanAccessOrganization(token, organization, permissions));
+    }
+
+    private boolean fetchCanAccessOrganization(JwtAuthenticationToken token, String organization, Permissions permissions) throws AccessManagerException {
         try {
             String username = getUserName(token);
             LOG.debug("Fetching organization {} for user {}", organization, username);
-            Long orgaId = getLongProperty(organizationManagerClient.getOrganization(token, organization), "id");
+            Long orgaId = organizationManagerClient.getOrganizationId(token, organization);
             LOG.debug("Fetching spaces of the organization with id {} for user {} with {} permissions", orgaId, username, permissions);
-            List<Map<String, Object>> spaces = organizationManagerClient.getSpaces(token, orgaId, permissions);
+            SpaceList spaces = organizationManagerClient.getSpaceList(token, orgaId, permissions);
 
             // if user gets any space within the organization for requested permissions, then he is allowed to access the organiztaion
             AuditLogger.info(LOG, "Checking if user has {} permissions on any space of the organization {}", username, permissions, organization);
@@ -148,11 +230,10 @@ public class AuthHelper {
             if (e.getStatusCode() == HttpStatus.FORBIDDEN) {
                 AuditLogger.info(LOG, "User has no {} permissions on any space of the organization {}", getUserName(token), permissions, organization);
                 return false;
-            } else if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
-                throw new AccessManagerException(ACCESSMANAGER_ERROR.ORGANIZATION_NOT_FOUND);
-            } else {
-                throw new AccessManagerException(ACCESSMANAGER_ERROR.ORGANIZATIONMANAGER_ERROR, e.getMessage());
             }
+            throw toAccessManagerException(e);
+        } catch (RestClientException | CallNotPermittedException e) {
+            throw toAccessManagerException(e);
         }
     }
 }
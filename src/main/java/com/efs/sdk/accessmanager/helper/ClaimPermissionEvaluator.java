@@ -0,0 +1,127 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.helper;
+
+import com.efs.sdk.accessmanager.clients.OrganizationManagerClient.Permissions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Decides permissions locally from the roles of the JWT (as extracted by the CustomJwtGrantedAuthoritiesConverter).
+ * <p>
+ * With {@code accessmanager.auth.claims.enabled=true}, roles matching {@code accessmanager.auth.claims.role-pattern}
+ * (with the named groups {@code organization}, {@code space} and {@code role}) grant the permissions configured for
+ * their role ({@code accessmanager.auth.claims.read-roles}, {@code write-roles} and {@code delete-roles}). Roles can
+ * only grant permissions: if no role matches, the claims are inconclusive and the organizationmanager decides - so
+ * e.g. public spaces or organization-wide access are still honored.
+ *
+ * @author e:fs TechHub GmbH
+ */
+@Component
+public class ClaimPermissionEvaluator {
+
+    private static final String GROUP_ORGANIZATION = "organization";
+    private static final String GROUP_SPACE = "space";
+    private static final String GROUP_ROLE = "role";
+
+    private final boolean enabled;
+
+    private final Pattern rolePattern;
+
+    private final Map<Permissions, Set<String>> grantingRoles;
+
+    /**
+     * Constructor.
+     *
+     * @param enabled     whether permissions are decided from the roles of the JWT
+     * @param rolePattern pattern of the roles, with the named groups organization, space and role
+     * @param readRoles   roles granting READ
+     * @param writeRoles  roles granting WRITE
+     * @param deleteRoles roles granting DELETE
+     */
+    public ClaimPermissionEvaluator(@Value("${accessmanager.auth.claims.enabled:false}") boolean enabled, @Value("${accessmanager.auth.claims.role-pattern:^(?<organization>[^_]+)_(?<space>[^_]+)_(?<role>[^_]+)$}") String rolePattern, @Value("${accessmanager.auth.claims.read-roles:user,supplier,trustee}") String[] readRoles, @Value("${accessmanager.auth.claims.write-roles:supplier,trustee}") String[] writeRoles, @Value("${accessmanager.auth.claims.delete-roles:trustee}") String[] deleteRoles) {
+        for (String group : List.of(GROUP_ORGANIZATION, GROUP_SPACE, GROUP_ROLE)) {
+            if (!rolePattern.contains("(?<" + group + ">")) {
+                throw new IllegalArgumentException(String.format("role-pattern '%s' lacks the named group '%s'", rolePattern, group));
+            }
+        }
+        this.enabled = enabled;
+        this.rolePattern = Pattern.compile(rolePattern);
+        Map<Permissions, Set<String>> roles = new EnumMap<>(Permissions.class);
+        roles.put(Permissions.READ, normalize(readRoles));
+        roles.put(Permissions.WRITE, normalize(writeRoles));
+        roles.put(Permissions.DELETE, normalize(deleteRoles));
+        this.grantingRoles = Collections.unmodifiableMap(roles);
+    }
+
+    private static Set<String> normalize(String[] roles) {
+        Set<String> normalized = new HashSet<>();
+        for (String role : roles) {
+            if (!role.isBlank()) {
+                normalized.add(role.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        return Set.copyOf(normalized);
+    }
+
+    /**
+     * Checks whether a role of the user grants the permissions on the space
+     *
+     * @param token        the jwt (as JwtAuthenticationToken)
+     * @param organization the name of the organization
+     * @param space        the name of the space
+     * @param permissions  the requested permissions
+     * @return true, if granted by a role - false, if inconclusive (or disabled)
+     */
+    public boolean isAllowed(JwtAuthenticationToken token, String organization, String space, Permissions permissions) {
+        return enabled && isGranted(token, organization, space, permissions);
+    }
+
+    /**
+     * Checks whether a role of the user grants the permissions on any space of the organization
+     *
+     * @param token        the jwt (as JwtAuthenticationToken)
+     * @param organization the name of the organization
+     * @param permissions  the requested permissions
+     * @return true, if granted by a role - false, if inconclusive (or disabled)
+     */
+    public boolean canAccessOrganization(JwtAuthenticationToken token, String organization, Permissions permissions) {
+        return enabled && isGranted(token, organization, null, permissions);
+    }
+
+    private boolean isGranted(JwtAuthenticationToken token, String organization, String space, Permissions permissions) {
+        Set<String> roles = grantingRoles.get(permissions);
+        if (roles == null || roles.isEmpty()) {
+            return false;
+        }
+        for (GrantedAuthority authority : token.getAuthorities()) {
+            Matcher matcher = rolePattern.matcher(authority.getAuthority());
+            if (matcher.matches()
+                    && matcher.group(GROUP_ORGANIZATION).equalsIgnoreCase(organization)
+                    && (space == null || matcher.group(GROUP_SPACE).equalsIgnoreCase(space))
+                    && roles.contains(matcher.group(GROUP_ROLE).toLowerCase(Locale.ROOT))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
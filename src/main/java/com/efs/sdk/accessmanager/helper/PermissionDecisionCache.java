@@ -0,0 +1,299 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.helper;
+
+import com.efs.sdk.accessmanager.clients.OrganizationManagerClient.Permissions;
+import com.efs.sdk.accessmanager.commons.AccessManagerException;
+import com.efs.sdk.accessmanager.commons.AccessManagerException.ACCESSMANAGER_ERROR;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache for permission decisions, keyed by subject, organization, space and permissions.
+ * <p>
+ * A decision is cached for {@code accessmanager.auth.decision-cache.ttl} seconds, but never beyond the expiry of the
+ * JWT it was made for. Only decisions are cached - errors (e.g. unknown organizations) are not. Tokens without subject
+ * are never cached.
+ * <p>
+ * Expired decisions are kept for another {@code accessmanager.auth.decision-cache.stale-window} seconds (again bounded
+ * by the JWT): if the organizationmanager is unavailable (or its circuit is open) when re-deciding, the stale decision
+ * is served instead of failing.
+ * <p>
+ * Invalidation also covers decisions still being made: a decision made while its organization was invalidated is
+ * returned to its caller, but not cached.
+ *
+ * @author e:fs TechHub GmbH
+ */
+@Component
+public class PermissionDecisionCache implements MeterBinder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PermissionDecisionCache.class);
+
+    private final Duration ttl;
+
+    private final Duration staleWindow;
+
+    private final LongAdder staleHits = new LongAdder();
+
+    private final Cache<DecisionKey, Decision> cache;
+
+    /**
+     * Number of invalidations, by (lower-case) organization
+     */
+    private final ConcurrentMap<String, Long> generations = new ConcurrentHashMap<>();
+
+    /**
+     * Number of invalidations of all decisions
+     */
+    private final AtomicLong globalGeneration = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param ttl         time (in seconds) a decision is cached
+     * @param staleWindow time (in seconds) an expired decision is served while the organizationmanager is unavailable
+     * @param maxSize     maximum number of cached decisions
+     */
+    public PermissionDecisionCache(@Value("${accessmanager.auth.decision-cache.ttl:30}") long ttl, @Value("${accessmanager.auth.decision-cache.stale-window:300}") long staleWindow, @Value("${accessmanager.auth.decision-cache.max-size:10000}") long maxSize) {
+        this.ttl = Duration.ofSeconds(ttl);
+        this.staleWindow = Duration.ofSeconds(staleWindow);
+        this.cache = Caffeine.newBuilder().maximumSize(maxSize).expireAfter(new DecisionExpiry()).recordStats().build();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "accessmanager.permission-decisions");
+        FunctionCounter.builder("accessmanager.permission-decisions.stale", staleHits, LongAdder::sum)
+                .description("decisions served stale, as the organizationmanager was unavailable")
+                .register(registry);
+    }
+
+    /**
+     * Gets the cached decision or decides (and caches the decision), if there is none.
+     *
+     * @param token        the jwt (as JwtAuthenticationToken)
+     * @param organization the organization
+     * @param space        the space, or null for a decision on the whole organization
+     * @param permissions  the requested permissions
+     * @param check        decides on a miss
+     * @return whether the user is allowed
+     * @throws AccessManagerException thrown, if deciding failed (and there is no stale decision to fall back to)
+     */
+    public boolean isAllowed(JwtAuthenticationToken token, String organization, String space, Permissions permissions, PermissionCheck check) throws AccessManagerException {
+        Jwt jwt = token.getToken();
+        String subject = jwt == null ? null : jwt.getSubject();
+        if (subject == null) {
+            return check.isAllowed();
+        }
+        DecisionKey key = DecisionKey.of(subject, organization, space, permissions);
+        Decision cached = cache.getIfPresent(key);
+        Instant now = Instant.now();
+        if (isFresh(cached, now)) {
+            return cached.allowed();
+        }
+        long generation = generation(key.organization());
+        boolean allowed;
+        try {
+            allowed = check.isAllowed();
+        } catch (AccessManagerException e) {
+            return serveStale(key, cached, e);
+        }
+        store(key, allowed, now, jwt, generation);
+        return allowed;
+    }
+
+    /**
+     * Like {@link #isAllowed(JwtAuthenticationToken, String, String, Permissions, PermissionCheck)}, but deciding
+     * without blocking on a miss.
+     *
+     * @param token        the jwt (as JwtAuthenticationToken)
+     * @param organization the organization
+     * @param space        the space, or null for a decision on the whole organization
+     * @param permissions  the requested permissions
+     * @param check        decides on a miss
+     * @return whether the user is allowed - failed with an AccessManagerException, if deciding failed (and there is no
+     * stale decision to fall back to)
+     */
+    public CompletableFuture<Boolean> isAllowedAsync(JwtAuthenticationToken token, String organization, String space, Permissions permissions, AsyncPermissionCheck check) {
+        Jwt jwt = token.getToken();
+        String subject = jwt == null ? null : jwt.getSubject();
+        if (subject == null) {
+            return check.isAllowed();
+        }
+        DecisionKey key = DecisionKey.of(subject, organization, space, permissions);
+        Decision cached = cache.getIfPresent(key);
+        Instant now = Instant.now();
+        if (isFresh(cached, now)) {
+            return CompletableFuture.completedFuture(cached.allowed());
+        }
+        long generation = generation(key.organization());
+        return check.isAllowed().handle((allowed, e) -> {
+            if (e == null) {
+                store(key, allowed, now, jwt, generation);
+                return allowed;
+            }
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            if (cause instanceof AccessManagerException ame) {
+                try {
+                    return serveStale(key, cached, ame);
+                } catch (AccessManagerException ex) {
+                    throw new CompletionException(ex);
+                }
+            }
+            throw e instanceof CompletionException ce ? ce : new CompletionException(e);
+        });
+    }
+
+    private static boolean isFresh(Decision cached, Instant now) {
+        return cached != null && now.isBefore(cached.freshUntil());
+    }
+
+    /**
+     * Both counters only grow, so their sum changes with every invalidation of the organization
+     */
+    private long generation(String organization) {
+        return globalGeneration.get() + generations.getOrDefault(organization, 0L);
+    }
+
+    /**
+     * Caches the decision - unless its organization was invalidated since the given generation
+     */
+    private void store(DecisionKey key, boolean allowed, Instant now, Jwt jwt, long generation) {
+        Decision decision = new Decision(allowed, min(now.plus(ttl), jwt.getExpiresAt()), min(now.plus(ttl).plus(staleWindow), jwt.getExpiresAt()));
+        cache.asMap().compute(key, (k, current) -> generation(k.organization()) == generation ? decision : current);
+    }
+
+    /**
+     * Serves the stale decision, if deciding failed as the organizationmanager is unavailable - rethrows the error
+     * otherwise
+     */
+    private boolean serveStale(DecisionKey key, Decision cached, AccessManagerException e) throws AccessManagerException {
+        if (cached == null || e.getError() != ACCESSMANAGER_ERROR.ORGANIZATIONMANAGER_UNAVAILABLE) {
+            throw e;
+        }
+        LOG.warn("organizationmanager unavailable, serving decision on {} from {}", key, cached.freshUntil());
+        staleHits.increment();
+        return cached.allowed();
+    }
+
+    private static Instant min(Instant instant, Instant jwtExpiresAt) {
+        return jwtExpiresAt != null && jwtExpiresAt.isBefore(instant) ? jwtExpiresAt : instant;
+    }
+
+    /**
+     * Removes all cached decisions
+     */
+    public void invalidateAll() {
+        globalGeneration.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * Removes the cached decisions on the given space and on its organization as a whole (these depend on the spaces
+     * of the organization). Without space, all decisions on the organization and its spaces are removed.
+     *
+     * @param organization the organization
+     * @param space        the space, or null for the whole organization
+     */
+    public void invalidate(String organization, String space) {
+        String normalizedOrganization = organization.toLowerCase(Locale.ROOT);
+        String normalizedSpace = space == null ? null : space.toLowerCase(Locale.ROOT);
+        generations.merge(normalizedOrganization, 1L, Long::sum);
+        cache.asMap().keySet().removeIf(key -> key.organization().equals(normalizedOrganization)
+                && (normalizedSpace == null || key.space() == null || key.space().equals(normalizedSpace)));
+    }
+
+    /**
+     * @return the (estimated) number of cached decisions
+     */
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * Decides whether the user is allowed
+     */
+    @FunctionalInterface
+    public interface PermissionCheck {
+
+        boolean isAllowed() throws AccessManagerException;
+    }
+
+    /**
+     * Decides whether the user is allowed - without blocking
+     */
+    @FunctionalInterface
+    public interface AsyncPermissionCheck {
+
+        CompletableFuture<Boolean> isAllowed();
+    }
+
+    /**
+     * Key of a decision - organization and space are normalized to lower-case
+     */
+    record DecisionKey(String subject, String organization, String space, Permissions permissions) {
+
+        static DecisionKey of(String subject, String organization, String space, Permissions permissions) {
+            return new DecisionKey(subject, organization.toLowerCase(Locale.ROOT), space == null ? null : space.toLowerCase(Locale.ROOT), permissions);
+        }
+    }
+
+    /**
+     * A decision - fresh until freshUntil, afterward served only while the organizationmanager is unavailable
+     */
+    private record Decision(boolean allowed, Instant freshUntil, Instant expiresAt) {
+    }
+
+    /**
+     * Expires a decision at its expiresAt (the end of its stale window)
+     */
+    private static class DecisionExpiry implements Expiry<DecisionKey, Decision> {
+
+        @Override
+        public long expireAfterCreate(DecisionKey key, Decision value, long currentTime) {
+            long remaining = value.expiresAt().toEpochMilli() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0L, remaining));
+        }
+
+        @Override
+        public long expireAfterUpdate(DecisionKey key, Decision value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(DecisionKey key, Decision value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
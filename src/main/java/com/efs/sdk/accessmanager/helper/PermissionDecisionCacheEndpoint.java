@@ -0,0 +1,49 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.helper;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Actuator-endpoint for inspecting and flushing the cached permission decisions.
+ *
+ * @author e:fs TechHub GmbH
+ */
+@Component
+@Endpoint(id = "permissiondecisions")
+public class PermissionDecisionCacheEndpoint {
+
+    private final PermissionDecisionCache decisionCache;
+
+    public PermissionDecisionCacheEndpoint(PermissionDecisionCache decisionCache) {
+        this.decisionCache = decisionCache;
+    }
+
+    @ReadOperation
+    public Map<String, Long> size() {
+        return Map.of("size", decisionCache.size());
+    }
+
+    @DeleteOperation
+    public void flush() {
+        decisionCache.invalidateAll();
+    }
+}
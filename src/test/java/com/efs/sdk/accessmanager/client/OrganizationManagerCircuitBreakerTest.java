@@ -0,0 +1,90 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.client;
+
+import com.efs.sdk.accessmanager.clients.OrganizationManagerCircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrganizationManagerCircuitBreakerTest {
+
+    private OrganizationManagerCircuitBreaker circuitBreaker;
+
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setup() {
+        this.circuitBreaker = new OrganizationManagerCircuitBreaker(50f, 4, 4, 10L, 2000L, 1);
+        this.registry = new SimpleMeterRegistry();
+        circuitBreaker.bindTo(registry);
+    }
+
+    @Test
+    void givenUnavailable_whenCall_thenCircuitOpensAndFailsFast() {
+        for (int i = 0; i < 4; i++) {
+            assertThrows(ResourceAccessException.class, () -> circuitBreaker.call(() -> {
+                throw new ResourceAccessException("Connection refused");
+            }));
+        }
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(CallNotPermittedException.class, () -> circuitBreaker.call(calls::incrementAndGet));
+        assertEquals(0, calls.get());
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    void givenClientErrors_whenCall_thenCircuitStaysClosed() {
+        for (int i = 0; i < 4; i++) {
+            assertThrows(HttpClientErrorException.class, () -> circuitBreaker.call(() -> {
+                throw new HttpClientErrorException(HttpStatus.FORBIDDEN);
+            }));
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals("ok", circuitBreaker.call(() -> "ok"));
+    }
+
+    @Test
+    void givenServerErrors_whenCall_thenTransitionCounted() {
+        for (int i = 0; i < 4; i++) {
+            assertThrows(HttpServerErrorException.class, () -> circuitBreaker.call(() -> {
+                throw new HttpServerErrorException(HttpStatus.BAD_GATEWAY);
+            }));
+        }
+
+        assertEquals(1.0, registry.get("accessmanager.organizationmanager.circuit.transitions").tags("from", "CLOSED", "to", "OPEN").counter().count());
+        assertEquals(1.0, registry.get("accessmanager.organizationmanager.circuit.state").gauge().value());
+    }
+
+    @Test
+    void givenErrors_whenIsUnavailability_thenOnlyUnavailabilityCounts() {
+        assertTrue(OrganizationManagerCircuitBreaker.isUnavailability(new ResourceAccessException("Read timed out")));
+        assertTrue(OrganizationManagerCircuitBreaker.isUnavailability(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE)));
+        assertFalse(OrganizationManagerCircuitBreaker.isUnavailability(new HttpClientErrorException(HttpStatus.NOT_FOUND)));
+    }
+}
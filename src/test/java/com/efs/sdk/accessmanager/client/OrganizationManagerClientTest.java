@@ -15,33 +15,51 @@ limitations under the License.
  */
 package com.efs.sdk.accessmanager.client;
 
+import com.efs.sdk.accessmanager.clients.OrganizationManagerCircuitBreaker;
+import com.efs.sdk.accessmanager.clients.InvalidResponseException;
 import com.efs.sdk.accessmanager.clients.OrganizationManagerClient;
+import com.efs.sdk.accessmanager.clients.SpaceList;
+import com.efs.sdk.accessmanager.clients.SpaceSummary;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
-import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
-
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 class OrganizationManagerClientTest {
 
     private OrganizationManagerClient client;
 
+    private OrganizationManagerCircuitBreaker circuitBreaker;
+
     @MockBean
     private RestTemplate restTemplate;
     @MockBean
@@ -49,70 +67,137 @@ class OrganizationManagerClientTest {
     @MockBean
     private Jwt jwt;
 
+    private final Deque<ClientResponse> responses = new ArrayDeque<>();
+    private final List<ClientRequest> requests = new ArrayList<>();
+
     @BeforeEach
     void setup() {
         this.restTemplate = Mockito.mock(RestTemplate.class);
         this.token = Mockito.mock(JwtAuthenticationToken.class);
         this.jwt = Mockito.mock(Jwt.class);
-        this.client = new OrganizationManagerClient(restTemplate, "organizationEndpoint", "spaceEndpoint");
+        this.circuitBreaker = new OrganizationManagerCircuitBreaker(50f, 4, 4, 10L, 2000L, 1);
+        this.client = new OrganizationManagerClient(restTemplate, WebClient.builder().exchangeFunction(request -> {
+            requests.add(request);
+            return Mono.just(responses.remove());
+        }).build(), circuitBreaker, "organizationEndpoint", "spaceEndpoint", 600L);
+    }
+
+    @Test
+    void givenGetOrganizationOk_whenGetOrganizationIdRepeatedly_thenFetchedOnce() {
+        given(restTemplate.execute(anyString(), eq(HttpMethod.GET), any(RequestCallback.class), ArgumentMatchers.<ResponseExtractor<Long>>any())).willReturn(1L);
+
+        assertEquals(1L, client.getOrganizationId(token, "test"));
+        assertEquals(1L, client.getOrganizationId(token, "test"));
+
+        verify(restTemplate, times(1)).execute(eq("organizationEndpoint/name/test"), eq(HttpMethod.GET), any(RequestCallback.class), ArgumentMatchers.<ResponseExtractor<Long>>any());
+    }
+
+    @Test
+    void givenGetOrganizationForbidden_whenGetOrganizationId_thenNotCached() {
+        given(restTemplate.execute(anyString(), eq(HttpMethod.GET), any(RequestCallback.class), ArgumentMatchers.<ResponseExtractor<Long>>any())).willThrow(new HttpClientErrorException(HttpStatus.FORBIDDEN)).willReturn(1L);
+
+        assertThrows(HttpClientErrorException.class, () -> client.getOrganizationId(token, "test"));
+        assertEquals(1L, client.getOrganizationId(token, "test"));
     }
 
     @Test
-    void givenGetOrganizationOk_whenGetOrganization_thenOk() {
+    void givenCachedOrganizationId_whenInvalidate_thenFetchedAgain() {
+        given(restTemplate.execute(anyString(), eq(HttpMethod.GET), any(RequestCallback.class), ArgumentMatchers.<ResponseExtractor<Long>>any())).willReturn(1L);
+
+        client.getOrganizationId(token, "test");
+        client.invalidateOrganizationId("test");
+        client.getOrganizationId(token, "test");
+
+        verify(restTemplate, times(2)).execute(anyString(), eq(HttpMethod.GET), any(RequestCallback.class), ArgumentMatchers.<ResponseExtractor<Long>>any());
+    }
+
+    @Test
+    void givenOtherCase_whenGetOrganizationIdAndInvalidate_thenSharedEntry() {
+        given(restTemplate.execute(anyString(), eq(HttpMethod.GET), any(RequestCallback.class), ArgumentMatchers.<ResponseExtractor<Long>>any())).willReturn(1L);
+
+        client.getOrganizationId(token, "MyOrg");
+        client.getOrganizationId(token, "myorg");
+        client.invalidateOrganizationId("MYORG");
+        client.getOrganizationId(token, "myorg");
+
+        verify(restTemplate, times(2)).execute(anyString(), eq(HttpMethod.GET), any(RequestCallback.class), ArgumentMatchers.<ResponseExtractor<Long>>any());
+    }
+
+    @Test
+    void givenGetSpacesOk_whenGetSpaceList_thenRequestedWithPermissions() {
+        SpaceList spaces = new SpaceList(List.of(new SpaceSummary(1L, "test")));
+        given(restTemplate.execute(eq("spaceEndpoint/1?permissions=WRITE"), eq(HttpMethod.GET), any(RequestCallback.class), ArgumentMatchers.<ResponseExtractor<SpaceList>>any())).willReturn(spaces);
+
+        assertTrue(client.getSpaceList(token, 1L, OrganizationManagerClient.Permissions.WRITE).contains("TEST"));
+    }
+
+    @Test
+    void givenGetSpacesOk_whenGetSpaceListAsync_thenOk() throws Exception {
         given(token.getToken()).willReturn(jwt);
         given(jwt.getTokenValue()).willReturn("any value");
+        responses.add(json(HttpStatus.OK, "[{\"id\": 1, \"name\": \"MySpace\", \"description\": \"any\"}]"));
 
-        Map<String, Object> dto = new HashMap<>();
-        dto.put("id", 1L);
-        dto.put("name", "test");
-        dto.put("description", "test description");
-
-        given(restTemplate.exchange(anyString(), eq(HttpMethod.GET), any(), eq(new ParameterizedTypeReference<Map<String, Object>>() {
-        }))).willReturn(ResponseEntity.ok(dto));
+        SpaceList spaces = client.getSpaceListAsync(token, 1L, OrganizationManagerClient.Permissions.WRITE).get();
 
-        assertEquals(1L, client.getOrganization(token, "test").get("id"));
+        assertTrue(spaces.contains("myspace"));
+        assertEquals("spaceEndpoint/1?permissions=WRITE", requests.get(0).url().toString());
+        assertEquals("Bearer any value", requests.get(0).headers().getFirst(HttpHeaders.AUTHORIZATION));
     }
 
     @Test
-    void givenGetOrganizationRestClientException_whenGetOrganization_thenError() {
+    void givenGetOrganizationOk_whenGetOrganizationIdAsyncRepeatedly_thenFetchedOnce() throws Exception {
         given(token.getToken()).willReturn(jwt);
         given(jwt.getTokenValue()).willReturn("any value");
+        responses.add(json(HttpStatus.OK, "{\"id\": 1, \"name\": \"test\"}"));
 
-        HttpServerErrorException exception = new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR);
-        given(restTemplate.exchange(anyString(), eq(HttpMethod.GET), any(), eq(new ParameterizedTypeReference<Map<String, Object>>() {
-        }))).willThrow(exception);
+        assertEquals(1L, client.getOrganizationIdAsync(token, "test").get());
+        assertEquals(1L, client.getOrganizationIdAsync(token, "test").get());
+        assertEquals(1L, client.getOrganizationId(token, "test"));
 
-        assertThrows(HttpServerErrorException.class, () -> client.getOrganization(token, "test"));
+        assertEquals(1, requests.size());
     }
 
     @Test
-    void givenGetSpacesOk_whenGetSpaces_thenOk() {
+    void givenGetSpacesForbidden_whenGetSpaceListAsync_thenError() {
         given(token.getToken()).willReturn(jwt);
         given(jwt.getTokenValue()).willReturn("any value");
+        responses.add(json(HttpStatus.FORBIDDEN, ""));
 
-        Map<String, Object> dto = new HashMap<>();
-        dto.put("id", 1L);
-        dto.put("name", "test");
-        dto.put("description", "test description");
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> client.getSpaceListAsync(token, 1L, OrganizationManagerClient.Permissions.WRITE).get());
+        assertInstanceOf(WebClientResponseException.Forbidden.class, exception.getCause());
+    }
 
-        List<Map<String, Object>> spaces = List.of(dto);
+    @Test
+    void givenMalformedOrganization_whenGetOrganizationId_thenInvalidResponseAndCircuitClosed() throws Exception {
+        ClientHttpResponse response = Mockito.mock(ClientHttpResponse.class);
+        given(response.getBody()).willAnswer(invocation -> new ByteArrayInputStream("{\"id\": ".getBytes(StandardCharsets.UTF_8)));
+        given(restTemplate.execute(anyString(), eq(HttpMethod.GET), any(RequestCallback.class), ArgumentMatchers.<ResponseExtractor<Long>>any()))
+                .willAnswer(invocation -> invocation.<ResponseExtractor<Long>>getArgument(3).extractData(response));
 
-        given(restTemplate.exchange(anyString(), eq(HttpMethod.GET), any(), eq(new ParameterizedTypeReference<List<Map<String, Object>>>() {
-        }))).willReturn(ResponseEntity.ok(spaces));
+        for (int i = 0; i < 4; i++) {
+            assertThrows(InvalidResponseException.class, () -> client.getOrganizationId(token, "test"));
+        }
 
-        assertEquals(1, client.getSpaces(token, 1L, null).size());
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
     }
 
     @Test
-    void givenGetSpacesRestClientException_whenGetSpaces_thenError() {
+    void givenMalformedSpaces_whenGetSpaceListAsync_thenInvalidResponseAndCircuitClosed() {
         given(token.getToken()).willReturn(jwt);
         given(jwt.getTokenValue()).willReturn("any value");
+        for (int i = 0; i < 4; i++) {
+            responses.add(json(HttpStatus.OK, "{\"id\": 1}"));
+        }
 
-        HttpServerErrorException exception = new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR);
-        given(restTemplate.exchange(anyString(), eq(HttpMethod.GET), any(), eq(new ParameterizedTypeReference<List<Map<String, Object>>>() {
-        }))).willThrow(exception);
+        for (int i = 0; i < 4; i++) {
+            ExecutionException exception = assertThrows(ExecutionException.class, () -> client.getSpaceListAsync(token, 1L, OrganizationManagerClient.Permissions.WRITE).get());
+            assertInstanceOf(InvalidResponseException.class, exception.getCause());
+        }
 
-        assertThrows(HttpServerErrorException.class, () -> client.getSpaces(token, 1L, null));
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
     }
 
+    private static ClientResponse json(HttpStatus status, String body) {
+        return ClientResponse.create(status).header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE).body(body).build();
+    }
 }
@@ -0,0 +1,94 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.client;
+
+import com.efs.sdk.accessmanager.clients.OrganizationManagerResponseParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Microbenchmark for checking whether a space is contained in a large response of the organizationmanager.
+ * <p>
+ * {@code objectMapper} is the former way (binding every space into a {@code Map} and scanning the names),
+ * {@code streamingParser} reads only id and name of each space and looks the name up in a set.
+ * <p>
+ * Run via {@link #main(String[])} from the test-classpath - the GC-profiler reports the allocations per operation
+ * ({@code gc.alloc.rate.norm}).
+ *
+ * @author e:fs TechHub GmbH
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrganizationManagerResponseParserBenchmark {
+
+    private static final TypeReference<List<Map<String, Object>>> SPACES_TYPE = new TypeReference<>() {
+    };
+
+    @Param({"50", "5000"})
+    private int spaceCount;
+
+    private ObjectMapper objectMapper;
+    private byte[] body;
+    private String space;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(OrganizationManagerResponseParserBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build()).run();
+    }
+
+    @Setup
+    public void setup() {
+        this.objectMapper = new ObjectMapper();
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < spaceCount; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(String.format("""
+                    {"id": %d, "name": "space%d", "description": "description of space %d", "confidentiality": "INTERNAL",
+                     "state": "OPEN", "created": "2023-12-14T10:00:00Z", "owners": ["owner-a", "owner-b"],
+                     "tags": [{"name": "tag-a"}, {"name": "tag-b"}], "gdprRelevant": false, "schemaRef": "schema-%d"}""", i, i, i, i));
+        }
+        this.body = json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+        this.space = "SPACE" + (spaceCount - 1);
+    }
+
+    @Benchmark
+    public boolean objectMapper() throws IOException {
+        List<Map<String, Object>> spaces = objectMapper.readValue(body, SPACES_TYPE);
+        return spaces.stream().anyMatch(s -> space.equalsIgnoreCase(String.valueOf(s.get("name"))));
+    }
+
+    @Benchmark
+    public boolean streamingParser() throws IOException {
+        return OrganizationManagerResponseParser.parseSpaces(new ByteArrayInputStream(body)).contains(space);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.client;
+
+import com.efs.sdk.accessmanager.clients.OrganizationManagerResponseParser;
+import com.efs.sdk.accessmanager.clients.SpaceList;
+import com.fasterxml.jackson.core.JsonParseException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrganizationManagerResponseParserTest {
+
+    @Test
+    void givenOrganization_whenParseId_thenId() throws Exception {
+        String json = """
+                {"name": "test", "description": "any", "owners": ["a", "b"], "details": {"id": 7}, "id": 42}
+                """;
+
+        assertEquals(42L, OrganizationManagerResponseParser.parseId(stream(json)));
+    }
+
+    @Test
+    void givenOrganizationWithoutId_whenParseId_thenError() {
+        assertThrows(IllegalArgumentException.class, () -> OrganizationManagerResponseParser.parseId(stream("{\"name\": \"test\"}")));
+    }
+
+    @Test
+    void givenSpaces_whenParseSpaces_thenIdsAndNames() throws Exception {
+        String json = """
+                [
+                  {"id": 1, "name": "MySpace", "tags": [{"name": "ignored"}], "metadata": {"name": "ignored"}},
+                  {"id": "2", "name": "other", "description": null}
+                ]
+                """;
+
+        SpaceList spaces = OrganizationManagerResponseParser.parseSpaces(stream(json));
+
+        assertEquals(2, spaces.spaces().size());
+        assertEquals(1L, spaces.spaces().get(0).id());
+        assertEquals(2L, spaces.spaces().get(1).id());
+        assertTrue(spaces.contains("myspace"));
+        assertTrue(spaces.contains("OTHER"));
+        assertFalse(spaces.contains("ignored"));
+    }
+
+    @Test
+    void givenEmptyBody_whenParseSpaces_thenEmpty() throws Exception {
+        assertTrue(OrganizationManagerResponseParser.parseSpaces(stream("")).isEmpty());
+        assertTrue(OrganizationManagerResponseParser.parseSpaces(stream("[]")).isEmpty());
+    }
+
+    @Test
+    void givenNoArray_whenParseSpaces_thenError() {
+        assertThrows(JsonParseException.class, () -> OrganizationManagerResponseParser.parseSpaces(stream("{\"id\": 1}")));
+    }
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.client;
+
+import com.efs.sdk.accessmanager.clients.RestTemplateConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RestTemplateConfigTest {
+
+    private final RestTemplateConfig config = new RestTemplateConfig();
+
+    private MockWebServer server;
+    private PoolingHttpClientConnectionManager connectionManager;
+    private CloseableHttpClient httpClient;
+    private RestTemplate restTemplate;
+
+    @BeforeEach
+    void setup() throws Exception {
+        this.server = new MockWebServer();
+        server.start();
+        this.connectionManager = config.restConnectionManager(10, 2, 1000L, 500L);
+        this.httpClient = config.restHttpClient(connectionManager, 500L, 500L, 30L);
+        this.restTemplate = config.restTemplate(httpClient);
+    }
+
+    @AfterEach
+    void teardown() throws Exception {
+        httpClient.close();
+        server.shutdown();
+    }
+
+    @Test
+    void givenResponse_whenGetRepeatedly_thenConnectionReused() {
+        server.enqueue(new MockResponse().setBody("first"));
+        server.enqueue(new MockResponse().setBody("second"));
+
+        assertEquals("first", restTemplate.getForObject(server.url("/").toString(), String.class));
+        assertEquals("second", restTemplate.getForObject(server.url("/").toString(), String.class));
+
+        assertEquals(1, connectionManager.getTotalStats().getAvailable());
+    }
+
+    @Test
+    void givenHangingServer_whenGet_thenTimeout() {
+        server.enqueue(new MockResponse().setBody("late").setHeadersDelay(5L, TimeUnit.SECONDS));
+
+        assertThrows(ResourceAccessException.class, () -> restTemplate.getForObject(server.url("/").toString(), String.class));
+    }
+
+    @Test
+    void givenRegistry_whenBindTo_thenPoolMonitored() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+        config.restConnectionPoolMetrics(connectionManager).bindTo(registry);
+
+        assertNotNull(registry.find("httpcomponents.httpclient.pool.total.max").tags("httpclient", "accessmanager.rest").gauge());
+        assertNotNull(registry.find("httpcomponents.httpclient.pool.total.connections").tags("httpclient", "accessmanager.rest", "state", "leased").gauge());
+    }
+}
@@ -0,0 +1,168 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core;
+
+import com.efs.sdk.accessmanager.core.model.CommitModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommitDeduplicatorTest {
+
+    private static final CommitModel COMMIT = new CommitModel("myorga", "myspace", "loadingzone", "someUser", "dirname");
+
+    private CommitDeduplicator deduplicator;
+
+    @BeforeEach
+    void setup() {
+        this.deduplicator = new CommitDeduplicator(true, 300L, 1000L);
+    }
+
+    @Test
+    void givenStoredCommit_whenClaim_thenDuplicate() throws Exception {
+        String fingerprint = deduplicator.fingerprint(COMMIT, null);
+        CompletableFuture<Boolean> claim = deduplicator.claim(fingerprint);
+        assertNotNull(claim);
+        deduplicator.complete(claim);
+
+        assertNull(deduplicator.claim(deduplicator.fingerprint(new CommitModel("MyOrga", "MySpace", "loadingzone", "someUser", "dirname"), null)));
+        assertEquals(1, deduplicator.duplicates());
+    }
+
+    @Test
+    void givenOtherUserOrRootDir_whenFingerprint_thenOtherCommit() {
+        String fingerprint = deduplicator.fingerprint(COMMIT, null);
+
+        assertNotEquals(fingerprint, deduplicator.fingerprint(new CommitModel("myorga", "myspace", "loadingzone", "otherUser", "dirname"), null));
+        assertNotEquals(fingerprint, deduplicator.fingerprint(new CommitModel("myorga", "myspace", "loadingzone", "someUser", "otherdir"), null));
+    }
+
+    @Test
+    void givenIdempotencyKey_whenFingerprintOtherCommit_thenSameCommit() {
+        String fingerprint = deduplicator.fingerprint(COMMIT, "key-1");
+
+        assertEquals(fingerprint, deduplicator.fingerprint(new CommitModel("myorga", "otherspace", "loadingzone", "someUser", "otherdir"), "key-1"));
+        assertNotEquals(fingerprint, deduplicator.fingerprint(COMMIT, "key-2"));
+    }
+
+    @Test
+    void givenNoRootDirAndNoKey_whenFingerprint_thenNotIdentifiable() throws Exception {
+        assertNull(deduplicator.fingerprint(new CommitModel("myorga", "myspace", "loadingzone", "someUser", "none"), null));
+        assertNull(deduplicator.fingerprint(new CommitModel("myorga", "myspace", "loadingzone", "someUser", null), null));
+        assertNull(deduplicator.fingerprint(new CommitModel("myorga", "myspace", "loadingzone", "someUser", " "), null));
+        assertNotNull(deduplicator.fingerprint(new CommitModel("myorga", "myspace", "loadingzone", "someUser", "none"), "key-1"));
+
+        assertNotNull(deduplicator.claim(null));
+        assertNotNull(deduplicator.claim(null));
+        assertEquals(0, deduplicator.duplicates());
+    }
+
+    @Test
+    void givenReleasedCommit_whenClaim_thenNoDuplicate() throws Exception {
+        String fingerprint = deduplicator.fingerprint(COMMIT, null);
+        deduplicator.release(fingerprint, deduplicator.claim(fingerprint));
+
+        assertNotNull(deduplicator.claim(fingerprint));
+    }
+
+    @Test
+    void givenStaleRelease_whenRepetitionOfOtherClaim_thenStillPending() throws Exception {
+        String fingerprint = deduplicator.fingerprint(COMMIT, null);
+        CompletableFuture<Boolean> released = deduplicator.claim(fingerprint);
+        deduplicator.release(fingerprint, released);
+        CompletableFuture<Boolean> claim = deduplicator.claim(fingerprint);
+
+        // releasing the former claim again neither removes nor fails the current one
+        deduplicator.release(fingerprint, released);
+        assertFalse(claim.isDone());
+
+        CompletableFuture<Boolean> repetition = CompletableFuture.supplyAsync(() -> claim(fingerprint));
+        Thread.sleep(100L);
+        assertFalse(repetition.isDone());
+
+        deduplicator.complete(claim);
+        assertFalse(repetition.get(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void givenPendingCommit_whenStored_thenRepetitionSuppressed() throws Exception {
+        String fingerprint = deduplicator.fingerprint(COMMIT, null);
+        CompletableFuture<Boolean> claim = deduplicator.claim(fingerprint);
+
+        CompletableFuture<Boolean> repetition = CompletableFuture.supplyAsync(() -> claim(fingerprint));
+        Thread.sleep(100L);
+        assertFalse(repetition.isDone());
+
+        deduplicator.complete(claim);
+        assertFalse(repetition.get(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void givenPendingCommit_whenReleased_thenRepetitionClaims() throws Exception {
+        String fingerprint = deduplicator.fingerprint(COMMIT, null);
+        CompletableFuture<Boolean> claim = deduplicator.claim(fingerprint);
+
+        CompletableFuture<Boolean> repetition = CompletableFuture.supplyAsync(() -> claim(fingerprint));
+        Thread.sleep(100L);
+        assertFalse(repetition.isDone());
+
+        deduplicator.release(fingerprint, claim);
+        assertTrue(repetition.get(5L, TimeUnit.SECONDS));
+        assertEquals(0, deduplicator.duplicates());
+    }
+
+    @Test
+    void givenExpiredWindow_whenClaim_thenNoDuplicate() throws Exception {
+        CommitDeduplicator expiring = new CommitDeduplicator(true, 0L, 1000L);
+        String fingerprint = expiring.fingerprint(COMMIT, null);
+        expiring.complete(expiring.claim(fingerprint));
+
+        assertNotNull(expiring.claim(fingerprint));
+    }
+
+    @Test
+    void givenDisabled_whenFingerprint_thenNotIdentifiable() throws Exception {
+        CommitDeduplicator disabled = new CommitDeduplicator(false, 300L, 1000L);
+
+        assertNull(disabled.fingerprint(COMMIT, "key-1"));
+        assertNotNull(disabled.claim(disabled.fingerprint(COMMIT, null)));
+        assertEquals(0, disabled.duplicates());
+    }
+
+    @Test
+    void givenDuplicate_whenBindTo_thenCounted() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        deduplicator.bindTo(registry);
+        String fingerprint = deduplicator.fingerprint(COMMIT, null);
+        deduplicator.complete(deduplicator.claim(fingerprint));
+        deduplicator.claim(fingerprint);
+
+        assertEquals(1.0, registry.find("accessmanager.commit.duplicates").functionCounter().count());
+    }
+
+    private boolean claim(String fingerprint) {
+        try {
+            return deduplicator.claim(fingerprint) != null;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
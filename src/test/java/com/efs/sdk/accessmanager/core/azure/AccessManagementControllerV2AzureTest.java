@@ -17,24 +17,34 @@ package com.efs.sdk.accessmanager.core.azure;
 
 import com.efs.sdk.accessmanager.clients.OrganizationManagerClient.Permissions;
 import com.efs.sdk.accessmanager.commons.AccessManagerException;
+import com.efs.sdk.accessmanager.core.model.CommitItem;
 import com.efs.sdk.accessmanager.helper.AuthHelper;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
 import org.springframework.security.oauth2.jwt.JwtDecoder;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static com.efs.sdk.accessmanager.commons.AccessManagerException.ACCESSMANAGER_ERROR.INVALID_REQUEST;
 import static com.efs.sdk.accessmanager.commons.AccessManagerException.ACCESSMANAGER_ERROR.SAVE_ACCESS_DENIED;
 import static com.efs.sdk.accessmanager.core.AccessManagementControllerV2.ENDPOINT;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.jwt;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
-@WebMvcTest(AccessManagementControllerV2Azure.class)
+@WebMvcTest(value = AccessManagementControllerV2Azure.class, properties = "accessmanager.commit.batch.max-size=3")
 @ActiveProfiles({"test"})
 class AccessManagementControllerV2AzureTest {
 
@@ -63,76 +73,142 @@ class AccessManagementControllerV2AzureTest {
 
     @Test
     void givenCanRead_whenGetReadToken_thenOk() throws Exception {
-        given(authHelper.isAllowed(any(), anyString(), anyString(), eq(Permissions.READ))).willReturn(true);
+        given(authHelper.isAllowedAsync(any(), anyString(), anyString(), eq(Permissions.READ))).willReturn(CompletableFuture.completedFuture(true));
         mvc.perform(post(ENDPOINT + "/read").with(jwt()).queryParam("organization", DEF_CONNECTION_ID).queryParam("space", EXAMPLE_SPACE)).andExpect(status().is2xxSuccessful());
     }
 
     @Test
     void givenCanNotRead_whenGetReadToken_thenError() throws Exception {
-        given(authHelper.isAllowed(any(), anyString(), anyString(), eq(Permissions.READ))).willReturn(false);
+        given(authHelper.isAllowedAsync(any(), anyString(), anyString(), eq(Permissions.READ))).willReturn(CompletableFuture.completedFuture(false));
         AccessManagerException ame = new AccessManagerException(AccessManagerException.ACCESSMANAGER_ERROR.READ_ACCESS_DENIED);
-        given(service.createReadToken(anyString(), anyString(), anyBoolean())).willThrow(ame);
+        given(service.createReadToken(anyString(), anyString(), ArgumentMatchers.<CompletableFuture<Boolean>>any())).willThrow(ame);
         mvc.perform(post(ENDPOINT + "/read").with(jwt()).queryParam("organization", EXAMPLE_ORGANIZATION).queryParam("space", EXAMPLE_SPACE)).andExpect(status().is4xxClientError());
     }
 
     @Test
     void givenCanWrite_whenGetWriteToken_thenOk() throws Exception {
-        given(authHelper.isAllowed(any(), anyString(), anyString(), eq(Permissions.WRITE))).willReturn(true);
+        given(authHelper.isAllowedAsync(any(), anyString(), anyString(), eq(Permissions.WRITE))).willReturn(CompletableFuture.completedFuture(true));
         mvc.perform(post(ENDPOINT + "/upload").with(jwt()).queryParam("organization", DEF_CONNECTION_ID).queryParam("space", EXAMPLE_SPACE)).andExpect(status().is2xxSuccessful());
     }
 
     @Test
     void givenCanNotWrite_whenGetWriteToken_thenOk() throws Exception {
-        given(authHelper.isAllowed(any(), anyString(), anyString(), eq(Permissions.WRITE))).willReturn(false);
+        given(authHelper.isAllowedAsync(any(), anyString(), anyString(), eq(Permissions.WRITE))).willReturn(CompletableFuture.completedFuture(false));
         AccessManagerException ame = new AccessManagerException(SAVE_ACCESS_DENIED);
-        given(service.createUploadToken(anyString(), anyString(), anyBoolean())).willThrow(ame);
+        given(service.createUploadToken(anyString(), anyString(), ArgumentMatchers.<CompletableFuture<Boolean>>any())).willThrow(ame);
         mvc.perform(post(ENDPOINT + "/upload").with(jwt()).queryParam("organization", EXAMPLE_ORGANIZATION).queryParam("space", EXAMPLE_SPACE)).andExpect(status().is4xxClientError());
     }
 
 
     @Test
     void givenCanWrite_whenGetWriteMainToken_thenOk() throws Exception {
-        given(authHelper.isAllowed(any(), anyString(), anyString(), eq(Permissions.WRITE))).willReturn(true);
+        given(authHelper.isAllowedAsync(any(), anyString(), anyString(), eq(Permissions.WRITE))).willReturn(CompletableFuture.completedFuture(true));
         mvc.perform(post(ENDPOINT + "/upload/main").with(jwt()).queryParam("organization", DEF_CONNECTION_ID).queryParam("space", EXAMPLE_SPACE)).andExpect(status().is2xxSuccessful());
     }
 
     @Test
     void givenCanNotWrite_whenGetWriteMainToken_thenOk() throws Exception {
-        given(authHelper.isAllowed(any(), anyString(), anyString(), eq(Permissions.READ))).willReturn(true);
+        given(authHelper.isAllowedAsync(any(), anyString(), anyString(), eq(Permissions.READ))).willReturn(CompletableFuture.completedFuture(true));
         AccessManagerException ame = new AccessManagerException(SAVE_ACCESS_DENIED);
-        given(service.createUploadToken(anyString(), anyString(), anyBoolean())).willThrow(ame);
+        given(service.createUploadToken(anyString(), anyString(), ArgumentMatchers.<CompletableFuture<Boolean>>any())).willThrow(ame);
         mvc.perform(post(ENDPOINT + "/upload/main").with(jwt()).queryParam("organization", EXAMPLE_ORGANIZATION).queryParam("space", EXAMPLE_SPACE)).andExpect(status().is4xxClientError());
     }
 
     @Test
     void givenCanDelete_whenGetDeleteToken_thenOk() throws Exception {
-        given(authHelper.isAllowed(any(), anyString(), anyString(), eq(Permissions.DELETE))).willReturn(true);
+        given(authHelper.isAllowedAsync(any(), anyString(), anyString(), eq(Permissions.DELETE))).willReturn(CompletableFuture.completedFuture(true));
         mvc.perform(post(ENDPOINT + "/delete").with(jwt()).queryParam("organization", DEF_CONNECTION_ID).queryParam("space", EXAMPLE_SPACE)).andExpect(status().is2xxSuccessful());
     }
 
     @Test
     void givenCanNotDelete_whenGetDeleteToken_thenOk() throws Exception {
-        given(authHelper.isAllowed(any(), anyString(), anyString(), eq(Permissions.DELETE))).willReturn(false);
+        given(authHelper.isAllowedAsync(any(), anyString(), anyString(), eq(Permissions.DELETE))).willReturn(CompletableFuture.completedFuture(false));
         AccessManagerException ame = new AccessManagerException(AccessManagerException.ACCESSMANAGER_ERROR.DELETE_ACCESS_DENIED);
-        given(service.createDeleteToken(anyString(), anyString(), anyBoolean())).willThrow(ame);
+        given(service.createDeleteToken(anyString(), anyString(), ArgumentMatchers.<CompletableFuture<Boolean>>any())).willThrow(ame);
         mvc.perform(post(ENDPOINT + "/delete").with(jwt()).queryParam("organization", EXAMPLE_ORGANIZATION).queryParam("space", EXAMPLE_SPACE)).andExpect(status().is4xxClientError());
     }
 
     @Test
     void givenCanDelete_whenCanReadGetDeleteTokenLoadingZone_thenOk() throws Exception {
-        given(authHelper.isAllowed(any(), anyString(), anyString(), eq(Permissions.DELETE))).willReturn(false);
-        given(authHelper.isAllowed(any(), anyString(), anyString(), eq(Permissions.WRITE))).willReturn(true);
-        given(service.createDeleteToken(anyString(), anyString(), anyBoolean())).willReturn("token");
+        given(authHelper.isAllowedAsync(any(), anyString(), anyString(), eq(Permissions.DELETE))).willReturn(CompletableFuture.completedFuture(false));
+        given(authHelper.canAccessOrganizationAsync(any(), anyString(), eq(Permissions.WRITE))).willReturn(CompletableFuture.completedFuture(true));
+        given(service.createDeleteToken(anyString(), anyString(), ArgumentMatchers.<CompletableFuture<Boolean>>argThat(CompletableFuture::join))).willReturn("token");
+        mvc.perform(post(ENDPOINT + "/delete").with(jwt()).queryParam("organization", EXAMPLE_ORGANIZATION).queryParam("space", SPACE_LOADINGZONE)).andExpect(status().is2xxSuccessful());
+    }
+
+    @Test
+    void givenCanDelete_whenGetDeleteTokenLoadingZone_thenWriteNotChecked() throws Exception {
+        given(authHelper.isAllowedAsync(any(), anyString(), anyString(), eq(Permissions.DELETE))).willReturn(CompletableFuture.completedFuture(true));
+        given(service.createDeleteToken(anyString(), anyString(), ArgumentMatchers.<CompletableFuture<Boolean>>argThat(CompletableFuture::join))).willReturn("token");
         mvc.perform(post(ENDPOINT + "/delete").with(jwt()).queryParam("organization", EXAMPLE_ORGANIZATION).queryParam("space", SPACE_LOADINGZONE)).andExpect(status().is2xxSuccessful());
+        verify(authHelper, times(0)).canAccessOrganizationAsync(any(), anyString(), eq(Permissions.WRITE));
+    }
+
+    @Test
+    void givenCanNotWrite_whenGetDeleteTokenLoadingZone_thenError() throws Exception {
+        given(authHelper.isAllowedAsync(any(), anyString(), anyString(), eq(Permissions.DELETE))).willReturn(CompletableFuture.completedFuture(false));
+        given(authHelper.canAccessOrganizationAsync(any(), anyString(), eq(Permissions.WRITE))).willReturn(CompletableFuture.completedFuture(false));
+        AccessManagerException ame = new AccessManagerException(AccessManagerException.ACCESSMANAGER_ERROR.DELETE_ACCESS_DENIED);
+        given(service.createDeleteToken(anyString(), anyString(), ArgumentMatchers.<CompletableFuture<Boolean>>argThat(canDelete -> !canDelete.join()))).willThrow(ame);
+        mvc.perform(post(ENDPOINT + "/delete").with(jwt()).queryParam("organization", EXAMPLE_ORGANIZATION).queryParam("space", SPACE_LOADINGZONE)).andExpect(status().is4xxClientError());
     }
 
 
     @Test
     void givenCanNotDelete_whenCanNotReadGetDeleteTokenSpace_thenOk() throws Exception {
-        given(authHelper.isAllowed(any(), anyString(), anyString(), eq(Permissions.DELETE))).willReturn(false);
-        given(authHelper.isAllowed(any(), anyString(), anyString(), eq(Permissions.WRITE))).willReturn(true);
+        given(authHelper.isAllowedAsync(any(), anyString(), anyString(), eq(Permissions.DELETE))).willReturn(CompletableFuture.completedFuture(false));
+        given(authHelper.isAllowedAsync(any(), anyString(), anyString(), eq(Permissions.WRITE))).willReturn(CompletableFuture.completedFuture(true));
         AccessManagerException ame = new AccessManagerException(AccessManagerException.ACCESSMANAGER_ERROR.DELETE_ACCESS_DENIED);
-        given(service.createDeleteToken(anyString(), anyString(), eq(false))).willThrow(ame);
+        given(service.createDeleteToken(anyString(), anyString(), ArgumentMatchers.<CompletableFuture<Boolean>>argThat(canDelete -> !canDelete.join()))).willThrow(ame);
         mvc.perform(post(ENDPOINT + "/delete").with(jwt()).queryParam("organization", EXAMPLE_ORGANIZATION).queryParam("space", EXAMPLE_SPACE)).andExpect(status().is4xxClientError());
     }
+
+    @Test
+    void givenDatasetsOfOneSpace_whenCommitBatch_thenCheckedOnce() throws Exception {
+        given(authHelper.isAllowedAsync(any(), anyString(), anyString(), eq(Permissions.WRITE))).willReturn(CompletableFuture.completedFuture(true));
+        String body = "[{\"space\":\"" + EXAMPLE_SPACE + "\",\"rootDir\":\"first\"},{\"space\":\"" + EXAMPLE_SPACE + "\",\"rootDir\":\"second\"}]";
+
+        mvc.perform(post(ENDPOINT + "/commit/batch").with(jwt()).queryParam("organization", EXAMPLE_ORGANIZATION).contentType(MediaType.APPLICATION_JSON).content(body)).andExpect(status().isOk());
+
+        verify(authHelper, times(1)).isAllowedAsync(any(), eq(EXAMPLE_ORGANIZATION), eq(EXAMPLE_SPACE), eq(Permissions.WRITE));
+        verify(service).commitAll(eq(EXAMPLE_ORGANIZATION), eq(SPACE_LOADINGZONE), any(), argThat(items -> items.size() == 2), any());
+    }
+
+    @Test
+    void givenTooManyDatasets_whenCommitBatch_thenPayloadTooLarge() throws Exception {
+        String body = "[{\"space\":\"a\"},{\"space\":\"b\"},{\"space\":\"c\"},{\"space\":\"d\"}]";
+
+        mvc.perform(post(ENDPOINT + "/commit/batch").with(jwt()).queryParam("organization", EXAMPLE_ORGANIZATION).contentType(MediaType.APPLICATION_JSON).content(body)).andExpect(status().isPayloadTooLarge());
+
+        verify(authHelper, times(0)).isAllowedAsync(any(), anyString(), anyString(), any());
+        verify(service, times(0)).commitAll(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void givenDatasetWithoutSpace_whenCommitBatch_thenBadRequest() throws Exception {
+        String body = "[{\"space\":\"" + EXAMPLE_SPACE + "\",\"rootDir\":\"first\"},{\"rootDir\":\"second\"}]";
+
+        mvc.perform(post(ENDPOINT + "/commit/batch").with(jwt()).queryParam("organization", EXAMPLE_ORGANIZATION).contentType(MediaType.APPLICATION_JSON).content(body)).andExpect(status().isBadRequest()).andExpect(jsonPath("$.errorCode").value(new AccessManagerException(INVALID_REQUEST).getErrorCode()));
+
+        verify(service, times(0)).commitAll(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void givenNullDataset_whenCommitBatch_thenBadRequest() throws Exception {
+        String body = "[{\"space\":\"" + EXAMPLE_SPACE + "\",\"rootDir\":\"first\"},null]";
+
+        mvc.perform(post(ENDPOINT + "/commit/batch").with(jwt()).queryParam("organization", EXAMPLE_ORGANIZATION).contentType(MediaType.APPLICATION_JSON).content(body)).andExpect(status().isBadRequest()).andExpect(jsonPath("$.errorCode").value(new AccessManagerException(INVALID_REQUEST).getErrorCode()));
+
+        verify(service, times(0)).commitAll(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void givenDatasetWithoutRootDir_whenCommitBatch_thenRootDirNone() throws Exception {
+        given(authHelper.isAllowedAsync(any(), anyString(), anyString(), eq(Permissions.WRITE))).willReturn(CompletableFuture.completedFuture(true));
+        String body = "[{\"space\":\"" + EXAMPLE_SPACE + "\"}]";
+
+        mvc.perform(post(ENDPOINT + "/commit/batch").with(jwt()).queryParam("organization", EXAMPLE_ORGANIZATION).contentType(MediaType.APPLICATION_JSON).content(body)).andExpect(status().isOk());
+
+        verify(service).commitAll(eq(EXAMPLE_ORGANIZATION), eq(SPACE_LOADINGZONE), any(), eq(List.of(new CommitItem(EXAMPLE_SPACE, "none"))), any());
+    }
 }
@@ -22,32 +22,60 @@ import com.azure.resourcemanager.storage.models.StorageAccount;
 import com.azure.resourcemanager.storage.models.StorageAccounts;
 import com.efs.sdk.accessmanager.clients.AzureResourceManagerProvider;
 import com.efs.sdk.accessmanager.commons.AccessManagerException;
+import com.efs.sdk.accessmanager.core.CommitDeduplicator;
+import com.efs.sdk.accessmanager.core.azure.TokenPreparationExecutor.Preparation;
 import com.efs.sdk.accessmanager.core.azure.model.SASToken;
+import com.efs.sdk.accessmanager.core.events.EventMessage;
 import com.efs.sdk.accessmanager.core.events.EventPublisher;
+import com.efs.sdk.accessmanager.core.model.CommitItem;
+import com.efs.sdk.accessmanager.core.model.CommitResult;
+import com.efs.sdk.accessmanager.core.model.StorageTarget;
 import com.efs.sdk.accessmanager.mock.StorageAccountMock;
 import com.efs.sdk.accessmanager.mock.SupplierMock;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
 import org.springframework.boot.test.mock.mockito.MockBean;
 
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-
-import static com.efs.sdk.accessmanager.core.azure.model.SASToken.SASType.DELETE;
-import static com.efs.sdk.accessmanager.core.azure.model.SASToken.SASType.WRITE;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.efs.sdk.accessmanager.commons.AccessManagerException.ACCESSMANAGER_ERROR.COMMIT_EVENTS_OVERLOADED;
+import static com.efs.sdk.accessmanager.commons.AccessManagerException.ACCESSMANAGER_ERROR.CONTAINER_NOT_EXISTS;
+import static com.efs.sdk.accessmanager.commons.AccessManagerException.ACCESSMANAGER_ERROR.ORGANIZATION_NOT_FOUND;
+import static com.efs.sdk.accessmanager.commons.AccessManagerException.ACCESSMANAGER_ERROR.READ_ACCESS_DENIED;
+import static com.efs.sdk.accessmanager.core.azure.model.SASToken.SASType.*;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 class AccessManagementServiceAzureTest {
 
     private static final String USER_NAME = "someUser";
     private static final String EXAMPLE_SPACE = "qwer";
     private static final String EXAMPLE_ORGANIZATION = "asdf";
+    private static final int CACHE_BUFFER = 2;
 
     @MockBean
     private StorageClient mockStorage;
@@ -61,6 +89,8 @@ class AccessManagementServiceAzureTest {
     private AzureResourceManager azure;
     @MockBean
     private StorageAccounts storageAccounts;
+    @MockBean
+    private TokenPreparationExecutor preparationExecutor;
 
     private AccessManagementServiceAzure service;
 
@@ -72,8 +102,10 @@ class AccessManagementServiceAzureTest {
         this.azureProvider = Mockito.mock(AzureResourceManagerProvider.class);
         this.azure = Mockito.mock(AzureResourceManager.class);
         this.storageAccounts = Mockito.mock(StorageAccounts.class);
+        this.preparationExecutor = Mockito.mock(TokenPreparationExecutor.class);
+        given(preparationExecutor.submit(any())).willAnswer(AccessManagementServiceAzureTest::ran);
 
-        this.service = new AccessManagementServiceAzure(mockStorage, objectMapper, publisher, azureProvider);
+        this.service = new AccessManagementServiceAzure(mockStorage, objectMapper, publisher, new CommitDeduplicator(true, 300L, 1000L), new StorageAccountResolver(azureProvider, "SDK", 60L), new SASTokenCache(CACHE_BUFFER, false, 0, 0, Runnable::run), preparationExecutor);
     }
 
     @Test
@@ -81,7 +113,27 @@ class AccessManagementServiceAzureTest {
         String token = EXAMPLE_ORGANIZATION;
         String containerName = "container";
         String accountName = "test";
-        SASToken sasToken = new SASToken(WRITE, accountName, containerName, token);
+        SASToken sasToken = new SASToken(WRITE, accountName, containerName, token, Instant.now().plus(10L, ChronoUnit.MINUTES));
+
+        given(azureProvider.azure()).willReturn(azure);
+        given(azure.storageAccounts()).willReturn(storageAccounts);
+
+        StorageAccount account = new StorageAccountMock(accountName);
+        SupplierMock<StorageAccount> accountSupplier = new SupplierMock<>(account);
+        PagedFlux<StorageAccount> accountFlux = new PagedFlux<>(accountSupplier);
+        PagedIterable<StorageAccount> accountList = new PagedIterable<>(accountFlux);
+        given(storageAccounts.listByResourceGroup(any())).willReturn(accountList);
+        given(mockStorage.createReadToken(any(), any())).willReturn(sasToken);
+
+        assertEquals(token, service.createReadToken(accountName, containerName, true));
+    }
+
+    @Test
+    void givenCachedToken_whenGetReadToken_thenFromCache() throws Exception {
+        String token = validToken();
+        String containerName = "container";
+        String accountName = "test";
+        SASToken sasToken = SASToken.parse(READ, accountName, containerName, token);
 
         given(azureProvider.azure()).willReturn(azure);
         given(azure.storageAccounts()).willReturn(storageAccounts);
@@ -94,6 +146,8 @@ class AccessManagementServiceAzureTest {
         given(mockStorage.createReadToken(any(), any())).willReturn(sasToken);
 
         assertEquals(token, service.createReadToken(accountName, containerName, true));
+        assertEquals(token, service.createReadToken(accountName.toUpperCase(), containerName, true));
+        verify(mockStorage, times(1)).createReadToken(any(), any());
     }
 
     @Test
@@ -103,12 +157,117 @@ class AccessManagementServiceAzureTest {
         assertThrows(AccessManagerException.class, () -> service.createReadToken("testconn", containerName, false));
     }
 
+    @Test
+    void givenPendingPermission_whenGetReadToken_thenPreparedWhileChecking() throws Exception {
+        String containerName = "container";
+        String accountName = "test";
+        SASToken sasToken = new SASToken(READ, accountName, containerName, EXAMPLE_ORGANIZATION, Instant.now().plus(10L, ChronoUnit.MINUTES));
+
+        given(azureProvider.azure()).willReturn(azure);
+        given(azure.storageAccounts()).willReturn(storageAccounts);
+
+        StorageAccount account = new StorageAccountMock(accountName);
+        SupplierMock<StorageAccount> accountSupplier = new SupplierMock<>(account);
+        PagedFlux<StorageAccount> accountFlux = new PagedFlux<>(accountSupplier);
+        PagedIterable<StorageAccount> accountList = new PagedIterable<>(accountFlux);
+        given(storageAccounts.listByResourceGroup(any())).willReturn(accountList);
+        given(mockStorage.createReadToken(any(), any())).willReturn(sasToken);
+
+        // the permission is decided only after the preparation ran
+        CompletableFuture<Boolean> canRead = new CompletableFuture<>();
+        willAnswer(invocation -> {
+            Preparation preparation = ran(invocation);
+            canRead.complete(true);
+            return preparation;
+        }).given(preparationExecutor).submit(any());
+
+        assertEquals(EXAMPLE_ORGANIZATION, service.createReadToken(accountName, containerName, canRead));
+        verify(mockStorage, times(1)).prepare(any(), eq(new StorageTarget(accountName, containerName)));
+    }
+
+    @Test
+    void givenPendingDenial_whenGetReadToken_thenPreparationDiscarded() throws Exception {
+        given(azureProvider.azure()).willReturn(azure);
+        given(azure.storageAccounts()).willReturn(storageAccounts);
+
+        StorageAccount account = new StorageAccountMock("test");
+        SupplierMock<StorageAccount> accountSupplier = new SupplierMock<>(account);
+        PagedFlux<StorageAccount> accountFlux = new PagedFlux<>(accountSupplier);
+        PagedIterable<StorageAccount> accountList = new PagedIterable<>(accountFlux);
+        given(storageAccounts.listByResourceGroup(any())).willReturn(accountList);
+        willThrow(new AccessManagerException(CONTAINER_NOT_EXISTS)).given(mockStorage).prepare(any(), any());
+
+        CompletableFuture<Boolean> canRead = new CompletableFuture<>();
+        willAnswer(invocation -> {
+            Preparation preparation = ran(invocation);
+            canRead.complete(false);
+            return preparation;
+        }).given(preparationExecutor).submit(any());
+
+        // the denial wins over errors of the preparation, so nothing is revealed about the container
+        AccessManagerException exception = assertThrows(AccessManagerException.class, () -> service.createReadToken("test", "container", canRead));
+        assertEquals(READ_ACCESS_DENIED, exception.getError());
+        verify(mockStorage, times(0)).createReadToken(any(), any());
+    }
+
+    @Test
+    void givenDeniedBeforePreparationRuns_whenGetReadToken_thenNothingPrepared() throws Exception {
+        CompletableFuture<Boolean> canRead = new CompletableFuture<>();
+        willAnswer(invocation -> {
+            canRead.complete(false);
+            return ran(invocation);
+        }).given(preparationExecutor).submit(any());
+
+        AccessManagerException exception = assertThrows(AccessManagerException.class, () -> service.createReadToken("test", "container", canRead));
+        assertEquals(READ_ACCESS_DENIED, exception.getError());
+        verify(azureProvider, times(0)).azure();
+        verify(mockStorage, times(0)).prepare(any(), any());
+    }
+
+    @Test
+    void givenQueuedPreparation_whenGranted_thenPreparedOnCallerThread() throws Exception {
+        given(azureProvider.azure()).willReturn(azure);
+        given(azure.storageAccounts()).willReturn(storageAccounts);
+        given(storageAccounts.listByResourceGroup(any())).willReturn(new PagedIterable<>(new PagedFlux<>(new SupplierMock<>(new StorageAccountMock("test")))));
+        given(mockStorage.createReadToken(any(), any())).willReturn(new SASToken(READ, "test", "container", EXAMPLE_ORGANIZATION, Instant.now().plus(10L, ChronoUnit.MINUTES)));
+        List<Thread> preparedOn = new ArrayList<>();
+        willAnswer(invocation -> preparedOn.add(Thread.currentThread())).given(mockStorage).prepare(any(), any());
+
+        // all pool-threads are busy, the preparation stays queued
+        CompletableFuture<Boolean> canRead = new CompletableFuture<>();
+        willAnswer(invocation -> {
+            canRead.complete(true);
+            return new Preparation(invocation.getArgument(0));
+        }).given(preparationExecutor).submit(any());
+
+        assertEquals(EXAMPLE_ORGANIZATION, service.createReadToken("test", "container", canRead));
+        assertEquals(List.of(Thread.currentThread()), preparedOn);
+    }
+
+    @Test
+    void givenUnindexedAccount_whenGetReadTokenPending_thenNotLookedUpBeforeGranted() throws Exception {
+        given(azureProvider.azure()).willReturn(azure);
+        given(azure.storageAccounts()).willReturn(storageAccounts);
+        given(storageAccounts.listByResourceGroup(any())).willReturn(new PagedIterable<>(new PagedFlux<>(new SupplierMock<>(new StorageAccountMock("other")))));
+
+        CompletableFuture<Boolean> canRead = new CompletableFuture<>();
+        willAnswer(invocation -> {
+            Preparation preparation = ran(invocation);
+            canRead.complete(false);
+            return preparation;
+        }).given(preparationExecutor).submit(any());
+
+        assertThrows(AccessManagerException.class, () -> service.createReadToken("unknown", "container", canRead));
+        verify(storageAccounts, times(0)).getByResourceGroup(any(), any());
+        verify(mockStorage, times(0)).prepare(any(), any());
+    }
+
     @Test
     void givenCanWrite_whenGetWriteToken_thenOk() throws Exception {
         String token = EXAMPLE_ORGANIZATION;
         String containerName = "container";
         String accountName = "test";
-        SASToken sasToken = new SASToken(WRITE, accountName, containerName, token);
+        SASToken sasToken = new SASToken(WRITE, accountName, containerName, token, Instant.now().plus(10L, ChronoUnit.MINUTES));
 
         given(azureProvider.azure()).willReturn(azure);
         given(azure.storageAccounts()).willReturn(storageAccounts);
@@ -136,7 +295,7 @@ class AccessManagementServiceAzureTest {
         String token = EXAMPLE_ORGANIZATION;
         String containerName = "container";
         String accountName = "test";
-        SASToken sasToken = new SASToken(DELETE, accountName, containerName, token);
+        SASToken sasToken = new SASToken(DELETE, accountName, containerName, token, Instant.now().plus(10L, ChronoUnit.MINUTES));
 
         given(azureProvider.azure()).willReturn(azure);
         given(azure.storageAccounts()).willReturn(storageAccounts);
@@ -186,4 +345,123 @@ class AccessManagementServiceAzureTest {
 
         assertThrows(AccessManagerException.class, () -> service.commit("testconn", "loadingzone", containerName, USER_NAME, false, "dirname"));
     }
+
+    @Test
+    void givenMixedPermissions_whenCommitAll_thenResultPerDataset() throws Exception {
+        given(objectMapper.writeValueAsString(any())).willReturn("{}");
+        List<CommitItem> items = List.of(new CommitItem(EXAMPLE_SPACE, "first"), new CommitItem("other", "second"), new CommitItem(EXAMPLE_SPACE, "third"));
+        Map<String, CompletableFuture<Boolean>> canWrite = Map.of(EXAMPLE_SPACE, CompletableFuture.completedFuture(true), "other", CompletableFuture.completedFuture(false));
+
+        List<CommitResult> results = service.commitAll(EXAMPLE_ORGANIZATION, "loadingzone", USER_NAME, items, canWrite);
+
+        assertEquals(List.of(204, 403, 204), results.stream().map(CommitResult::status).toList());
+        assertEquals("second", results.get(1).rootDir());
+        EventMessage message = new EventMessage(EXAMPLE_ORGANIZATION + "/" + EXAMPLE_SPACE, "{}");
+        verify(publisher, times(1)).sendMessages(eq(List.of(message, message)), any());
+    }
+
+    @Test
+    void givenOverloaded_whenCommitAll_thenPermittedDatasetsFailWith503() throws Exception {
+        given(objectMapper.writeValueAsString(any())).willReturn("{}");
+        willThrow(new AccessManagerException(COMMIT_EVENTS_OVERLOADED)).given(publisher).sendMessages(any(), any());
+        List<CommitItem> items = List.of(new CommitItem(EXAMPLE_SPACE, "first"), new CommitItem("other", "second"));
+        Map<String, CompletableFuture<Boolean>> canWrite = Map.of(EXAMPLE_SPACE, CompletableFuture.completedFuture(true), "other", CompletableFuture.failedFuture(new AccessManagerException(ORGANIZATION_NOT_FOUND)));
+
+        List<CommitResult> results = service.commitAll(EXAMPLE_ORGANIZATION, "loadingzone", USER_NAME, items, canWrite);
+
+        assertEquals(List.of(503, 404), results.stream().map(CommitResult::status).toList());
+    }
+
+    @Test
+    void givenRepeatedCommit_whenCommit_thenPublishedOnce() throws Exception {
+        given(objectMapper.writeValueAsString(any())).willReturn("{}");
+
+        service.commit(EXAMPLE_ORGANIZATION, "loadingzone", EXAMPLE_SPACE, USER_NAME, true, "dirname");
+        service.commit(EXAMPLE_ORGANIZATION.toUpperCase(), "loadingzone", EXAMPLE_SPACE, USER_NAME, true, "dirname");
+
+        verify(publisher, times(1)).sendMessage(any(), eq("{}"), any());
+    }
+
+    @Test
+    void givenFailedPublish_whenCommitAgain_thenPublishedAgain() throws Exception {
+        given(objectMapper.writeValueAsString(any())).willReturn("{}");
+        willThrow(new AccessManagerException(COMMIT_EVENTS_OVERLOADED)).willDoNothing().given(publisher).sendMessage(any(), eq("{}"), any());
+
+        assertThrows(AccessManagerException.class, () -> service.commit(EXAMPLE_ORGANIZATION, "loadingzone", EXAMPLE_SPACE, USER_NAME, true, "dirname"));
+        service.commit(EXAMPLE_ORGANIZATION, "loadingzone", EXAMPLE_SPACE, USER_NAME, true, "dirname");
+
+        verify(publisher, times(2)).sendMessage(any(), eq("{}"), any());
+    }
+
+    @Test
+    void givenRepeatedDataset_whenCommitAll_thenReportedCommittedButPublishedOnce() throws Exception {
+        given(objectMapper.writeValueAsString(any())).willReturn("{}");
+        service.commit(EXAMPLE_ORGANIZATION, "loadingzone", EXAMPLE_SPACE, USER_NAME, true, "first");
+        List<CommitItem> items = List.of(new CommitItem(EXAMPLE_SPACE, "first"), new CommitItem(EXAMPLE_SPACE, "second"));
+
+        List<CommitResult> results = service.commitAll(EXAMPLE_ORGANIZATION, "loadingzone", USER_NAME, items, Map.of(EXAMPLE_SPACE, CompletableFuture.completedFuture(true)));
+
+        assertEquals(List.of(204, 204), results.stream().map(CommitResult::status).toList());
+        verify(publisher, times(1)).sendMessages(eq(List.of(new EventMessage(EXAMPLE_ORGANIZATION + "/" + EXAMPLE_SPACE, "{}"))), any());
+    }
+
+    @Test
+    void givenCommitsWithoutRootDir_whenCommit_thenEachPublished() throws Exception {
+        given(objectMapper.writeValueAsString(any())).willReturn("{}");
+
+        service.commit(EXAMPLE_ORGANIZATION, "loadingzone", EXAMPLE_SPACE, USER_NAME, true, "none");
+        service.commit(EXAMPLE_ORGANIZATION, "loadingzone", EXAMPLE_SPACE, USER_NAME, true, "none");
+
+        verify(publisher, times(2)).sendMessage(any(), eq("{}"), any());
+    }
+
+    @Test
+    void givenConcurrentRepetition_whenFirstCommitFails_thenRepetitionPublished() throws Exception {
+        given(objectMapper.writeValueAsString(any())).willReturn("{}");
+        CountDownLatch storing = new CountDownLatch(1);
+        CountDownLatch failing = new CountDownLatch(1);
+        willAnswer(invocation -> {
+            storing.countDown();
+            failing.await();
+            throw new AccessManagerException(COMMIT_EVENTS_OVERLOADED);
+        }).willDoNothing().given(publisher).sendMessage(any(), eq("{}"), any());
+
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> assertThrows(AccessManagerException.class, () -> service.commit(EXAMPLE_ORGANIZATION, "loadingzone", EXAMPLE_SPACE, USER_NAME, true, "dirname")));
+        assertTrue(storing.await(5L, TimeUnit.SECONDS));
+        CompletableFuture<Void> repetition = CompletableFuture.runAsync(() -> assertDoesNotThrow(() -> service.commit(EXAMPLE_ORGANIZATION, "loadingzone", EXAMPLE_SPACE, USER_NAME, true, "dirname")));
+        Thread.sleep(100L);
+        // the repetition is not acknowledged while the first commit is still being stored
+        assertFalse(repetition.isDone());
+
+        failing.countDown();
+        first.get(5L, TimeUnit.SECONDS);
+        repetition.get(5L, TimeUnit.SECONDS);
+        verify(publisher, times(2)).sendMessage(any(), eq("{}"), any());
+    }
+
+    @Test
+    void givenDatasetTwiceInBatch_whenCommitAll_thenPublishedOnce() throws Exception {
+        given(objectMapper.writeValueAsString(any())).willReturn("{}");
+        List<CommitItem> items = List.of(new CommitItem(EXAMPLE_SPACE, "first"), new CommitItem(EXAMPLE_SPACE, "first"));
+
+        List<CommitResult> results = service.commitAll(EXAMPLE_ORGANIZATION, "loadingzone", USER_NAME, items, Map.of(EXAMPLE_SPACE, CompletableFuture.completedFuture(true)));
+
+        assertEquals(List.of(204, 204), results.stream().map(CommitResult::status).toList());
+        verify(publisher, times(1)).sendMessages(eq(List.of(new EventMessage(EXAMPLE_ORGANIZATION + "/" + EXAMPLE_SPACE, "{}"))), any());
+    }
+
+    /**
+     * Runs the submitted preparation right away, like an idle pool-thread
+     */
+    private static Preparation ran(InvocationOnMock invocation) {
+        Preparation preparation = new Preparation(invocation.getArgument(0));
+        preparation.run();
+        return preparation;
+    }
+
+    private static String validToken() {
+        String start = URLEncoder.encode(ZonedDateTime.now().minusMinutes(1L).truncatedTo(ChronoUnit.SECONDS).toInstant().atZone(ZoneOffset.UTC).toString(), Charset.defaultCharset());
+        String end = URLEncoder.encode(ZonedDateTime.now().plusMinutes(20L).truncatedTo(ChronoUnit.SECONDS).toInstant().atZone(ZoneOffset.UTC).toString(), Charset.defaultCharset());
+        return "sv=2021-04-10&st=" + start + "&se=" + end + "&sr=c&sp=rl&sig=ebgCqSgWRsNo%2Fjs6MTNIXYQ5MxG%2FLvIoceZB24LetFY%3D";
+    }
 }
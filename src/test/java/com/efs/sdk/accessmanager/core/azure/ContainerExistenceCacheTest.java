@@ -0,0 +1,86 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.azure;
+
+import com.efs.sdk.accessmanager.commons.AccessManagerException;
+import com.efs.sdk.accessmanager.core.model.StorageTarget;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContainerExistenceCacheTest {
+
+    private static final StorageTarget CONTAINER = new StorageTarget("myorga", "myspace");
+
+    private ContainerExistenceCache cache;
+
+    @BeforeEach
+    void setup() {
+        this.cache = new ContainerExistenceCache(600L, 600L);
+    }
+
+    @Test
+    void givenExistingContainer_whenExists_thenCheckedOnce() throws Exception {
+        AtomicInteger checks = new AtomicInteger();
+
+        assertTrue(cache.exists(CONTAINER, () -> checks.incrementAndGet() > 0));
+        assertTrue(cache.exists(new StorageTarget("MyOrga", "MySpace"), () -> checks.incrementAndGet() > 0));
+
+        assertEquals(1, checks.get());
+    }
+
+    @Test
+    void givenMissingContainer_whenExists_thenCheckedOnce() throws Exception {
+        AtomicInteger checks = new AtomicInteger();
+
+        assertFalse(cache.exists(CONTAINER, () -> checks.incrementAndGet() < 0));
+        assertFalse(cache.exists(CONTAINER, () -> checks.incrementAndGet() < 0));
+
+        assertEquals(1, checks.get());
+    }
+
+    @Test
+    void givenMissingContainerExpired_whenExists_thenCheckedAgain() throws Exception {
+        ContainerExistenceCache expiring = new ContainerExistenceCache(600L, 0L);
+        AtomicInteger checks = new AtomicInteger();
+
+        assertFalse(expiring.exists(CONTAINER, () -> checks.incrementAndGet() > 1));
+        assertTrue(expiring.exists(CONTAINER, () -> checks.incrementAndGet() > 1));
+
+        assertEquals(2, checks.get());
+    }
+
+    @Test
+    void givenFailingCheck_whenExists_thenNotCached() throws Exception {
+        assertThrows(AccessManagerException.class, () -> cache.exists(CONTAINER, () -> {
+            throw new AccessManagerException(AccessManagerException.ACCESSMANAGER_ERROR.UNABLE_FIND_ACCOUNT);
+        }));
+
+        assertTrue(cache.exists(CONTAINER, () -> true));
+    }
+
+    @Test
+    void givenCachedContainer_whenInvalidate_thenCheckedAgain() throws Exception {
+        cache.exists(CONTAINER, () -> false);
+
+        cache.invalidate(CONTAINER);
+
+        assertTrue(cache.exists(CONTAINER, () -> true));
+    }
+}
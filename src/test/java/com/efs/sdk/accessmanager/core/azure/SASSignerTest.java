@@ -0,0 +1,79 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.azure;
+
+import com.azure.storage.common.StorageSharedKeyCredential;
+import com.efs.sdk.accessmanager.core.azure.model.SASToken;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+
+import static com.efs.sdk.accessmanager.core.azure.model.SASToken.SASType.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SASSignerTest {
+
+    private static final String ACCOUNT_NAME = "myorga";
+    private static final String ACCOUNT_KEY = Base64.getEncoder().encodeToString("my-account-key".getBytes(StandardCharsets.UTF_8));
+    private static final String CONTAINER = "myspace";
+    private static final StorageSharedKeyCredential CREDENTIAL = new StorageSharedKeyCredential(ACCOUNT_NAME, ACCOUNT_KEY);
+
+    private final SASSigner signer = new SASSigner();
+
+    @Test
+    void givenReadType_whenSign_thenReadPermissions() {
+        assertTrue(sign(READ).contains("sp=rl"));
+    }
+
+    @Test
+    void givenWriteType_whenSign_thenUploadPermissions() {
+        assertTrue(sign(WRITE).contains("sp=racwl"));
+    }
+
+    @Test
+    void givenDeleteType_whenSign_thenDeletePermissions() {
+        assertTrue(sign(DELETE).contains("sp=racwdl"));
+    }
+
+    @Test
+    void givenOtherKey_whenSign_thenOtherSignature() {
+        OffsetDateTime start = OffsetDateTime.now();
+        OffsetDateTime expiry = start.plusMinutes(60L);
+        String otherKey = Base64.getEncoder().encodeToString("my-other-key".getBytes(StandardCharsets.UTF_8));
+
+        String token = signer.sign(CREDENTIAL, CONTAINER, READ, start, expiry);
+
+        assertEquals(token, signer.sign(CREDENTIAL, CONTAINER, READ, start, expiry));
+        assertNotEquals(token, signer.sign(new StorageSharedKeyCredential(ACCOUNT_NAME, otherKey), CONTAINER, READ, start, expiry));
+        assertTrue(token.contains("sr=c"));
+    }
+
+    @Test
+    void givenSignedToken_whenParse_thenExpiryOfSignature() {
+        OffsetDateTime expiry = OffsetDateTime.now().plusMinutes(60L).truncatedTo(ChronoUnit.SECONDS);
+        String token = signer.sign(CREDENTIAL, CONTAINER, READ, OffsetDateTime.now(), expiry);
+
+        assertEquals(expiry.toInstant(), SASToken.parse(READ, ACCOUNT_NAME, CONTAINER, token).expiresAt());
+    }
+
+    private String sign(SASToken.SASType type) {
+        OffsetDateTime now = OffsetDateTime.now();
+        return signer.sign(CREDENTIAL, CONTAINER, type, now, now.plusMinutes(60L));
+    }
+}
@@ -0,0 +1,268 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.azure;
+
+import com.efs.sdk.accessmanager.commons.AccessManagerException;
+import com.efs.sdk.accessmanager.core.azure.model.SASToken;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.efs.sdk.accessmanager.core.azure.model.SASToken.SASType.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SASTokenCacheTest {
+
+    private static final String ORGANIZATION = "myorga";
+    private static final String SPACE = "myspace";
+    private static final int THREADS = 8;
+    private static final int CACHE_BUFFER = 2;
+
+    private SASTokenCache cache;
+
+    @BeforeEach
+    void setup() {
+        this.cache = new SASTokenCache(CACHE_BUFFER, false, 0, 0, Runnable::run);
+    }
+
+    @Test
+    void givenValidToken_whenGet_thenCached() throws Exception {
+        String token = token(20L);
+        cache.getOrIssue(READ, ORGANIZATION, SPACE, () -> SASToken.parse(READ, ORGANIZATION, SPACE, token));
+
+        assertEquals(token, cache.get(READ, ORGANIZATION, SPACE).orElseThrow());
+    }
+
+    @Test
+    void givenValidToken_whenGetIgnoringCase_thenCached() throws Exception {
+        String token = token(20L);
+        cache.getOrIssue(READ, ORGANIZATION, SPACE, () -> SASToken.parse(READ, ORGANIZATION, SPACE, token));
+
+        assertEquals(token, cache.get(READ, ORGANIZATION.toUpperCase(), SPACE.toUpperCase()).orElseThrow());
+    }
+
+    @Test
+    void givenValidToken_whenGetOtherType_thenEmpty() throws Exception {
+        cache.getOrIssue(READ, ORGANIZATION, SPACE, () -> SASToken.parse(READ, ORGANIZATION, SPACE, token(20L)));
+
+        assertTrue(cache.get(WRITE, ORGANIZATION, SPACE).isEmpty());
+        assertTrue(cache.get(DELETE, ORGANIZATION, SPACE).isEmpty());
+    }
+
+    @Test
+    void givenTokenWithinBuffer_whenGet_thenEmpty() throws Exception {
+        cache.getOrIssue(READ, ORGANIZATION, SPACE, () -> SASToken.parse(READ, ORGANIZATION, SPACE, token(1L)));
+
+        assertTrue(cache.get(READ, ORGANIZATION, SPACE).isEmpty());
+    }
+
+    @Test
+    void givenExpiredToken_whenGet_thenEmpty() throws Exception {
+        cache.getOrIssue(READ, ORGANIZATION, SPACE, () -> new SASToken(READ, ORGANIZATION, SPACE, "any", Instant.now().minusSeconds(60L)));
+
+        assertTrue(cache.get(READ, ORGANIZATION, SPACE).isEmpty());
+    }
+
+    @Test
+    void givenCachedTokens_whenInvalidate_thenEmpty() throws Exception {
+        cache.getOrIssue(READ, ORGANIZATION, SPACE, () -> SASToken.parse(READ, ORGANIZATION, SPACE, token(20L)));
+        cache.getOrIssue(WRITE, ORGANIZATION, SPACE, () -> SASToken.parse(WRITE, ORGANIZATION, SPACE, token(20L)));
+
+        cache.invalidate(ORGANIZATION, SPACE);
+
+        assertTrue(cache.get(READ, ORGANIZATION, SPACE).isEmpty());
+        assertTrue(cache.get(WRITE, ORGANIZATION, SPACE).isEmpty());
+    }
+
+    @Test
+    void givenConcurrentMisses_whenGetOrIssue_thenIssuedOnce() throws Exception {
+        AtomicInteger issued = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        SASToken sasToken = SASToken.parse(READ, ORGANIZATION, SPACE, token(20L));
+        SASTokenCache.TokenIssuer issuer = () -> {
+            issued.incrementAndGet();
+            await(release);
+            return sasToken;
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<SASToken>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                results.add(executor.submit(() -> cache.getOrIssue(READ, ORGANIZATION, SPACE, issuer)));
+            }
+            // give all callers the chance to join the running issuance
+            Thread.sleep(200L);
+            release.countDown();
+            for (Future<SASToken> result : results) {
+                assertSame(sasToken, result.get(5L, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, issued.get());
+    }
+
+    @Test
+    void givenFailingIssuance_whenGetOrIssue_thenFailureShared() throws Exception {
+        AtomicInteger issued = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        SASTokenCache.TokenIssuer issuer = () -> {
+            issued.incrementAndGet();
+            await(release);
+            throw new AccessManagerException(AccessManagerException.ACCESSMANAGER_ERROR.UNABLE_FIND_ACCOUNT);
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<SASToken>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                results.add(executor.submit(() -> cache.getOrIssue(READ, ORGANIZATION, SPACE, issuer)));
+            }
+            Thread.sleep(200L);
+            release.countDown();
+            for (Future<SASToken> result : results) {
+                ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5L, TimeUnit.SECONDS));
+                assertInstanceOf(AccessManagerException.class, e.getCause());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, issued.get());
+        assertTrue(cache.get(READ, ORGANIZATION, SPACE).isEmpty());
+    }
+
+    @Test
+    void givenInvalidationDuringIssuance_whenGetOrIssue_thenNotCached() throws Exception {
+        SASToken sasToken = SASToken.parse(READ, ORGANIZATION, SPACE, token(20L));
+
+        // the organization changes while the token is being issued
+        SASToken issued = cache.getOrIssue(READ, ORGANIZATION, SPACE, () -> {
+            cache.invalidateOrganization(ORGANIZATION.toUpperCase());
+            return sasToken;
+        });
+
+        assertSame(sasToken, issued);
+        assertTrue(cache.get(READ, ORGANIZATION, SPACE).isEmpty());
+    }
+
+    @Test
+    void givenInvalidationDuringRefresh_whenRefreshAhead_thenNotCached() throws Exception {
+        SASTokenCache refreshing = new SASTokenCache(CACHE_BUFFER, true, 2, 5, Runnable::run);
+        SASToken current = SASToken.parse(READ, ORGANIZATION, SPACE, token(4L));
+        SASToken renewed = SASToken.parse(READ, ORGANIZATION, SPACE, token(20L));
+        AtomicInteger issued = new AtomicInteger();
+        SASTokenCache.TokenIssuer issuer = () -> {
+            if (issued.getAndIncrement() == 0) {
+                return current;
+            }
+            refreshing.invalidate(ORGANIZATION, SPACE);
+            return renewed;
+        };
+
+        refreshing.getOrIssue(READ, ORGANIZATION, SPACE, issuer);
+        refreshing.refreshAhead();
+
+        assertEquals(2, issued.get());
+        assertTrue(refreshing.get(READ, ORGANIZATION, SPACE).isEmpty());
+    }
+
+    @Test
+    void givenRecentlyServedTokenWithinRefreshWindow_whenRefreshAhead_thenReissued() throws Exception {
+        SASTokenCache refreshing = new SASTokenCache(CACHE_BUFFER, true, 2, 5, Runnable::run);
+        // evicted in 2 minutes, refresh-window starts 2 minutes before eviction
+        SASToken current = SASToken.parse(READ, ORGANIZATION, SPACE, token(4L));
+        SASToken renewed = SASToken.parse(READ, ORGANIZATION, SPACE, token(20L));
+        AtomicInteger issued = new AtomicInteger();
+        SASTokenCache.TokenIssuer issuer = () -> issued.getAndIncrement() == 0 ? current : renewed;
+
+        assertSame(current, refreshing.getOrIssue(READ, ORGANIZATION, SPACE, issuer));
+        refreshing.refreshAhead();
+
+        assertEquals(2, issued.get());
+        assertEquals(renewed.token(), refreshing.get(READ, ORGANIZATION, SPACE).orElseThrow());
+    }
+
+    @Test
+    void givenTokenOutsideRefreshWindow_whenRefreshAhead_thenNotReissued() throws Exception {
+        SASTokenCache refreshing = new SASTokenCache(CACHE_BUFFER, true, 2, 5, Runnable::run);
+        SASToken current = SASToken.parse(READ, ORGANIZATION, SPACE, token(20L));
+        AtomicInteger issued = new AtomicInteger();
+
+        refreshing.getOrIssue(READ, ORGANIZATION, SPACE, () -> {
+            issued.incrementAndGet();
+            return current;
+        });
+        refreshing.refreshAhead();
+
+        assertEquals(1, issued.get());
+    }
+
+    @Test
+    void givenIdleToken_whenRefreshAhead_thenNotReissued() throws Exception {
+        SASTokenCache refreshing = new SASTokenCache(CACHE_BUFFER, true, 2, 0, Runnable::run);
+        SASToken current = SASToken.parse(READ, ORGANIZATION, SPACE, token(4L));
+        AtomicInteger issued = new AtomicInteger();
+
+        refreshing.getOrIssue(READ, ORGANIZATION, SPACE, () -> {
+            issued.incrementAndGet();
+            return current;
+        });
+        // idle-window of 0 minutes - the token is idle as soon as time has passed since it was served
+        Thread.sleep(10L);
+        refreshing.refreshAhead();
+
+        assertEquals(1, issued.get());
+    }
+
+    @Test
+    void givenRefreshAheadDisabled_whenRefreshAhead_thenNotReissued() throws Exception {
+        SASToken current = SASToken.parse(READ, ORGANIZATION, SPACE, token(4L));
+        AtomicInteger issued = new AtomicInteger();
+
+        cache.getOrIssue(READ, ORGANIZATION, SPACE, () -> {
+            issued.incrementAndGet();
+            return current;
+        });
+        cache.refreshAhead();
+
+        assertEquals(1, issued.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5L, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String token(long expiresInMinutes) {
+        String start = URLEncoder.encode(ZonedDateTime.now().minusMinutes(1L).truncatedTo(ChronoUnit.SECONDS).toInstant().atZone(ZoneOffset.UTC).toString(), Charset.defaultCharset());
+        String end = URLEncoder.encode(ZonedDateTime.now().plusMinutes(expiresInMinutes).truncatedTo(ChronoUnit.SECONDS).toInstant().atZone(ZoneOffset.UTC).toString(), Charset.defaultCharset());
+        return "sv=2021-04-10&st=" + start + "&se=" + end + "&sr=c&sp=rl&sig=ebgCqSgWRsNo%2Fjs6MTNIXYQ5MxG%2FLvIoceZB24LetFY%3D";
+    }
+}
@@ -0,0 +1,114 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.azure;
+
+import com.azure.core.http.HttpResponse;
+import com.azure.core.http.rest.PagedFlux;
+import com.azure.core.http.rest.PagedIterable;
+import com.azure.core.management.exception.ManagementException;
+import com.azure.resourcemanager.AzureResourceManager;
+import com.azure.resourcemanager.storage.models.StorageAccount;
+import com.azure.resourcemanager.storage.models.StorageAccounts;
+import com.efs.sdk.accessmanager.clients.AzureResourceManagerProvider;
+import com.efs.sdk.accessmanager.mock.StorageAccountMock;
+import com.efs.sdk.accessmanager.mock.SupplierMock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class StorageAccountResolverTest {
+
+    private static final String RESOURCE_GROUP = "SDK";
+    private static final String ACCOUNT_NAME = "myorga";
+
+    private AzureResourceManagerProvider azureProvider;
+    private StorageAccounts storageAccounts;
+
+    private StorageAccountResolver resolver;
+
+    @BeforeEach
+    void setup() {
+        this.azureProvider = Mockito.mock(AzureResourceManagerProvider.class);
+        AzureResourceManager azure = Mockito.mock(AzureResourceManager.class);
+        this.storageAccounts = Mockito.mock(StorageAccounts.class);
+        given(azureProvider.azure()).willReturn(azure);
+        given(azure.storageAccounts()).willReturn(storageAccounts);
+
+        StorageAccount account = new StorageAccountMock(ACCOUNT_NAME);
+        PagedIterable<StorageAccount> accountList = new PagedIterable<>(new PagedFlux<>(new SupplierMock<>(account)));
+        given(storageAccounts.listByResourceGroup(any())).willReturn(accountList);
+
+        this.resolver = new StorageAccountResolver(azureProvider, RESOURCE_GROUP, 60L);
+    }
+
+    @Test
+    void givenIndexedAccount_whenGetStorageAccount_thenListedOnce() {
+        assertEquals(ACCOUNT_NAME, resolver.getStorageAccount(ACCOUNT_NAME).orElseThrow().name());
+        assertEquals(ACCOUNT_NAME, resolver.getStorageAccount(ACCOUNT_NAME.toUpperCase()).orElseThrow().name());
+
+        verify(storageAccounts, times(1)).listByResourceGroup(RESOURCE_GROUP);
+        verify(storageAccounts, times(0)).getByResourceGroup(anyString(), anyString());
+    }
+
+    @Test
+    void givenAccountNotIndexed_whenGetStorageAccount_thenLookedUpByName() {
+        given(storageAccounts.getByResourceGroup(RESOURCE_GROUP, "other")).willReturn(new StorageAccountMock("other"));
+
+        assertEquals("other", resolver.getStorageAccount("other").orElseThrow().name());
+        assertEquals("other", resolver.getStorageAccount("other").orElseThrow().name());
+
+        verify(storageAccounts, times(1)).getByResourceGroup(RESOURCE_GROUP, "other");
+    }
+
+    @Test
+    void givenNoAccount_whenGetStorageAccount_thenEmptyAndRemembered() {
+        HttpResponse response = Mockito.mock(HttpResponse.class);
+        given(response.getStatusCode()).willReturn(404);
+        given(storageAccounts.getByResourceGroup(RESOURCE_GROUP, "unknown")).willThrow(new ManagementException("not found", response));
+
+        assertTrue(resolver.getStorageAccount("unknown").isEmpty());
+        assertTrue(resolver.getStorageAccount("unknown").isEmpty());
+
+        verify(storageAccounts, times(1)).getByResourceGroup(RESOURCE_GROUP, "unknown");
+    }
+
+    @Test
+    void givenLookupError_whenGetStorageAccount_thenError() {
+        HttpResponse response = Mockito.mock(HttpResponse.class);
+        given(response.getStatusCode()).willReturn(500);
+        given(storageAccounts.getByResourceGroup(RESOURCE_GROUP, "unknown")).willThrow(new ManagementException("error", response));
+
+        assertThrows(ManagementException.class, () -> resolver.getStorageAccount("unknown"));
+    }
+
+    @Test
+    void givenRemovedAccount_whenInvalidate_thenLookedUpAgain() {
+        given(storageAccounts.getByResourceGroup(RESOURCE_GROUP, ACCOUNT_NAME)).willReturn(null);
+        resolver.getStorageAccount(ACCOUNT_NAME);
+
+        resolver.invalidate(ACCOUNT_NAME);
+
+        assertTrue(resolver.getStorageAccount(ACCOUNT_NAME).isEmpty());
+        verify(storageAccounts, times(1)).getByResourceGroup(RESOURCE_GROUP, ACCOUNT_NAME);
+    }
+}
@@ -0,0 +1,48 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.azure;
+
+import com.azure.core.http.HttpClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class StorageClientTest {
+
+    private static final String CACHE_NAME = "accessmanager.storage.container-clients";
+
+    private StorageClient storageClient;
+
+    @BeforeEach
+    void setup() {
+        this.storageClient = new StorageClient(new StorageCredentialsCache(60L, Mockito.mock(SASTokenCache.class)), Mockito.mock(HttpClient.class), new ContainerExistenceCache(600L, 30L), new SASSigner(), 10L, 60L);
+    }
+
+    @Test
+    void givenRegistry_whenBindTo_thenContainerClientCacheMonitored() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+        storageClient.bindTo(registry);
+
+        assertNotNull(registry.find("cache.gets").tags("cache", CACHE_NAME, "result", "hit").functionCounter());
+        assertNotNull(registry.find("cache.gets").tags("cache", CACHE_NAME, "result", "miss").functionCounter());
+        assertNotNull(registry.find("cache.evictions").tags("cache", CACHE_NAME).functionCounter());
+        assertNotNull(registry.find("cache.size").tags("cache", CACHE_NAME).gauge());
+    }
+}
@@ -0,0 +1,153 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.azure;
+
+import com.azure.resourcemanager.storage.models.StorageAccount;
+import com.azure.resourcemanager.storage.models.StorageAccountKey;
+import com.efs.sdk.accessmanager.commons.AccessManagerException;
+import com.efs.sdk.accessmanager.core.azure.model.StorageCredentials;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class StorageCredentialsCacheTest {
+
+    private static final String ACCOUNT_NAME = "myorga";
+
+    private StorageAccount storageAccount;
+
+    private SASTokenCache tokenCache;
+
+    private StorageCredentialsCache cache;
+
+    @BeforeEach
+    void setup() {
+        this.storageAccount = Mockito.mock(StorageAccount.class);
+        given(storageAccount.name()).willReturn(ACCOUNT_NAME);
+        List<StorageAccountKey> keys = List.of(key("key1"), key("key2"));
+        given(storageAccount.getKeys()).willReturn(keys);
+
+        this.tokenCache = Mockito.mock(SASTokenCache.class);
+        this.cache = new StorageCredentialsCache(60L, tokenCache);
+    }
+
+    @Test
+    void givenStorageAccount_whenGet_thenKeysListedOnce() throws Exception {
+        StorageCredentials credentials = cache.get(storageAccount);
+        cache.get(storageAccount);
+
+        assertEquals("key1", credentials.accountKey());
+        assertTrue(credentials.connectionString().contains("AccountName=myorga;AccountKey=key1;"));
+        verify(storageAccount, times(1)).getKeys();
+    }
+
+    @Test
+    void givenNoKeys_whenGet_thenError() {
+        given(storageAccount.getKeys()).willReturn(List.of());
+
+        assertThrows(AccessManagerException.class, () -> cache.get(storageAccount));
+    }
+
+    @Test
+    void givenRejectedKey_whenFailover_thenNextKeyPreferred() throws Exception {
+        StorageCredentials rejected = cache.get(storageAccount);
+
+        assertEquals("key2", cache.failover(rejected).orElseThrow().accountKey());
+        assertEquals("key2", cache.get(storageAccount).accountKey());
+        verify(storageAccount, times(1)).getKeys();
+        verify(tokenCache).invalidateOrganization(ACCOUNT_NAME);
+    }
+
+    @Test
+    void givenConcurrentFailover_whenFailover_thenSwitchedOnce() throws Exception {
+        StorageCredentials rejected = cache.get(storageAccount);
+
+        cache.failover(rejected);
+        cache.failover(rejected);
+
+        assertEquals("key2", cache.get(storageAccount).accountKey());
+    }
+
+    @Test
+    void givenSingleKey_whenFailover_thenEmptyAndInvalidated() throws Exception {
+        List<StorageAccountKey> keys = List.of(key("key1"));
+        given(storageAccount.getKeys()).willReturn(keys);
+        StorageCredentials rejected = cache.get(storageAccount);
+
+        assertTrue(cache.failover(rejected).isEmpty());
+        cache.get(storageAccount);
+        verify(storageAccount, times(2)).getKeys();
+    }
+
+    @Test
+    void givenCachedCredentials_whenInvalidate_thenKeysListedAgain() throws Exception {
+        cache.get(storageAccount);
+
+        cache.invalidate(ACCOUNT_NAME.toUpperCase());
+        cache.get(storageAccount);
+
+        verify(storageAccount, times(2)).getKeys();
+    }
+
+    @Test
+    void givenExpiredCredentials_whenGet_thenKeysListedAgain() throws Exception {
+        StorageCredentialsCache expiring = new StorageCredentialsCache(0L, tokenCache);
+        expiring.get(storageAccount);
+
+        expiring.get(storageAccount);
+
+        verify(storageAccount, times(2)).getKeys();
+        verify(tokenCache, never()).invalidateOrganization(ACCOUNT_NAME);
+    }
+
+    @Test
+    void givenRotatedKey_whenKeysListedAgain_thenNewKeyAndTokensDropped() throws Exception {
+        StorageCredentialsCache expiring = new StorageCredentialsCache(0L, tokenCache);
+        expiring.get(storageAccount);
+        List<StorageAccountKey> rotated = List.of(key("key1-rotated"), key("key2"));
+        given(storageAccount.getKeys()).willReturn(rotated);
+
+        assertEquals("key1-rotated", expiring.get(storageAccount).accountKey());
+        verify(tokenCache).invalidateOrganization(ACCOUNT_NAME);
+    }
+
+    @Test
+    void givenFailoverAndUnchangedKeys_whenKeysListedAgain_thenNextKeyStillPreferred() throws Exception {
+        StorageCredentialsCache expiring = new StorageCredentialsCache(0L, tokenCache);
+        expiring.failover(expiring.get(storageAccount));
+
+        assertEquals("key2", expiring.get(storageAccount).accountKey());
+    }
+
+    @Test
+    void givenCredentials_whenToString_thenNoKeys() throws Exception {
+        assertFalse(cache.get(storageAccount).toString().contains("key1"));
+    }
+
+    private static StorageAccountKey key(String value) {
+        StorageAccountKey key = Mockito.mock(StorageAccountKey.class);
+        given(key.value()).willReturn(value);
+        return key;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.azure;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenPreparationExecutorTest {
+
+    @Test
+    void givenPreparation_whenSubmit_thenRunInBackground() throws Exception {
+        try (TokenPreparationExecutor executor = new TokenPreparationExecutor(1, 1)) {
+            AtomicBoolean ran = new AtomicBoolean();
+            executor.submit(() -> ran.set(true)).get(5, TimeUnit.SECONDS);
+            assertTrue(ran.get());
+        }
+    }
+
+    @Test
+    void givenQueuedPreparation_whenRunByCaller_thenNotRunAgain() throws Exception {
+        try (TokenPreparationExecutor executor = new TokenPreparationExecutor(1, 1)) {
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<Void> running = executor.submit(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            AtomicInteger runs = new AtomicInteger();
+            TokenPreparationExecutor.Preparation queued = executor.submit(runs::incrementAndGet);
+
+            queued.run();
+            assertTrue(queued.isDone());
+            release.countDown();
+            running.get(5, TimeUnit.SECONDS);
+            // the pool-thread skips the preparation started by the caller
+            executor.submit(() -> {
+            }).get(5, TimeUnit.SECONDS);
+            assertEquals(1, runs.get());
+        }
+    }
+
+    @Test
+    void givenAllThreadsBusyAndQueueFull_whenSubmit_thenSkipped() throws Exception {
+        try (TokenPreparationExecutor executor = new TokenPreparationExecutor(1, 1)) {
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<Void> running = executor.submit(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            CompletableFuture<Void> queued = executor.submit(() -> {
+            });
+
+            AtomicBoolean ran = new AtomicBoolean();
+            CompletableFuture<Void> skipped = executor.submit(() -> ran.set(true));
+
+            assertTrue(skipped.isDone());
+            assertFalse(ran.get());
+            release.countDown();
+            running.get(5, TimeUnit.SECONDS);
+            queued.get(5, TimeUnit.SECONDS);
+            assertFalse(ran.get());
+        }
+    }
+}
@@ -19,6 +19,7 @@ import org.junit.jupiter.api.Test;
 
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
+import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
@@ -40,7 +41,7 @@ class SASTokenTest {
 
         String token = "sv=2021-04-10&st=" + start + "&se=" + end + "&sr=c&sp=racwl&sig=ebgCqSgWRsNo" + "%2Fjs6MTNIXYQ5MxG%2FLvIoceZB24LetFY%3D";
 
-        SASToken sasToken = new SASToken(SASToken.SASType.READ, "myorga", "myspace", token);
+        SASToken sasToken = SASToken.parse(SASToken.SASType.READ, "myorga", "myspace", token);
         assertTrue(sasToken.isValid(cacheBuffer));
     }
 
@@ -55,7 +56,7 @@ class SASTokenTest {
 
         String token = "sv=2021-04-10&st=" + start + "&se=" + end + "&sr=c&sp=racwl&sig=ebgCqSgWRsNo" + "%2Fjs6MTNIXYQ5MxG%2FLvIoceZB24LetFY%3D";
 
-        SASToken sasToken = new SASToken(SASToken.SASType.READ, "myorga", "myspace", token);
+        SASToken sasToken = SASToken.parse(SASToken.SASType.READ, "myorga", "myspace", token);
         assertFalse(sasToken.isValid(cacheBuffer));
     }
 
@@ -68,7 +69,26 @@ class SASTokenTest {
 
         String token = "sv=2021-04-10&st=" + start + "&se=" + end + "&sr=c&sp=racwl&sig=ebgCqSgWRsNo" + "%2Fjs6MTNIXYQ5MxG%2FLvIoceZB24LetFY%3D";
 
-        SASToken sasToken = new SASToken(SASToken.SASType.READ, "myorga", "myspace", token);
-        assertThrows(IllegalArgumentException.class, () -> sasToken.isValid(cacheBuffer));
+        assertThrows(IllegalArgumentException.class, () -> SASToken.parse(SASToken.SASType.READ, "myorga", "myspace", token));
+    }
+
+    @Test
+    void givenValidToken_whenParse_thenExpiresAtFromToken() {
+        ZonedDateTime expiry = ZonedDateTime.now().plusMinutes(20L).truncatedTo(ChronoUnit.SECONDS);
+        String end = URLEncoder.encode(expiry.toInstant().atZone(ZoneOffset.UTC).toString(), Charset.defaultCharset());
+
+        String token = "sv=2021-04-10&st=2021-04-10T10%3A00%3A00Z&se=" + end + "&sr=c&sp=racwl&sig=ebgCqSgWRsNo" + "%2Fjs6MTNIXYQ5MxG%2FLvIoceZB24LetFY%3D";
+
+        SASToken sasToken = SASToken.parse(SASToken.SASType.READ, "myorga", "myspace", token);
+        assertEquals(expiry.toInstant(), sasToken.expiresAt());
+    }
+
+    @Test
+    void givenIssuedToken_whenIsValid_thenCheckedAgainstExpiresAt() {
+        SASToken valid = new SASToken(SASToken.SASType.READ, "myorga", "myspace", "any", Instant.now().plus(20L, ChronoUnit.MINUTES));
+        SASToken withinBuffer = new SASToken(SASToken.SASType.READ, "myorga", "myspace", "any", Instant.now().plus(1L, ChronoUnit.MINUTES));
+
+        assertTrue(valid.isValid(cacheBuffer));
+        assertFalse(withinBuffer.isValid(cacheBuffer));
     }
 }
@@ -0,0 +1,351 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.events;
+
+import com.efs.sdk.accessmanager.core.events.CommitOutbox.Batch;
+import com.efs.sdk.accessmanager.core.events.CommitOutbox.Entry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommitOutboxTest {
+
+    private static final String TOPIC = "accessmanager-commit";
+    private static final String KEY = "myorga/myspace";
+
+    @TempDir
+    Path directory;
+
+    private CommitOutbox outbox;
+
+    @BeforeEach
+    void setup() throws Exception {
+        this.outbox = new CommitOutbox(directory.toString(), 1024L);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        outbox.close();
+    }
+
+    @Test
+    void givenAppendedEvents_whenRead_thenInOrder() throws Exception {
+        outbox.append(TOPIC, null, "first");
+        outbox.append(TOPIC, null, "second");
+
+        Batch batch = outbox.read(outbox.acknowledged(), 10);
+
+        assertEquals(List.of("first", "second"), messages(batch));
+        assertEquals(TOPIC, batch.entries().get(0).topic());
+        assertEquals(2L, outbox.backlog());
+    }
+
+    @Test
+    void givenKeyedAndUnkeyedEvents_whenRead_thenKeysKept() throws Exception {
+        outbox.appendAll(TOPIC, List.of(new EventMessage(KEY, "first"), new EventMessage(null, "second"), new EventMessage("", "third")));
+
+        List<Entry> entries = outbox.read(outbox.acknowledged(), 10).entries();
+
+        assertEquals(KEY, entries.get(0).key());
+        assertNull(entries.get(1).key());
+        assertEquals("", entries.get(2).key());
+        assertEquals(List.of("first", "second", "third"), entries.stream().map(Entry::message).toList());
+    }
+
+    @Test
+    void givenAcknowledgedEvents_whenRead_thenOnlyNewEvents() throws Exception {
+        outbox.append(TOPIC, null, "first");
+        Batch batch = outbox.read(outbox.acknowledged(), 10);
+        outbox.acknowledge(batch.next(), batch.entries().size());
+        outbox.append(TOPIC, null, "second");
+
+        assertEquals(List.of("second"), messages(outbox.read(outbox.acknowledged(), 10)));
+        assertEquals(1L, outbox.backlog());
+    }
+
+    @Test
+    void givenUnacknowledgedEvents_whenReopened_thenReplayed() throws Exception {
+        outbox.append(TOPIC, null, "first");
+        outbox.acknowledge(outbox.read(outbox.acknowledged(), 10).next(), 1);
+        outbox.append(TOPIC, null, "second");
+        outbox.append(TOPIC, null, "third");
+        outbox.close();
+
+        this.outbox = new CommitOutbox(directory.toString(), 1024L);
+        outbox.append(TOPIC, null, "fourth");
+
+        assertEquals(List.of("second", "third", "fourth"), messages(outbox.read(outbox.acknowledged(), 10)));
+        assertEquals(3L, outbox.backlog());
+    }
+
+    @Test
+    void givenFullSegments_whenAcknowledged_thenSegmentsDeleted() throws Exception {
+        String message = "x".repeat(400);
+        for (int i = 0; i < 6; i++) {
+            outbox.append(TOPIC, null, message);
+        }
+        assertTrue(segments() >= 3);
+
+        Batch batch = outbox.read(outbox.acknowledged(), 10);
+        outbox.acknowledge(batch.next(), batch.entries().size());
+
+        assertEquals(6, batch.entries().size());
+        assertEquals(1L, segments());
+        assertEquals(0L, outbox.backlog());
+    }
+
+    @Test
+    void givenTornRecord_whenReopened_thenSkipped() throws Exception {
+        outbox.append(TOPIC, null, "first");
+        outbox.close();
+        try (Stream<Path> files = Files.list(directory)) {
+            Path segment = files.filter(file -> file.getFileName().toString().endsWith(".log")).findFirst().orElseThrow();
+            Files.write(segment, new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+        }
+
+        this.outbox = new CommitOutbox(directory.toString(), 1024L);
+        outbox.append(TOPIC, null, "second");
+
+        assertEquals(List.of("first", "second"), messages(outbox.read(outbox.acknowledged(), 10)));
+    }
+
+    @Test
+    void givenPartialWrite_whenAppendAgain_thenAppendedAfterLastCompleteEvent() throws Exception {
+        outbox.close();
+        AtomicBoolean failNextWrite = new AtomicBoolean();
+        this.outbox = new CommitOutbox(directory.toString(), 1024L) {
+            @Override
+            FileChannel openChannel(Path path) throws IOException {
+                return new FailingChannel(super.openChannel(path), failNextWrite);
+            }
+        };
+        outbox.append(TOPIC, null, "first");
+
+        failNextWrite.set(true);
+        assertThrows(IOException.class, () -> outbox.appendAll(TOPIC, List.of(new EventMessage(null, "failed"), new EventMessage(null, "also failed"))));
+        outbox.append(TOPIC, null, "second");
+
+        assertEquals(List.of("first", "second"), messages(outbox.read(outbox.acknowledged(), 10)));
+        assertEquals(2L, outbox.backlog());
+        outbox.close();
+        this.outbox = new CommitOutbox(directory.toString(), 1024L);
+        assertEquals(List.of("first", "second"), messages(outbox.read(outbox.acknowledged(), 10)));
+    }
+
+    @Test
+    void givenConcurrentAppends_whenRead_thenAllEventsStored() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Void>> appends = IntStream.range(0, 200).mapToObj(i -> executor.<Void>submit(() -> {
+                outbox.append(TOPIC, KEY, "event-" + i);
+                return null;
+            })).toList();
+            for (Future<Void> append : appends) {
+                append.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(200, outbox.read(outbox.acknowledged(), 1000).entries().size());
+        assertEquals(200L, outbox.backlog());
+    }
+
+    @Test
+    void givenConcurrentAppends_whenAppendAllWithLimit_thenLimitNeverExceeded() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> appends = IntStream.range(0, 40).mapToObj(i -> executor.submit(() ->
+                    outbox.appendAll(TOPIC, List.of(new EventMessage(KEY, "event-" + i), new EventMessage(KEY, "event-" + i), new EventMessage(KEY, "event-" + i)), 10L, 0L))).toList();
+            long appended = 0L;
+            for (Future<Boolean> append : appends) {
+                appended += append.get() ? 3L : 0L;
+            }
+
+            assertEquals(9L, appended);
+            assertEquals(9L, outbox.backlog());
+            assertEquals(9, outbox.read(outbox.acknowledged(), 100).entries().size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void givenBacklog_whenAppendAllBeyondLimit_thenRejectedUnlessEmpty() throws Exception {
+        List<EventMessage> batch = List.of(new EventMessage(null, "first"), new EventMessage(null, "second"), new EventMessage(null, "third"));
+
+        // a batch larger than the limit is only taken by an empty backlog
+        assertTrue(outbox.appendAll(TOPIC, batch, 2L, 0L));
+        assertFalse(outbox.appendAll(TOPIC, List.of(new EventMessage(null, "fourth")), 3L, 0L));
+        assertTrue(outbox.appendAll(TOPIC, List.of(new EventMessage(null, "fourth")), 4L, 0L));
+
+        assertEquals(4L, outbox.backlog());
+        assertEquals(List.of("first", "second", "third", "fourth"), messages(outbox.read(outbox.acknowledged(), 10)));
+    }
+
+    @Test
+    void givenRegistry_whenBindTo_thenBacklogMonitored() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        outbox.bindTo(registry);
+
+        outbox.append(TOPIC, null, "first");
+
+        assertEquals(1.0, registry.get("accessmanager.outbox.backlog").gauge().value());
+        assertEquals(1.0, registry.get("accessmanager.outbox.segments").gauge().value());
+    }
+
+    private long segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".log")).count();
+        }
+    }
+
+    private static List<String> messages(Batch batch) {
+        return batch.entries().stream().map(Entry::message).toList();
+    }
+
+    /**
+     * Writes only half of the next buffer and fails, once requested
+     */
+    private static class FailingChannel extends FileChannel {
+
+        private final FileChannel delegate;
+
+        private final AtomicBoolean failNextWrite;
+
+        FailingChannel(FileChannel delegate, AtomicBoolean failNextWrite) {
+            this.delegate = delegate;
+            this.failNextWrite = failNextWrite;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (failNextWrite.compareAndSet(true, false)) {
+                delegate.write(src.slice(src.position(), src.remaining() / 2));
+                throw new IOException("No space left on device");
+            }
+            return delegate.write(src);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return delegate.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            delegate.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return delegate.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return delegate.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            delegate.close();
+        }
+    }
+}
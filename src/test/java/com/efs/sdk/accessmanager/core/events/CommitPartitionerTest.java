@@ -0,0 +1,94 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.events;
+
+import com.efs.sdk.accessmanager.core.model.CommitKey;
+import com.efs.sdk.accessmanager.core.model.CommitModel;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommitPartitionerTest {
+
+    private static final String TOPIC = "accessmanager-commit";
+    private static final int PARTITIONS = 12;
+
+    @Test
+    void givenSameSpace_whenPartition_thenSamePartition() {
+        String key = CommitKey.ORGANIZATION_SPACE.of(new CommitModel("myorga", "myspace", "loadingzone", "user", "first"));
+
+        assertEquals(CommitPartitioner.partition(key, PARTITIONS, PARTITIONS), CommitPartitioner.partition(key, PARTITIONS, PARTITIONS));
+        assertEquals("myorga/myspace", key);
+    }
+
+    @Test
+    void givenSpacesOfOneOrganization_whenPartition_thenSpreadOverWindow() {
+        Set<Integer> partitions = IntStream.range(0, 200).mapToObj(i -> CommitPartitioner.partition("myorga/space-" + i, PARTITIONS, 3)).collect(Collectors.toSet());
+
+        assertEquals(3, partitions.size());
+    }
+
+    @Test
+    void givenSpacesOfOneOrganizationUnboundSpread_whenPartition_thenSpreadOverAllPartitions() {
+        Set<Integer> partitions = IntStream.range(0, 500).mapToObj(i -> CommitPartitioner.partition("myorga/space-" + i, PARTITIONS, Integer.MAX_VALUE)).collect(Collectors.toSet());
+
+        assertEquals(PARTITIONS, partitions.size());
+    }
+
+    @Test
+    void givenCluster_whenPartition_thenConfiguredSpreadUsed() {
+        CommitPartitioner partitioner = new CommitPartitioner();
+        partitioner.configure(Map.of(CommitPartitioner.SPREAD_CONFIG, 1));
+
+        Set<Integer> partitions = IntStream.range(0, 50).mapToObj(i -> partitioner.partition(TOPIC, "myorga/space-" + i, null, null, null, cluster())).collect(Collectors.toSet());
+
+        assertEquals(Set.of(CommitPartitioner.partition("myorga/space-0", PARTITIONS, 1)), partitions);
+    }
+
+    @Test
+    void givenNoKey_whenPartition_thenRoundRobin() {
+        CommitPartitioner partitioner = new CommitPartitioner();
+        Cluster cluster = cluster();
+
+        Set<Integer> partitions = IntStream.range(0, PARTITIONS).mapToObj(i -> partitioner.partition(TOPIC, null, null, null, null, cluster)).collect(Collectors.toSet());
+
+        assertEquals(PARTITIONS, partitions.size());
+    }
+
+    @Test
+    void givenCommitKeys_whenOf_thenDerivedFromCommit() {
+        CommitModel commit = new CommitModel("myorga", "myspace", "loadingzone", "user", "first");
+
+        assertEquals("myorga", CommitKey.ORGANIZATION.of(commit));
+        assertEquals("myorga/myspace/first", CommitKey.DATASET.of(commit));
+        assertNull(CommitKey.NONE.of(commit));
+    }
+
+    private static Cluster cluster() {
+        Node node = new Node(0, "localhost", 9092);
+        List<PartitionInfo> partitions = IntStream.range(0, PARTITIONS).mapToObj(i -> new PartitionInfo(TOPIC, i, node, new Node[]{node}, new Node[]{node})).toList();
+        return new Cluster("accessmanager", List.of(node), partitions, Set.of(), Set.of());
+    }
+}
@@ -0,0 +1,123 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.events;
+
+import com.efs.sdk.accessmanager.commons.AccessManagerException;
+import com.efs.sdk.accessmanager.core.events.CommitOutbox.Batch;
+import com.efs.sdk.accessmanager.core.events.EventPublisher.OverflowPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.http.HttpStatus;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+class EventPublisherTest {
+
+    private static final String TOPIC = "accessmanager-commit";
+
+    @TempDir
+    Path directory;
+
+    private CommitOutbox outbox;
+
+    private KafkaTemplate<String, String> kafkaTemplate;
+
+    private OutboxRelay relay;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() throws Exception {
+        this.outbox = new CommitOutbox(directory.toString(), 1024L);
+        this.kafkaTemplate = Mockito.mock(KafkaTemplate.class);
+        this.relay = new OutboxRelay(outbox, kafkaTemplate, 100, 30L, 60000L, 60000L);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        relay.close();
+        outbox.close();
+    }
+
+    @Test
+    void givenKafkaAvailable_whenSendMessage_thenStoredAndRelayed() throws Exception {
+        given(kafkaTemplate.send(anyRecord())).willReturn(CompletableFuture.completedFuture(null));
+        EventPublisher publisher = new EventPublisher(outbox, relay, 10L, OverflowPolicy.REJECT, 0L);
+
+        publisher.sendMessage("first", TOPIC);
+
+        verify(kafkaTemplate, timeout(5000L)).send(event("first"));
+    }
+
+    @Test
+    void givenBacklogFull_whenSendMessage_thenRejectedWith503() throws Exception {
+        given(kafkaTemplate.send(anyRecord())).willReturn(new CompletableFuture<>());
+        EventPublisher publisher = new EventPublisher(outbox, relay, 1L, OverflowPolicy.REJECT, 0L);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        publisher.bindTo(registry);
+        publisher.sendMessage("first", TOPIC);
+
+        AccessManagerException e = assertThrows(AccessManagerException.class, () -> publisher.sendMessage("second", TOPIC));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getHttpStatus());
+        assertEquals(1.0, registry.get("accessmanager.outbox.rejected").functionCounter().count());
+        assertEquals(1L, outbox.backlog());
+    }
+
+    @Test
+    void givenBacklogFull_whenSendMessageBlocking_thenStoredOnceDrained() throws Exception {
+        given(kafkaTemplate.send(anyRecord())).willReturn(new CompletableFuture<>());
+        EventPublisher publisher = new EventPublisher(outbox, relay, 1L, OverflowPolicy.BLOCK, 10000L);
+        publisher.sendMessage("first", TOPIC);
+        ScheduledExecutorService acknowledger = Executors.newSingleThreadScheduledExecutor();
+        try {
+            acknowledger.schedule(() -> {
+                Batch batch = outbox.read(outbox.acknowledged(), 10);
+                outbox.acknowledge(batch.next(), batch.entries().size());
+                return null;
+            }, 100L, TimeUnit.MILLISECONDS);
+
+            publisher.sendMessage("second", TOPIC);
+        } finally {
+            acknowledger.shutdown();
+        }
+
+        assertEquals(1L, outbox.backlog());
+    }
+
+    private static ProducerRecord<String, String> anyRecord() {
+        return ArgumentMatchers.any();
+    }
+
+    private static ProducerRecord<String, String> event(String message) {
+        return ArgumentMatchers.argThat(producerRecord -> producerRecord != null && TOPIC.equals(producerRecord.topic()) && message.equals(producerRecord.value()));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.events;
+
+import com.efs.sdk.accessmanager.clients.OrganizationManagerClient;
+import com.efs.sdk.accessmanager.core.azure.ContainerExistenceCache;
+import com.efs.sdk.accessmanager.core.azure.SASTokenCache;
+import com.efs.sdk.accessmanager.core.model.StorageTarget;
+import com.efs.sdk.accessmanager.helper.PermissionDecisionCache;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.kafka.KafkaAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(classes = {OrganizationChangeListener.class, KafkaAutoConfiguration.class, JacksonAutoConfiguration.class}, properties = {
+        "accessmanager.invalidation.enabled=true",
+        "accessmanager.topic.organization-changes=" + OrganizationChangeListenerTest.TOPIC,
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.auto-offset-reset=earliest"
+})
+@EmbeddedKafka(partitions = 1, topics = OrganizationChangeListenerTest.TOPIC)
+class OrganizationChangeListenerTest {
+
+    static final String TOPIC = "organizationmanager-changes-test";
+
+    private static final long TIMEOUT = 30_000L;
+
+    @MockBean
+    private PermissionDecisionCache decisionCache;
+    @MockBean
+    private OrganizationManagerClient orgaManagerClient;
+    @MockBean
+    private SASTokenCache tokenCache;
+    @MockBean
+    private ContainerExistenceCache containerExistenceCache;
+
+    @Autowired
+    private OrganizationChangeListener listener;
+    @Autowired
+    private KafkaTemplate<String, String> kafkaTemplate;
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+    @Autowired
+    private EmbeddedKafkaBroker broker;
+
+    @BeforeEach
+    void setup() {
+        for (MessageListenerContainer container : registry.getListenerContainers()) {
+            ContainerTestUtils.waitForAssignment(container, broker.getPartitionsPerTopic());
+        }
+    }
+
+    @Test
+    void givenSpaceChange_whenPublished_thenSpaceInvalidated() {
+        kafkaTemplate.send(TOPIC, "{\"type\":\"SPACE_UPDATED\",\"organization\":\"myorga\",\"space\":\"myspace\"}").join();
+
+        verify(containerExistenceCache, timeout(TIMEOUT)).invalidate(new StorageTarget("myorga", "myspace"));
+        verify(decisionCache).invalidate("myorga", "myspace");
+        verify(tokenCache).invalidate("myorga", "myspace");
+        verify(orgaManagerClient, never()).invalidateOrganizationId(any());
+    }
+
+    @Test
+    void givenOrganizationChange_whenPublished_thenOrganizationInvalidated() {
+        kafkaTemplate.send(TOPIC, "{\"type\":\"ORGANIZATION_DELETED\",\"organization\":\"otherorga\"}").join();
+
+        verify(containerExistenceCache, timeout(TIMEOUT)).invalidateOrganization("otherorga");
+        verify(decisionCache).invalidate("otherorga", null);
+        verify(orgaManagerClient).invalidateOrganizationId("otherorga");
+        verify(tokenCache).invalidateOrganization("otherorga");
+    }
+
+    @Test
+    void givenMalformedChange_whenOnMessage_thenSkipped() {
+        listener.onMessage("not json");
+        listener.onMessage("{\"type\":\"SPACE_UPDATED\",\"space\":\"skipped\"}");
+
+        verify(decisionCache, never()).invalidate(any(), eq("skipped"));
+        verify(tokenCache, never()).invalidate(any(), eq("skipped"));
+    }
+
+    @Test
+    void givenNoAzureCaches_whenOnMessage_thenPermissionsInvalidated() {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        OrganizationChangeListener s3Listener = new OrganizationChangeListener(new ObjectMapper(), decisionCache, orgaManagerClient, beanFactory.getBeanProvider(SASTokenCache.class), beanFactory.getBeanProvider(ContainerExistenceCache.class));
+
+        s3Listener.onMessage("{\"type\":\"SPACE_DELETED\",\"organization\":\"s3orga\",\"space\":\"myspace\"}");
+
+        verify(decisionCache).invalidate("s3orga", "myspace");
+    }
+}
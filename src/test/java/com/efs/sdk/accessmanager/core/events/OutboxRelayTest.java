@@ -0,0 +1,197 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.events;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.*;
+
+class OutboxRelayTest {
+
+    private static final String TOPIC = "accessmanager-commit";
+
+    @TempDir
+    Path directory;
+
+    private CommitOutbox outbox;
+
+    private KafkaTemplate<String, String> kafkaTemplate;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() throws Exception {
+        this.outbox = new CommitOutbox(directory.toString(), 1024L);
+        this.kafkaTemplate = Mockito.mock(KafkaTemplate.class);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        outbox.close();
+    }
+
+    @Test
+    void givenEvents_whenDrain_thenSentInOrderAndAcknowledged() throws Exception {
+        given(kafkaTemplate.send(anyRecord())).willReturn(CompletableFuture.completedFuture(null));
+        OutboxRelay relay = new OutboxRelay(outbox, kafkaTemplate, 100, 30L, 1000L, 60000L);
+        outbox.append(TOPIC, null, "first");
+        outbox.append(TOPIC, null, "second");
+
+        relay.drain();
+
+        var inOrder = inOrder(kafkaTemplate);
+        inOrder.verify(kafkaTemplate).send(event("first"));
+        inOrder.verify(kafkaTemplate).send(event("second"));
+        assertEquals(0L, outbox.backlog());
+        assertEquals(0, outbox.read(outbox.acknowledged(), 10).entries().size());
+    }
+
+    @Test
+    void givenKeyedEvent_whenToRecord_thenKeyAndHeaderSet() {
+        ProducerRecord<String, String> producerRecord = OutboxRelay.toRecord(new CommitOutbox.Entry(TOPIC, "myorga/myspace", "first", 0));
+
+        assertEquals("myorga/myspace", producerRecord.key());
+        assertEquals("myorga/myspace", new String(producerRecord.headers().lastHeader(OutboxRelay.KEY_HEADER).value(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void givenUnkeyedEvent_whenToRecord_thenNoKeyHeader() {
+        ProducerRecord<String, String> producerRecord = OutboxRelay.toRecord(new CommitOutbox.Entry(TOPIC, null, "first", 0));
+
+        assertNull(producerRecord.key());
+        assertNull(producerRecord.headers().lastHeader(OutboxRelay.KEY_HEADER));
+    }
+
+    @Test
+    void givenKafkaUnavailable_whenDrain_thenKeptAndBackedOff() throws Exception {
+        given(kafkaTemplate.send(anyRecord())).willReturn(CompletableFuture.failedFuture(new IllegalStateException("broker unavailable")));
+        OutboxRelay relay = new OutboxRelay(outbox, kafkaTemplate, 100, 30L, 60000L, 60000L);
+        outbox.append(TOPIC, null, "first");
+
+        relay.drain();
+        relay.drain();
+
+        verify(kafkaTemplate, times(1)).send(event("first"));
+        assertEquals(1L, outbox.backlog());
+    }
+
+    @Test
+    void givenKafkaRecovered_whenDrainAfterBackoff_thenRelayed() throws Exception {
+        given(kafkaTemplate.send(anyRecord()))
+                .willReturn(CompletableFuture.failedFuture(new IllegalStateException("broker unavailable")))
+                .willReturn(CompletableFuture.completedFuture(null));
+        OutboxRelay relay = new OutboxRelay(outbox, kafkaTemplate, 100, 30L, 0L, 0L);
+        outbox.append(TOPIC, null, "first");
+
+        relay.drain();
+        relay.drain();
+
+        verify(kafkaTemplate, times(2)).send(event("first"));
+        assertEquals(0L, outbox.backlog());
+    }
+
+    @Test
+    void givenRecordTooLarge_whenDrain_thenDeadLetteredAndFollowingRelayed() throws Exception {
+        given(kafkaTemplate.send(anyRecord()))
+                .willReturn(CompletableFuture.failedFuture(new KafkaException("Send failed", new RecordTooLargeException("too large"))))
+                .willReturn(CompletableFuture.completedFuture(null));
+        OutboxRelay relay = new OutboxRelay(outbox, kafkaTemplate, 100, 30L, 60000L, 60000L);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        relay.bindTo(registry);
+        outbox.append(TOPIC, "myorga/myspace", "first");
+        outbox.append(TOPIC, null, "second");
+
+        relay.drain();
+
+        verify(kafkaTemplate).send(event("second"));
+        assertEquals(0L, outbox.backlog());
+        List<CommitOutbox.Entry> deadLetters = outbox.readDeadLetters();
+        assertEquals(1, deadLetters.size());
+        assertEquals("myorga/myspace", deadLetters.get(0).key());
+        assertEquals("first", deadLetters.get(0).message());
+        assertEquals(1.0, registry.get("accessmanager.outbox.dead-lettered").functionCounter().count());
+        assertEquals(1.0, registry.get("accessmanager.outbox.relayed").functionCounter().count());
+    }
+
+    @Test
+    void givenSerializationErrorThrown_whenDrain_thenDeadLettered() throws Exception {
+        given(kafkaTemplate.send(anyRecord())).willThrow(new SerializationException("not serializable"));
+        OutboxRelay relay = new OutboxRelay(outbox, kafkaTemplate, 100, 30L, 60000L, 60000L);
+        outbox.append(TOPIC, null, "first");
+
+        relay.drain();
+
+        assertEquals(0L, outbox.backlog());
+        assertEquals(1, outbox.readDeadLetters().size());
+    }
+
+    @Test
+    void givenRetriableAndNonRetriableFailures_whenDrain_thenNothingDeadLettered() throws Exception {
+        given(kafkaTemplate.send(anyRecord()))
+                .willReturn(CompletableFuture.failedFuture(new RecordTooLargeException("too large")))
+                .willReturn(CompletableFuture.failedFuture(new IllegalStateException("broker unavailable")));
+        OutboxRelay relay = new OutboxRelay(outbox, kafkaTemplate, 100, 30L, 60000L, 60000L);
+        outbox.append(TOPIC, null, "first");
+        outbox.append(TOPIC, null, "second");
+
+        relay.drain();
+
+        // the batch is sent again, as a whole
+        assertEquals(2L, outbox.backlog());
+        assertEquals(0, outbox.readDeadLetters().size());
+    }
+
+    @Test
+    void givenRegistry_whenBindTo_thenRelayMonitored() throws Exception {
+        given(kafkaTemplate.send(anyRecord())).willReturn(CompletableFuture.completedFuture(null));
+        OutboxRelay relay = new OutboxRelay(outbox, kafkaTemplate, 100, 30L, 1000L, 60000L);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        relay.bindTo(registry);
+        outbox.append(TOPIC, null, "first");
+
+        relay.drain();
+
+        assertEquals(1.0, registry.get("accessmanager.outbox.relayed").functionCounter().count());
+        assertEquals(1L, registry.get("accessmanager.outbox.relay.send").timer().count());
+        assertEquals(0.0, registry.get("accessmanager.outbox.relay.in-flight").gauge().value());
+    }
+
+    private static ProducerRecord<String, String> anyRecord() {
+        return ArgumentMatchers.any();
+    }
+
+    private static ProducerRecord<String, String> event(String message) {
+        return ArgumentMatchers.argThat(producerRecord -> producerRecord != null && TOPIC.equals(producerRecord.topic()) && message.equals(producerRecord.value()));
+    }
+}
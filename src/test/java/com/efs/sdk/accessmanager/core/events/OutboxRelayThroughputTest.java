@@ -0,0 +1,119 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.core.events;
+
+import com.efs.sdk.accessmanager.core.events.EventPublisher.OverflowPolicy;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Publishes bulk commits through outbox and relay to an embedded broker, with the producer batching of the deployment
+ */
+@EmbeddedKafka(partitions = 1, topics = OutboxRelayThroughputTest.TOPIC)
+class OutboxRelayThroughputTest {
+
+    static final String TOPIC = "accessmanager-commit-bulk";
+
+    private static final Logger LOG = LoggerFactory.getLogger(OutboxRelayThroughputTest.class);
+
+    private static final int BATCHES = 50;
+
+    private static final int BATCH_SIZE = 100;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void givenBulkCommits_whenRelayed_thenAllEventsDelivered(EmbeddedKafkaBroker broker) throws Exception {
+        Map<String, Object> producerProps = new HashMap<>();
+        producerProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+        producerProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        producerProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        producerProps.put(ProducerConfig.LINGER_MS_CONFIG, 20);
+        producerProps.put(ProducerConfig.BATCH_SIZE_CONFIG, 65536);
+        producerProps.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, "gzip");
+        DefaultKafkaProducerFactory<String, String> producerFactory = new DefaultKafkaProducerFactory<>(producerProps);
+        int events = BATCHES * BATCH_SIZE;
+
+        try (CommitOutbox outbox = new CommitOutbox(directory.toString(), 16L * 1024L * 1024L);
+             OutboxRelay relay = new OutboxRelay(outbox, new KafkaTemplate<>(producerFactory), 500, 30L, 100L, 1000L)) {
+            EventPublisher publisher = new EventPublisher(outbox, relay, events, OverflowPolicy.REJECT, 0L);
+            long start = System.nanoTime();
+            for (int batch = 0; batch < BATCHES; batch++) {
+                List<EventMessage> messages = new ArrayList<>(BATCH_SIZE);
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    messages.add(new EventMessage("myorga/space-" + i % 10, "{\"accountName\":\"myorga\",\"storageName\":\"myspace\",\"containerName\":\"loadingzone\",\"userName\":\"user\",\"rootDir\":\"dataset-" + batch + "-" + i + "\"}"));
+                }
+                publisher.sendMessages(messages, TOPIC);
+            }
+            long stored = System.nanoTime();
+            // the relay may already be draining in the background, triggered by the appends
+            long deadline = stored + Duration.ofSeconds(60L).toNanos();
+            while (outbox.backlog() > 0L && System.nanoTime() < deadline) {
+                relay.drain();
+                Thread.sleep(10L);
+            }
+            long relayed = System.nanoTime();
+
+            assertEquals(0L, outbox.backlog());
+            assertEquals(events, consumeAll(broker, events));
+            LOG.info("{} events: stored in {} ms, relayed in {} ms ({} events/s)", events, (stored - start) / 1_000_000L, (relayed - stored) / 1_000_000L, events * 1_000_000_000L / Math.max(1L, relayed - start));
+            assertTrue(relayed - start < Duration.ofSeconds(60L).toNanos());
+        } finally {
+            producerFactory.destroy();
+        }
+    }
+
+    private static int consumeAll(EmbeddedKafkaBroker broker, int expected) {
+        Map<String, Object> consumerProps = KafkaTestUtils.consumerProps("throughput", "false", broker);
+        consumerProps.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        consumerProps.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 1000);
+        try (Consumer<String, String> consumer = new DefaultKafkaConsumerFactory<String, String>(consumerProps).createConsumer()) {
+            broker.consumeFromAnEmbeddedTopic(consumer, TOPIC);
+            int consumed = 0;
+            long deadline = System.nanoTime() + Duration.ofSeconds(30L).toNanos();
+            while (consumed < expected && System.nanoTime() < deadline) {
+                ConsumerRecords<String, String> records = consumer.poll(Duration.ofMillis(500L));
+                consumed += records.count();
+            }
+            return consumed;
+        }
+    }
+}
@@ -74,7 +74,7 @@ class AccessManagementControllerS3Test {
         given(authHelper.isAllowed(any(), anyString(), anyString(), eq(Permissions.WRITE))).willReturn(false);
         given(authHelper.getUserName(any())).willReturn("any");
 
-        Mockito.when(service.commit(anyString(), anyString(), anyString(), anyString(), anyBoolean(), anyString())).thenThrow(new AccessManagerException(SAVE_ACCESS_DENIED));
+        Mockito.when(service.commit(anyString(), anyString(), anyString(), anyString(), anyBoolean(), anyString(), any())).thenThrow(new AccessManagerException(SAVE_ACCESS_DENIED));
         mvc.perform(post(ENDPOINT + "/commit").with(jwt()).queryParam("organization", EXAMPLE_ORGANIZATION).queryParam("space", EXAMPLE_SPACE).queryParam(
                 "rootDir", "test")).andExpect(status().is4xxClientError());
     }
@@ -15,30 +15,42 @@ limitations under the License.
  */
 package com.efs.sdk.accessmanager.helper;
 
+import com.efs.sdk.accessmanager.clients.InvalidResponseException;
 import com.efs.sdk.accessmanager.clients.OrganizationManagerClient;
 import com.efs.sdk.accessmanager.clients.OrganizationManagerClient.Permissions;
+import com.efs.sdk.accessmanager.clients.SpaceList;
+import com.efs.sdk.accessmanager.clients.SpaceSummary;
 import com.efs.sdk.accessmanager.commons.AccessManagerException;
 import com.efs.sdk.accessmanager.commons.AccessManagerException.ACCESSMANAGER_ERROR;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.HttpStatus;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 class AuthHelperTest {
 
@@ -56,7 +68,7 @@ class AuthHelperTest {
         this.client = Mockito.mock(OrganizationManagerClient.class);
         this.token = Mockito.mock(JwtAuthenticationToken.class);
         this.jwt = Mockito.mock(Jwt.class);
-        this.authHelper = new AuthHelper(client);
+        this.authHelper = new AuthHelper(client, new PermissionDecisionCache(30L, 300L, 100L), claimEvaluator(false));
     }
 
     @Test
@@ -78,8 +90,8 @@ class AuthHelperTest {
 
         List<Map<String, Object>> spaces = List.of(spaceDto);
 
-        given(client.getOrganization(token, organization)).willReturn(orgaDto);
-        given(client.getSpaces(eq(token), eq(Long.parseLong(orgaDto.get("id").toString())), any())).willReturn(spaces);
+        given(client.getOrganizationId(token, organization)).willReturn(1L);
+        given(client.getSpaceList(eq(token), eq(Long.parseLong(orgaDto.get("id").toString())), any())).willReturn(spaceList(spaces));
 
         assertTrue(authHelper.isAllowed(token, organization, space, Permissions.WRITE));
     }
@@ -99,8 +111,8 @@ class AuthHelperTest {
 
         List<Map<String, Object>> spaces = new ArrayList<>();
 
-        given(client.getOrganization(token, organization)).willReturn(orgaDto);
-        given(client.getSpaces(eq(token), eq(Long.parseLong(orgaDto.get("id").toString())), any())).willReturn(spaces);
+        given(client.getOrganizationId(token, organization)).willReturn(1L);
+        given(client.getSpaceList(eq(token), eq(Long.parseLong(orgaDto.get("id").toString())), any())).willReturn(spaceList(spaces));
 
         assertFalse(authHelper.isAllowed(token, organization, space, Permissions.WRITE));
     }
@@ -125,8 +137,8 @@ class AuthHelperTest {
         List<Map<String, Object>> spaces = List.of(spaceDto);
 
         HttpClientErrorException except = new HttpClientErrorException(HttpStatus.FORBIDDEN);
-        given(client.getOrganization(token, organization)).willThrow(except);
-        given(client.getSpaces(eq(token), eq(Long.parseLong(orgaDto.get("id").toString())), any())).willReturn(spaces);
+        given(client.getOrganizationId(token, organization)).willThrow(except);
+        given(client.getSpaceList(eq(token), eq(Long.parseLong(orgaDto.get("id").toString())), any())).willReturn(spaceList(spaces));
 
         assertFalse(authHelper.isAllowed(token, organization, space, Permissions.WRITE));
     }
@@ -151,8 +163,8 @@ class AuthHelperTest {
         List<Map<String, Object>> spaces = List.of(spaceDto);
 
         HttpClientErrorException except = new HttpClientErrorException(HttpStatus.NOT_FOUND);
-        given(client.getOrganization(token, organization)).willThrow(except);
-        given(client.getSpaces(eq(token), eq(Long.parseLong(orgaDto.get("id").toString())), any())).willReturn(spaces);
+        given(client.getOrganizationId(token, organization)).willThrow(except);
+        given(client.getSpaceList(eq(token), eq(Long.parseLong(orgaDto.get("id").toString())), any())).willReturn(spaceList(spaces));
 
         AccessManagerException exception = assertThrows(AccessManagerException.class, () -> authHelper.isAllowed(token, organization, space,
                 Permissions.WRITE));
@@ -178,15 +190,152 @@ class AuthHelperTest {
 
         List<Map<String, Object>> spaces = List.of(spaceDto);
 
-        HttpServerErrorException except = new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR);
-        given(client.getOrganization(token, organization)).willThrow(except);
-        given(client.getSpaces(eq(token), eq(Long.parseLong(orgaDto.get("id").toString())), any())).willReturn(spaces);
+        HttpClientErrorException except = new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+        given(client.getOrganizationId(token, organization)).willThrow(except);
+        given(client.getSpaceList(eq(token), eq(Long.parseLong(orgaDto.get("id").toString())), any())).willReturn(spaceList(spaces));
 
         AccessManagerException exception = assertThrows(AccessManagerException.class, () -> authHelper.isAllowed(token, organization, space,
                 Permissions.WRITE));
         assertTrue(exception.getMessage().startsWith(new AccessManagerException(ACCESSMANAGER_ERROR.ORGANIZATIONMANAGER_ERROR).getMessage()));
     }
 
+    @Test
+    void givenSubject_whenIsAllowedRepeatedly_thenOrganizationManagerCalledOnce() throws Exception {
+        given(token.getToken()).willReturn(jwt);
+        given(jwt.getSubject()).willReturn("user-id");
+        given(jwt.getExpiresAt()).willReturn(Instant.now().plusSeconds(300L));
+
+        String organization = "test";
+        String space = "test";
+
+        Map<String, Object> orgaDto = new HashMap<>();
+        orgaDto.put("id", 1L);
+        orgaDto.put("name", organization);
+
+        Map<String, Object> spaceDto = new HashMap<>();
+        spaceDto.put("id", 1L);
+        spaceDto.put("name", space);
+
+        List<Map<String, Object>> spaces = List.of(spaceDto);
+
+        given(client.getOrganizationId(token, organization)).willReturn(1L);
+        given(client.getSpaceList(eq(token), eq(1L), any())).willReturn(spaceList(spaces));
+
+        assertTrue(authHelper.isAllowed(token, organization, space, Permissions.WRITE));
+        assertTrue(authHelper.isAllowed(token, organization, space, Permissions.WRITE));
+
+        verify(client, times(1)).getOrganizationId(token, organization);
+        verify(client, times(1)).getSpaceList(token, 1L, Permissions.WRITE);
+    }
+
+    @Test
+    void givenCircuitOpen_whenIsAllowed_thenUnavailable() {
+        given(token.getToken()).willReturn(jwt);
+        given(jwt.getClaimAsString("preferred_username")).willReturn("testuser");
+        given(client.getOrganizationId(token, "test")).willThrow(CallNotPermittedException.createCallNotPermittedException(CircuitBreaker.ofDefaults("organizationmanager")));
+
+        AccessManagerException exception = assertThrows(AccessManagerException.class, () -> authHelper.isAllowed(token, "test", "test", Permissions.WRITE));
+        assertEquals(ACCESSMANAGER_ERROR.ORGANIZATIONMANAGER_UNAVAILABLE, exception.getError());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, exception.getHttpStatus());
+    }
+
+    @Test
+    void givenExpiredDecision_whenOrganizationManagerTimesOut_thenStaleDecision() throws Exception {
+        this.authHelper = new AuthHelper(client, new PermissionDecisionCache(0L, 300L, 100L), claimEvaluator(false));
+        given(token.getToken()).willReturn(jwt);
+        given(jwt.getSubject()).willReturn("user-id");
+        given(jwt.getExpiresAt()).willReturn(Instant.now().plusSeconds(300L));
+        given(client.getOrganizationId(token, "test")).willReturn(1L);
+        given(client.getSpaceList(token, 1L, Permissions.WRITE)).willReturn(new SpaceList(List.of(new SpaceSummary(1L, "test")))).willThrow(new ResourceAccessException("Read timed out"));
+
+        assertTrue(authHelper.isAllowed(token, "test", "test", Permissions.WRITE));
+        assertTrue(authHelper.isAllowed(token, "test", "test", Permissions.WRITE));
+
+        verify(client, times(2)).getSpaceList(token, 1L, Permissions.WRITE);
+    }
+
+    @Test
+    void givenGetSpacesServerError_whenIsAllowed_thenUnavailable() {
+        given(token.getToken()).willReturn(jwt);
+        given(client.getOrganizationId(token, "test")).willReturn(1L);
+        given(client.getSpaceList(token, 1L, Permissions.WRITE)).willThrow(new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR));
+
+        AccessManagerException exception = assertThrows(AccessManagerException.class, () -> authHelper.isAllowed(token, "test", "test", Permissions.WRITE));
+        assertEquals(ACCESSMANAGER_ERROR.ORGANIZATIONMANAGER_UNAVAILABLE, exception.getError());
+    }
+
+    @Test
+    void givenInvalidResponse_whenIsAllowed_thenOrganizationManagerError() {
+        given(token.getToken()).willReturn(jwt);
+        given(client.getOrganizationId(token, "test")).willThrow(new InvalidResponseException("Invalid response of the organizationmanager", new IllegalArgumentException("unable to find 'id' in organization")));
+
+        AccessManagerException exception = assertThrows(AccessManagerException.class, () -> authHelper.isAllowed(token, "test", "test", Permissions.WRITE));
+        assertEquals(ACCESSMANAGER_ERROR.ORGANIZATIONMANAGER_ERROR, exception.getError());
+    }
+
+    @Test
+    void givenExpiredDecision_whenOrganizationManagerServerErrorAsync_thenStaleDecision() throws Exception {
+        this.authHelper = new AuthHelper(client, new PermissionDecisionCache(0L, 300L, 100L), claimEvaluator(false));
+        given(token.getToken()).willReturn(jwt);
+        given(jwt.getSubject()).willReturn("user-id");
+        given(jwt.getExpiresAt()).willReturn(Instant.now().plusSeconds(300L));
+        given(client.getOrganizationIdAsync(token, "test")).willReturn(CompletableFuture.completedFuture(1L));
+        given(client.getSpaceListAsync(token, 1L, Permissions.WRITE))
+                .willReturn(CompletableFuture.completedFuture(new SpaceList(List.of(new SpaceSummary(1L, "test")))))
+                .willReturn(CompletableFuture.failedFuture(WebClientResponseException.create(HttpStatus.SERVICE_UNAVAILABLE.value(), "Service Unavailable", null, null, null)));
+
+        assertTrue(authHelper.isAllowedAsync(token, "test", "test", Permissions.WRITE).get());
+        assertTrue(authHelper.isAllowedAsync(token, "test", "test", Permissions.WRITE).get());
+
+        verify(client, times(2)).getSpaceListAsync(token, 1L, Permissions.WRITE);
+    }
+
+    @Test
+    void givenSpaceListed_whenIsAllowedAsync_thenTrue() throws Exception {
+        given(token.getToken()).willReturn(jwt);
+        given(jwt.getClaimAsString("preferred_username")).willReturn("testuser");
+        given(client.getOrganizationIdAsync(token, "test")).willReturn(CompletableFuture.completedFuture(1L));
+        given(client.getSpaceListAsync(token, 1L, Permissions.WRITE)).willReturn(CompletableFuture.completedFuture(new SpaceList(List.of(new SpaceSummary(1L, "Test")))));
+
+        assertTrue(authHelper.isAllowedAsync(token, "test", "test", Permissions.WRITE).get());
+        assertFalse(authHelper.isAllowedAsync(token, "test", "other", Permissions.WRITE).get());
+    }
+
+    @Test
+    void givenGetOrganizationForbidden_whenCanAccessOrganizationAsync_thenFalse() throws Exception {
+        given(token.getToken()).willReturn(jwt);
+        given(jwt.getClaimAsString("preferred_username")).willReturn("testuser");
+        given(client.getOrganizationIdAsync(token, "test")).willReturn(CompletableFuture.failedFuture(WebClientResponseException.create(HttpStatus.FORBIDDEN.value(), "Forbidden", null, null, null)));
+
+        assertFalse(authHelper.canAccessOrganizationAsync(token, "test", Permissions.WRITE).get());
+    }
+
+    @Test
+    void givenGetOrganizationNotFound_whenIsAllowedAsync_thenError() {
+        given(token.getToken()).willReturn(jwt);
+        given(jwt.getClaimAsString("preferred_username")).willReturn("testuser");
+        given(client.getOrganizationIdAsync(token, "test")).willReturn(CompletableFuture.failedFuture(WebClientResponseException.create(HttpStatus.NOT_FOUND.value(), "Not Found", null, null, null)));
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> authHelper.isAllowedAsync(token, "test", "test", Permissions.WRITE).get());
+        AccessManagerException cause = assertInstanceOf(AccessManagerException.class, exception.getCause());
+        assertEquals(ACCESSMANAGER_ERROR.ORGANIZATION_NOT_FOUND, cause.getError());
+    }
+
+    @Test
+    void givenSubject_whenIsAllowedAsyncRepeatedly_thenOrganizationManagerCalledOnce() throws Exception {
+        given(token.getToken()).willReturn(jwt);
+        given(jwt.getSubject()).willReturn("user-id");
+        given(jwt.getExpiresAt()).willReturn(Instant.now().plusSeconds(300L));
+        given(client.getOrganizationIdAsync(token, "test")).willReturn(CompletableFuture.completedFuture(1L));
+        given(client.getSpaceListAsync(token, 1L, Permissions.WRITE)).willReturn(CompletableFuture.completedFuture(new SpaceList(List.of(new SpaceSummary(1L, "test")))));
+
+        assertTrue(authHelper.isAllowedAsync(token, "test", "test", Permissions.WRITE).get());
+        assertTrue(authHelper.isAllowed(token, "test", "test", Permissions.WRITE));
+
+        verify(client, times(1)).getSpaceListAsync(token, 1L, Permissions.WRITE);
+        verify(client, times(0)).getSpaceList(any(), any(), any());
+    }
+
     @Test
     void givenPreferredUsername_whenGetUsername_thenOk() {
         Jwt jwt = new Jwt("any token value", Instant.now(), Instant.now().plusSeconds(30), Map.of("alg", "none"), Map.of("preferred_username", "testuser"));
@@ -220,8 +369,8 @@ class AuthHelperTest {
 
         List<Map<String, Object>> spaces = List.of(spaceDto);
 
-        given(client.getOrganization(token, organization)).willReturn(orgaDto);
-        given(client.getSpaces(eq(token), eq(Long.parseLong(orgaDto.get("id").toString())), any())).willReturn(spaces);
+        given(client.getOrganizationId(token, organization)).willReturn(1L);
+        given(client.getSpaceList(eq(token), eq(Long.parseLong(orgaDto.get("id").toString())), any())).willReturn(spaceList(spaces));
 
         assertTrue(authHelper.canAccessOrganization(token, organization, Permissions.WRITE));
     }
@@ -240,8 +389,8 @@ class AuthHelperTest {
 
         List<Map<String, Object>> spaces = new ArrayList<>();
 
-        given(client.getOrganization(token, organization)).willReturn(orgaDto);
-        given(client.getSpaces(eq(token), eq(Long.parseLong(orgaDto.get("id").toString())), any())).willReturn(spaces);
+        given(client.getOrganizationId(token, organization)).willReturn(1L);
+        given(client.getSpaceList(eq(token), eq(Long.parseLong(orgaDto.get("id").toString())), any())).willReturn(spaceList(spaces));
 
         assertFalse(authHelper.canAccessOrganization(token, organization, Permissions.WRITE));
     }
@@ -266,8 +415,8 @@ class AuthHelperTest {
         List<Map<String, Object>> spaces = List.of(spaceDto);
 
         HttpClientErrorException except = new HttpClientErrorException(HttpStatus.FORBIDDEN);
-        given(client.getOrganization(token, organization)).willThrow(except);
-        given(client.getSpaces(eq(token), eq(Long.parseLong(orgaDto.get("id").toString())), any())).willReturn(spaces);
+        given(client.getOrganizationId(token, organization)).willThrow(except);
+        given(client.getSpaceList(eq(token), eq(Long.parseLong(orgaDto.get("id").toString())), any())).willReturn(spaceList(spaces));
 
         assertFalse(authHelper.canAccessOrganization(token, organization, Permissions.WRITE));
     }
@@ -292,8 +441,8 @@ class AuthHelperTest {
         List<Map<String, Object>> spaces = List.of(spaceDto);
 
         HttpClientErrorException except = new HttpClientErrorException(HttpStatus.NOT_FOUND);
-        given(client.getOrganization(token, organization)).willThrow(except);
-        given(client.getSpaces(eq(token), eq(Long.parseLong(orgaDto.get("id").toString())), any())).willReturn(spaces);
+        given(client.getOrganizationId(token, organization)).willThrow(except);
+        given(client.getSpaceList(eq(token), eq(Long.parseLong(orgaDto.get("id").toString())), any())).willReturn(spaceList(spaces));
 
         AccessManagerException exception = assertThrows(AccessManagerException.class, () -> authHelper.canAccessOrganization(token, organization,
                 Permissions.WRITE));
@@ -319,13 +468,47 @@ class AuthHelperTest {
 
         List<Map<String, Object>> spaces = List.of(spaceDto);
 
-        HttpServerErrorException except = new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR);
-        given(client.getOrganization(token, organization)).willThrow(except);
-        given(client.getSpaces(eq(token), eq(Long.parseLong(orgaDto.get("id").toString())), any())).willReturn(spaces);
+        HttpClientErrorException except = new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+        given(client.getOrganizationId(token, organization)).willThrow(except);
+        given(client.getSpaceList(eq(token), eq(Long.parseLong(orgaDto.get("id").toString())), any())).willReturn(spaceList(spaces));
 
         AccessManagerException exception = assertThrows(AccessManagerException.class, () -> authHelper.canAccessOrganization(token, organization,
                 Permissions.WRITE));
         assertTrue(exception.getMessage().startsWith(new AccessManagerException(ACCESSMANAGER_ERROR.ORGANIZATIONMANAGER_ERROR).getMessage()));
     }
 
+    @Test
+    void givenSpaceRole_whenIsAllowed_thenOrganizationManagerNotCalled() throws Exception {
+        this.authHelper = new AuthHelper(client, new PermissionDecisionCache(30L, 300L, 100L), claimEvaluator(true));
+        given(token.getToken()).willReturn(jwt);
+        given(token.getAuthorities()).willReturn(List.of(new SimpleGrantedAuthority("test_myspace_supplier")));
+
+        assertTrue(authHelper.isAllowed(token, "test", "MySpace", Permissions.WRITE));
+        assertTrue(authHelper.canAccessOrganization(token, "test", Permissions.WRITE));
+        assertTrue(authHelper.isAllowedAsync(token, "test", "myspace", Permissions.READ).get());
+
+        verify(client, times(0)).getOrganizationId(any(), any());
+        verify(client, times(0)).getOrganizationIdAsync(any(), any());
+    }
+
+    @Test
+    void givenInsufficientRole_whenIsAllowed_thenOrganizationManagerDecides() throws Exception {
+        this.authHelper = new AuthHelper(client, new PermissionDecisionCache(30L, 300L, 100L), claimEvaluator(true));
+        given(token.getToken()).willReturn(jwt);
+        given(token.getAuthorities()).willReturn(List.of(new SimpleGrantedAuthority("test_myspace_user")));
+        given(client.getOrganizationId(token, "test")).willReturn(1L);
+        given(client.getSpaceList(token, 1L, Permissions.DELETE)).willReturn(new SpaceList(List.of(new SpaceSummary(1L, "myspace"))));
+
+        assertTrue(authHelper.isAllowed(token, "test", "myspace", Permissions.DELETE));
+
+        verify(client, times(1)).getSpaceList(token, 1L, Permissions.DELETE);
+    }
+
+    private static ClaimPermissionEvaluator claimEvaluator(boolean enabled) {
+        return new ClaimPermissionEvaluator(enabled, "^(?<organization>[^_]+)_(?<space>[^_]+)_(?<role>[^_]+)$", new String[]{"user", "supplier", "trustee"}, new String[]{"supplier", "trustee"}, new String[]{"trustee"});
+    }
+
+    private static SpaceList spaceList(List<Map<String, Object>> spaces) {
+        return new SpaceList(spaces.stream().map(s -> new SpaceSummary(Long.parseLong(s.get("id").toString()), s.get("name").toString())).toList());
+    }
 }
@@ -0,0 +1,81 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.helper;
+
+import com.efs.sdk.accessmanager.clients.OrganizationManagerClient.Permissions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+
+class ClaimPermissionEvaluatorTest {
+
+    private static final String ROLE_PATTERN = "^(?<organization>[^_]+)_(?<space>[^_]+)_(?<role>[^_]+)$";
+    private static final String[] READ_ROLES = {"user", "supplier", "trustee"};
+    private static final String[] WRITE_ROLES = {"supplier", "trustee"};
+    private static final String[] DELETE_ROLES = {"trustee"};
+
+    private ClaimPermissionEvaluator evaluator;
+
+    private JwtAuthenticationToken token;
+
+    @BeforeEach
+    void setup() {
+        this.evaluator = new ClaimPermissionEvaluator(true, ROLE_PATTERN, READ_ROLES, WRITE_ROLES, DELETE_ROLES);
+        this.token = Mockito.mock(JwtAuthenticationToken.class);
+        given(token.getAuthorities()).willReturn(List.of(new SimpleGrantedAuthority("myorga_myspace_Supplier"), new SimpleGrantedAuthority("offline_access")));
+    }
+
+    @Test
+    void givenSpaceRole_whenIsAllowed_thenGrantedPermissions() {
+        assertTrue(evaluator.isAllowed(token, "MyOrga", "MySpace", Permissions.READ));
+        assertTrue(evaluator.isAllowed(token, "myorga", "myspace", Permissions.WRITE));
+        assertFalse(evaluator.isAllowed(token, "myorga", "myspace", Permissions.DELETE));
+        assertFalse(evaluator.isAllowed(token, "myorga", "myspace", Permissions.GET));
+    }
+
+    @Test
+    void givenSpaceRole_whenIsAllowedOtherSpaceOrOrganization_thenInconclusive() {
+        assertFalse(evaluator.isAllowed(token, "myorga", "other", Permissions.READ));
+        assertFalse(evaluator.isAllowed(token, "other", "myspace", Permissions.READ));
+    }
+
+    @Test
+    void givenSpaceRole_whenCanAccessOrganization_thenGranted() {
+        assertTrue(evaluator.canAccessOrganization(token, "myorga", Permissions.WRITE));
+        assertFalse(evaluator.canAccessOrganization(token, "myorga", Permissions.DELETE));
+        assertFalse(evaluator.canAccessOrganization(token, "other", Permissions.READ));
+    }
+
+    @Test
+    void givenDisabled_whenIsAllowed_thenInconclusive() {
+        ClaimPermissionEvaluator disabled = new ClaimPermissionEvaluator(false, ROLE_PATTERN, READ_ROLES, WRITE_ROLES, DELETE_ROLES);
+
+        assertFalse(disabled.isAllowed(token, "myorga", "myspace", Permissions.READ));
+        assertFalse(disabled.canAccessOrganization(token, "myorga", Permissions.READ));
+    }
+
+    @Test
+    void givenPatternWithoutGroups_whenCreate_thenError() {
+        assertThrows(IllegalArgumentException.class, () -> new ClaimPermissionEvaluator(true, "^(?<organization>[^_]+)_(.+)$", READ_ROLES, WRITE_ROLES, DELETE_ROLES));
+    }
+}
@@ -0,0 +1,257 @@
+/*
+Copyright (C) 2023 e:fs TechHub GmbH (sdk@efs-techhub.com)
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+        http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package com.efs.sdk.accessmanager.helper;
+
+import com.efs.sdk.accessmanager.clients.OrganizationManagerClient.Permissions;
+import com.efs.sdk.accessmanager.commons.AccessManagerException;
+import com.efs.sdk.accessmanager.commons.AccessManagerException.ACCESSMANAGER_ERROR;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+
+class PermissionDecisionCacheTest {
+
+    private static final String ORGANIZATION = "myorga";
+    private static final String SPACE = "myspace";
+
+    private PermissionDecisionCache cache;
+
+    private JwtAuthenticationToken token;
+
+    private AtomicInteger checks;
+
+    @BeforeEach
+    void setup() {
+        this.cache = new PermissionDecisionCache(30L, 300L, 100L);
+        this.token = Mockito.mock(JwtAuthenticationToken.class);
+        this.checks = new AtomicInteger();
+        given(token.getToken()).willReturn(jwt("user-id", Instant.now().plusSeconds(300L)));
+    }
+
+    @Test
+    void givenDecision_whenIsAllowedAgain_thenCached() throws Exception {
+        assertTrue(cache.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, this::allow));
+        assertTrue(cache.isAllowed(token, ORGANIZATION.toUpperCase(), SPACE.toUpperCase(), Permissions.WRITE, this::allow));
+
+        assertEquals(1, checks.get());
+    }
+
+    @Test
+    void givenDenial_whenIsAllowedAgain_thenCached() throws Exception {
+        assertFalse(cache.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, this::deny));
+        assertFalse(cache.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, this::deny));
+
+        assertEquals(1, checks.get());
+    }
+
+    @Test
+    void givenDecision_whenIsAllowedOtherPermissionsOrSpace_thenDecidedAgain() throws Exception {
+        cache.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, this::allow);
+        cache.isAllowed(token, ORGANIZATION, SPACE, Permissions.DELETE, this::allow);
+        cache.isAllowed(token, ORGANIZATION, null, Permissions.WRITE, this::allow);
+
+        assertEquals(3, checks.get());
+    }
+
+    @Test
+    void givenDecision_whenIsAllowedOtherSubject_thenDecidedAgain() throws Exception {
+        cache.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, this::allow);
+
+        JwtAuthenticationToken other = Mockito.mock(JwtAuthenticationToken.class);
+        given(other.getToken()).willReturn(jwt("other-id", Instant.now().plusSeconds(300L)));
+        cache.isAllowed(other, ORGANIZATION, SPACE, Permissions.WRITE, this::allow);
+
+        assertEquals(2, checks.get());
+    }
+
+    @Test
+    void givenExpiredJwt_whenIsAllowedAgain_thenDecidedAgain() throws Exception {
+        given(token.getToken()).willReturn(jwt("user-id", Instant.now().minusSeconds(1L)));
+
+        cache.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, this::allow);
+        cache.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, this::allow);
+
+        assertEquals(2, checks.get());
+    }
+
+    @Test
+    void givenNoSubject_whenIsAllowedAgain_thenDecidedAgain() throws Exception {
+        given(token.getToken()).willReturn(jwt(null, Instant.now().plusSeconds(300L)));
+
+        cache.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, this::allow);
+        cache.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, this::allow);
+
+        assertEquals(2, checks.get());
+    }
+
+    @Test
+    void givenError_whenIsAllowedAgain_thenDecidedAgain() throws Exception {
+        assertThrows(AccessManagerException.class, () -> cache.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, () -> {
+            throw new AccessManagerException(ACCESSMANAGER_ERROR.ORGANIZATIONMANAGER_ERROR);
+        }));
+
+        assertTrue(cache.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, this::allow));
+        assertEquals(1, checks.get());
+    }
+
+    @Test
+    void givenExpiredDecision_whenOrganizationManagerUnavailable_thenStaleDecisionServed() throws Exception {
+        PermissionDecisionCache expiring = new PermissionDecisionCache(0L, 300L, 100L);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        expiring.bindTo(registry);
+        expiring.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, this::allow);
+
+        assertTrue(expiring.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, PermissionDecisionCacheTest::unavailable));
+        assertEquals(1.0, registry.get("accessmanager.permission-decisions.stale").functionCounter().count());
+    }
+
+    @Test
+    void givenExpiredDecision_whenOrganizationManagerAvailable_thenDecidedAgain() throws Exception {
+        PermissionDecisionCache expiring = new PermissionDecisionCache(0L, 300L, 100L);
+        expiring.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, this::allow);
+
+        assertFalse(expiring.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, this::deny));
+        assertEquals(2, checks.get());
+    }
+
+    @Test
+    void givenExpiredDecision_whenOtherError_thenError() throws Exception {
+        PermissionDecisionCache expiring = new PermissionDecisionCache(0L, 300L, 100L);
+        expiring.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, this::allow);
+
+        assertThrows(AccessManagerException.class, () -> expiring.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, () -> {
+            throw new AccessManagerException(ACCESSMANAGER_ERROR.ORGANIZATION_NOT_FOUND);
+        }));
+    }
+
+    @Test
+    void givenStaleWindowPassed_whenOrganizationManagerUnavailable_thenError() throws Exception {
+        PermissionDecisionCache expiring = new PermissionDecisionCache(0L, 0L, 100L);
+        expiring.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, this::allow);
+
+        assertThrows(AccessManagerException.class, () -> expiring.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, PermissionDecisionCacheTest::unavailable));
+    }
+
+    @Test
+    void givenNoDecision_whenOrganizationManagerUnavailable_thenError() {
+        assertThrows(AccessManagerException.class, () -> cache.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, PermissionDecisionCacheTest::unavailable));
+    }
+
+    @Test
+    void givenDecision_whenFlushedViaEndpoint_thenDecidedAgain() throws Exception {
+        PermissionDecisionCacheEndpoint endpoint = new PermissionDecisionCacheEndpoint(cache);
+        cache.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, this::allow);
+
+        endpoint.flush();
+        cache.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, this::allow);
+
+        assertEquals(2, checks.get());
+    }
+
+    @Test
+    void givenDecisions_whenInvalidateSpace_thenOnlySpaceAndOrganizationDecidedAgain() throws Exception {
+        cache.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, this::allow);
+        cache.isAllowed(token, ORGANIZATION, null, Permissions.WRITE, this::allow);
+        cache.isAllowed(token, ORGANIZATION, "otherspace", Permissions.WRITE, this::allow);
+        cache.isAllowed(token, "otherorga", SPACE, Permissions.WRITE, this::allow);
+
+        cache.invalidate(ORGANIZATION.toUpperCase(), SPACE.toUpperCase());
+        cache.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, this::allow);
+        cache.isAllowed(token, ORGANIZATION, null, Permissions.WRITE, this::allow);
+        cache.isAllowed(token, ORGANIZATION, "otherspace", Permissions.WRITE, this::allow);
+        cache.isAllowed(token, "otherorga", SPACE, Permissions.WRITE, this::allow);
+
+        assertEquals(6, checks.get());
+    }
+
+    @Test
+    void givenDecisions_whenInvalidateOrganization_thenAllSpacesDecidedAgain() throws Exception {
+        cache.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, this::allow);
+        cache.isAllowed(token, ORGANIZATION, "otherspace", Permissions.WRITE, this::allow);
+        cache.isAllowed(token, "otherorga", SPACE, Permissions.WRITE, this::allow);
+
+        cache.invalidate(ORGANIZATION, null);
+        cache.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, this::allow);
+        cache.isAllowed(token, ORGANIZATION, "otherspace", Permissions.WRITE, this::allow);
+        cache.isAllowed(token, "otherorga", SPACE, Permissions.WRITE, this::allow);
+
+        assertEquals(5, checks.get());
+    }
+
+    @Test
+    void givenInvalidationDuringDecision_whenIsAllowedAgain_thenDecidedAgain() throws Exception {
+        // the organization changes while the decision is being made
+        assertTrue(cache.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, () -> {
+            cache.invalidate(ORGANIZATION, null);
+            return allow();
+        }));
+        cache.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, this::allow);
+
+        assertEquals(2, checks.get());
+    }
+
+    @Test
+    void givenInvalidateAllDuringAsyncDecision_whenIsAllowedAgain_thenDecidedAgain() throws Exception {
+        CompletableFuture<Boolean> decision = new CompletableFuture<>();
+        CompletableFuture<Boolean> allowed = cache.isAllowedAsync(token, ORGANIZATION, SPACE, Permissions.WRITE, () -> decision);
+
+        cache.invalidateAll();
+        decision.complete(allow());
+
+        assertTrue(allowed.join());
+        cache.isAllowed(token, ORGANIZATION, SPACE, Permissions.WRITE, this::allow);
+        assertEquals(2, checks.get());
+    }
+
+    @Test
+    void givenRegistry_whenBindTo_thenCacheMonitored() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+        cache.bindTo(registry);
+
+        assertNotNull(registry.find("cache.gets").tags("cache", "accessmanager.permission-decisions").functionCounter());
+    }
+
+    private static boolean unavailable() throws AccessManagerException {
+        throw new AccessManagerException(ACCESSMANAGER_ERROR.ORGANIZATIONMANAGER_UNAVAILABLE);
+    }
+
+    private boolean allow() {
+        checks.incrementAndGet();
+        return true;
+    }
+
+    private boolean deny() {
+        checks.incrementAndGet();
+        return false;
+    }
+
+    private static Jwt jwt(String subject, Instant expiresAt) {
+        Map<String, Object> claims = subject == null ? Map.of("preferred_username", "testuser") : Map.of("preferred_username", "testuser", "sub", subject);
+        return new Jwt("any token value", expiresAt.minusSeconds(600L), expiresAt, Map.of("alg", "none"), claims);
+    }
+}